@@ -0,0 +1,33 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.processor;
+
+/**
+ * Represents behavior of the generated callables when their concurrency limit is reached.
+ * @author ashigeru
+ */
+public enum ConcurrencyPolicy {
+
+    /**
+     * Rejects the invocation immediately.
+     */
+    REJECT,
+
+    /**
+     * Waits for a permit up to the configured timeout, and then rejects the invocation.
+     */
+    WAIT,
+}
@@ -28,12 +28,15 @@ public class ContainerConfig {
 
     private String namePattern;
 
+    private String warmUpName;
+
     /**
      * インスタンスを生成する。
      * @param access 明示的なアクセス修飾子
      * @param namePattern MessageFormatの形式で記述された生成するクラス名のパターン
+     * @param warmUpName 生成するウォームアップ用のメソッド名、生成しない場合は{@code null}
      */
-    public ContainerConfig(AccessPolicy access, String namePattern) {
+    public ContainerConfig(AccessPolicy access, String namePattern, String warmUpName) {
         if (access == null) {
             throw new IllegalArgumentException("access is null"); //$NON-NLS-1$
         }
@@ -42,6 +45,7 @@ public class ContainerConfig {
         }
         this.access = access;
         this.namePattern = namePattern;
+        this.warmUpName = warmUpName;
     }
 
     /**
@@ -59,4 +63,12 @@ public class ContainerConfig {
     public String getNamePattern() {
         return namePattern;
     }
+
+    /**
+     * 生成するウォームアップ用のメソッド名を返す。
+     * @return 生成するウォームアップ用のメソッド名、生成しない場合は{@code null}
+     */
+    public String getWarmUpName() {
+        return warmUpName;
+    }
 }
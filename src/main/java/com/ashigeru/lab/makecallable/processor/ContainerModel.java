@@ -17,7 +17,7 @@ package com.ashigeru.lab.makecallable.processor;
 
 import java.text.MessageFormat;
 import java.util.ArrayList;
-import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
 import com.sun.mirror.declaration.Modifier;
@@ -37,16 +37,27 @@ import com.sun.mirror.util.Types;
  */
 public class ContainerModel {
 
-    private Types types;
+    private final Modifier access;
 
-    private ContainerConfig config;
+    private final String simpleName;
 
-    private TypeDeclaration decl;
+    private final List<TypeParameterModel> typeParameters;
 
-    private List<MethodModel> methods;
+    private final TypeMirror type;
+
+    private final TypeMirror erasedType;
+
+    private final List<MethodModel> methods;
+
+    private final String packageName;
+
+    private final String warmUpName;
 
     /**
      * インスタンスを生成する。
+     * <p>
+     * 生成に必要な情報はこの時点ですべて計算され、以後はコンテナの元になったクラスの宣言を参照しない。
+     * </p>
      * @param types 型に関するユーティリティ
      * @param config このコンテナの設定
      * @param decl このコンテナの元になったクラス
@@ -65,10 +76,14 @@ public class ContainerModel {
         if (methods == null) {
             throw new IllegalArgumentException("methods is null"); //$NON-NLS-1$
         }
-        this.types = types;
-        this.config = config;
-        this.decl = decl;
-        this.methods = methods;
+        this.access = computeAccess(config, decl);
+        this.simpleName = MessageFormat.format(config.getNamePattern(), decl.getSimpleName());
+        this.typeParameters = TypeParameterModel.toModels(decl.getFormalTypeParameters());
+        this.type = computeType(types, decl);
+        this.erasedType = types.getErasure(type);
+        this.methods = Collections.unmodifiableList(new ArrayList<MethodModel>(methods));
+        this.packageName = decl.getPackage().getQualifiedName();
+        this.warmUpName = config.getWarmUpName();
     }
 
     /**
@@ -76,17 +91,7 @@ public class ContainerModel {
      * @return 生成するコンテナのアクセス性に関する修飾子(public, or null (package default))
      */
     public Modifier getAccess() {
-        AccessPolicy access = config.getAccessOverride();
-        if (access == AccessPolicy.PUBLIC) {
-            return Modifier.PUBLIC;
-        }
-        if (access == AccessPolicy.PACKAGE) {
-            return null;
-        }
-        if (decl.getModifiers().contains(Modifier.PUBLIC)) {
-            return Modifier.PUBLIC;
-        }
-        return null;
+        return access;
     }
 
     /**
@@ -94,16 +99,15 @@ public class ContainerModel {
      * @return 生成するコンテナのクラス単純名
      */
     public String getSimpleName() {
-        String pattern = config.getNamePattern();
-        return MessageFormat.format(pattern, decl.getSimpleName());
+        return simpleName;
     }
 
     /**
      * 生成するコンテナの仮型引数の一覧を返す。
      * @return 生成するコンテナの仮型引数の一覧
      */
-    public Collection<TypeParameterDeclaration> getTypeParameters() {
-        return decl.getFormalTypeParameters();
+    public List<TypeParameterModel> getTypeParameters() {
+        return typeParameters;
     }
 
     /**
@@ -118,16 +122,15 @@ public class ContainerModel {
      * @return コンテナの元になるクラスの自然な型表現
      */
     public TypeMirror getType() {
-        if (decl.getFormalTypeParameters().isEmpty()) {
-            return types.getDeclaredType(decl);
-        }
-        List<TypeVariable> typeArgs = new ArrayList<TypeVariable>();
-        for (TypeParameterDeclaration tp : decl.getFormalTypeParameters()) {
-            typeArgs.add(types.getTypeVariable(tp));
-        }
-        DeclaredType declaredType = types.getDeclaredType(
-            decl, typeArgs.toArray(new TypeVariable[typeArgs.size()]));
-        return declaredType;
+        return type;
+    }
+
+    /**
+     * コンテナの元になるクラスの型を消去したものを返す。
+     * @return コンテナの元になるクラスの型を消去したもの
+     */
+    public TypeMirror getErasedType() {
+        return erasedType;
     }
 
     /**
@@ -143,6 +146,45 @@ public class ContainerModel {
      * @return 生成するコンテナクラスのパッケージ名、無名パッケージの場合は空文字列
      */
     public String getPackageName() {
-        return decl.getPackage().getQualifiedName();
+        return packageName;
+    }
+
+    /**
+     * 生成するウォームアップ用のメソッド名を返す。
+     * @return 生成するウォームアップ用のメソッド名、生成しない場合は{@code null}
+     */
+    public String getWarmUpName() {
+        return warmUpName;
+    }
+
+    private static Modifier computeAccess(ContainerConfig config, TypeDeclaration decl) {
+        assert config != null;
+        assert decl != null;
+        AccessPolicy access = config.getAccessOverride();
+        if (access == AccessPolicy.PUBLIC) {
+            return Modifier.PUBLIC;
+        }
+        if (access == AccessPolicy.PACKAGE) {
+            return null;
+        }
+        if (decl.getModifiers().contains(Modifier.PUBLIC)) {
+            return Modifier.PUBLIC;
+        }
+        return null;
+    }
+
+    private static TypeMirror computeType(Types types, TypeDeclaration decl) {
+        assert types != null;
+        assert decl != null;
+        if (decl.getFormalTypeParameters().isEmpty()) {
+            return types.getDeclaredType(decl);
+        }
+        List<TypeVariable> typeArgs = new ArrayList<TypeVariable>();
+        for (TypeParameterDeclaration tp : decl.getFormalTypeParameters()) {
+            typeArgs.add(types.getTypeVariable(tp));
+        }
+        DeclaredType declaredType = types.getDeclaredType(
+            decl, typeArgs.toArray(new TypeVariable[typeArgs.size()]));
+        return declaredType;
     }
 }
@@ -0,0 +1,345 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.processor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.sun.mirror.apt.AnnotationProcessorFactory;
+
+/**
+ * ソースディレクトリを監視し、変更されたソースファイルに対してのみ注釈プロセッサを起動し続けるデーモン。
+ * <p>
+ * 注釈プロセッサは同一のJVM内で{@code com.sun.tools.apt.Main}を経由して起動されるため、
+ * 二回目以降の生成ではJVMの起動やクラスの読み込み、JITコンパイルの費用がかからない。
+ * 変更のあったソースファイルだけを処理対象とし、それ以外のソースファイルは{@code -sourcepath}から参照する。
+ * 生成に失敗したソースファイルは、生成に成功するまで以降の走査でも変更されたものとして扱う。
+ * </p>
+ * <p>
+ * トリガーファイルが指定された場合、そのファイルの更新時刻が変わるとすべてのソースファイルを再生成し、
+ * 結果を同じディレクトリの{@code <トリガーファイル名>.result}に書き出す。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class GenerationDaemon {
+
+    private static final String SOURCE_SUFFIX = ".java";
+
+    private static final String RESULT_SUFFIX = ".result";
+
+    private static final long DEFAULT_INTERVAL = 500;
+
+    private final List<File> sourceRoots;
+
+    private final File outputDirectory;
+
+    private final List<String> options;
+
+    private final File trigger;
+
+    private final AnnotationProcessorFactory factory = new MakeCallableProcessorFactory();
+
+    private final Map<File, Long> timestamps = new HashMap<File, Long>();
+
+    private final Set<File> pending = new TreeSet<File>();
+
+    private long triggerStamp;
+
+    /**
+     * インスタンスを生成する。
+     * @param sourceRoots 監視するソースディレクトリの一覧
+     * @param outputDirectory 生成したソースファイルの出力先
+     * @param options 注釈プロセッサの起動時に追加するオプションの一覧
+     * @param trigger 再生成を要求するためのトリガーファイル、利用しない場合は{@code null}
+     */
+    public GenerationDaemon(List<File> sourceRoots, File outputDirectory, List<String> options, File trigger) {
+        if (sourceRoots == null) {
+            throw new IllegalArgumentException("sourceRoots is null"); //$NON-NLS-1$
+        }
+        if (outputDirectory == null) {
+            throw new IllegalArgumentException("outputDirectory is null"); //$NON-NLS-1$
+        }
+        if (options == null) {
+            throw new IllegalArgumentException("options is null"); //$NON-NLS-1$
+        }
+        this.sourceRoots = new ArrayList<File>(sourceRoots);
+        this.outputDirectory = outputDirectory;
+        this.options = new ArrayList<String>(options);
+        this.trigger = trigger;
+        this.triggerStamp = trigger == null ? 0 : trigger.lastModified();
+    }
+
+    /**
+     * 前回の走査以降に追加または変更されたソースファイルの一覧を返す。
+     * <p>
+     * 初回の走査では、すべてのソースファイルを返す。
+     * また、まだ生成に成功していないソースファイルも、変更の有無にかかわらず返す。
+     * </p>
+     * @return 追加または変更されたソースファイルの一覧
+     */
+    public synchronized List<File> scan() {
+        Map<File, Long> current = new HashMap<File, Long>();
+        for (File root : sourceRoots) {
+            collect(root, current);
+        }
+        for (Map.Entry<File, Long> entry : current.entrySet()) {
+            Long last = timestamps.get(entry.getKey());
+            if (last == null || last.longValue() != entry.getValue().longValue()) {
+                pending.add(entry.getKey());
+            }
+        }
+        for (Iterator<File> iter = timestamps.keySet().iterator(); iter.hasNext();) {
+            if (current.containsKey(iter.next()) == false) {
+                iter.remove();
+            }
+        }
+        pending.retainAll(current.keySet());
+        timestamps.putAll(current);
+        return new ArrayList<File>(pending);
+    }
+
+    /**
+     * 監視しているすべてのソースファイルの一覧を返す。
+     * @return すべてのソースファイルの一覧
+     */
+    public synchronized List<File> getSources() {
+        List<File> results = new ArrayList<File>(timestamps.keySet());
+        Collections.sort(results);
+        return results;
+    }
+
+    /**
+     * 指定のソースファイルに対して注釈プロセッサを起動する。
+     * <p>
+     * 正常に終了した場合のみ、指定のソースファイルを生成済みとして扱う。
+     * </p>
+     * @param sources 処理対象のソースファイルの一覧
+     * @param log 注釈プロセッサのメッセージの出力先
+     * @return 注釈プロセッサの終了コード、正常に終了した場合は{@code 0}
+     */
+    public synchronized int generate(List<File> sources, PrintWriter log) {
+        if (sources == null) {
+            throw new IllegalArgumentException("sources is null"); //$NON-NLS-1$
+        }
+        if (log == null) {
+            throw new IllegalArgumentException("log is null"); //$NON-NLS-1$
+        }
+        if (sources.isEmpty()) {
+            return 0;
+        }
+        List<String> arguments = new ArrayList<String>();
+        arguments.add("-nocompile");
+        arguments.add("-s");
+        arguments.add(outputDirectory.getPath());
+        arguments.add("-sourcepath");
+        arguments.add(toPath(sourceRoots));
+        arguments.addAll(options);
+        for (File source : sources) {
+            arguments.add(source.getPath());
+        }
+        int exitCode = com.sun.tools.apt.Main.process(
+            factory,
+            log,
+            arguments.toArray(new String[arguments.size()]));
+        if (exitCode == 0) {
+            pending.removeAll(sources);
+        }
+        return exitCode;
+    }
+
+    /**
+     * 指定の間隔でソースディレクトリを監視し、変更があれば再生成する。
+     * <p>
+     * このメソッドは、現在のスレッドが割り込まれるまで終了しない。
+     * </p>
+     * @param interval 監視の間隔(ミリ秒)
+     * @param log メッセージの出力先
+     * @throws InterruptedException 監視中に割り込まれた場合
+     * @throws IllegalArgumentException {@code interval}が正の値でない場合
+     */
+    public void run(long interval, PrintWriter log) throws InterruptedException {
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive"); //$NON-NLS-1$
+        }
+        if (log == null) {
+            throw new IllegalArgumentException("log is null"); //$NON-NLS-1$
+        }
+        while (true) {
+            if (isTriggered()) {
+                scan();
+                List<File> sources = getSources();
+                long start = System.nanoTime();
+                int exitCode = generate(sources, log);
+                long elapsed = (System.nanoTime() - start) / 1000000;
+                report(log, sources.size(), exitCode, elapsed);
+                writeResult(log, sources.size(), exitCode, elapsed);
+            }
+            else {
+                List<File> changed = scan();
+                if (changed.isEmpty() == false) {
+                    long start = System.nanoTime();
+                    int exitCode = generate(changed, log);
+                    report(log, changed.size(), exitCode, (System.nanoTime() - start) / 1000000);
+                }
+            }
+            log.flush();
+            Thread.sleep(interval);
+        }
+    }
+
+    private boolean isTriggered() {
+        if (trigger == null) {
+            return false;
+        }
+        long stamp = trigger.lastModified();
+        if (stamp == triggerStamp) {
+            return false;
+        }
+        triggerStamp = stamp;
+        return stamp != 0;
+    }
+
+    private void report(PrintWriter log, int files, int exitCode, long elapsed) {
+        assert log != null;
+        log.println(MessageFormat.format(
+            "Generated from {0} source files in {1}ms (exit={2})",
+            files,
+            String.valueOf(elapsed),
+            exitCode));
+    }
+
+    private void writeResult(PrintWriter log, int files, int exitCode, long elapsed) {
+        assert log != null;
+        assert trigger != null;
+        File result = new File(trigger.getParentFile(), trigger.getName() + RESULT_SUFFIX);
+        try {
+            PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(result), "UTF-8"));
+            try {
+                writer.printf("exit=%d%nfiles=%d%nelapsed=%d%n", exitCode, files, elapsed);
+            }
+            finally {
+                writer.close();
+            }
+        }
+        catch (IOException e) {
+            log.println(MessageFormat.format(
+                "Failed to write generation result: {0}",
+                e.getMessage()));
+        }
+    }
+
+    private static void collect(File directory, Map<File, Long> results) {
+        assert directory != null;
+        assert results != null;
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            if (child.isDirectory()) {
+                collect(child, results);
+            }
+            else if (child.getName().endsWith(SOURCE_SUFFIX)) {
+                results.put(child, child.lastModified());
+            }
+        }
+    }
+
+    private static String toPath(List<File> files) {
+        assert files != null;
+        StringBuilder buf = new StringBuilder();
+        for (File file : files) {
+            if (buf.length() > 0) {
+                buf.append(File.pathSeparatorChar);
+            }
+            buf.append(file.getPath());
+        }
+        return buf.toString();
+    }
+
+    /**
+     * デーモンを起動する。
+     * <p>
+     * 引数の形式は次の通り。
+     * </p>
+     * <pre><code>
+     * -s &lt;output directory&gt; [-interval &lt;millis&gt;] [-trigger &lt;file&gt;]
+     *     [-cp &lt;classpath&gt;] [-encoding &lt;encoding&gt;] [-A&lt;key&gt;[=&lt;value&gt;] ...]
+     *     &lt;source root&gt; ...
+     * </code></pre>
+     * @param args 起動引数
+     * @throws InterruptedException 監視中に割り込まれた場合
+     */
+    public static void main(String[] args) throws InterruptedException {
+        File output = null;
+        File trigger = null;
+        long interval = DEFAULT_INTERVAL;
+        List<String> options = new ArrayList<String>();
+        List<File> roots = new ArrayList<File>();
+        boolean invalid = false;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-s") && i + 1 < args.length) {
+                output = new File(args[++i]);
+            }
+            else if (arg.equals("-interval") && i + 1 < args.length) {
+                interval = Long.parseLong(args[++i]);
+            }
+            else if (arg.equals("-trigger") && i + 1 < args.length) {
+                trigger = new File(args[++i]);
+            }
+            else if ((arg.equals("-cp") || arg.equals("-classpath") || arg.equals("-encoding"))
+                    && i + 1 < args.length) {
+                options.add(arg);
+                options.add(args[++i]);
+            }
+            else if (arg.startsWith("-A")) {
+                options.add(arg);
+            }
+            else if (arg.startsWith("-")) {
+                invalid = true;
+            }
+            else {
+                roots.add(new File(arg));
+            }
+        }
+        if (invalid || output == null || roots.isEmpty()) {
+            System.err.println(MessageFormat.format(
+                "Usage: java {0} -s <output directory> [-interval <millis>] [-trigger <file>] "
+                + "[-cp <classpath>] [-encoding <encoding>] [-A<key>[=<value>] ...] <source root> ...",
+                GenerationDaemon.class.getName()));
+            System.exit(1);
+            return;
+        }
+        GenerationDaemon daemon = new GenerationDaemon(roots, output, options, trigger);
+        daemon.run(interval, new PrintWriter(System.err, true));
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.processor;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+
+import com.sun.mirror.apt.AnnotationProcessorEnvironment;
+import com.sun.mirror.declaration.TypeDeclaration;
+import com.sun.mirror.type.ArrayType;
+import com.sun.mirror.type.DeclaredType;
+import com.sun.mirror.type.ReferenceType;
+import com.sun.mirror.type.TypeMirror;
+import com.sun.mirror.type.TypeVariable;
+import com.sun.mirror.type.WildcardType;
+
+/**
+ * 生成するソースプログラムが参照する型を収集し、インポート宣言を構築する。
+ * <p>
+ * 型はできるだけ単純名で表現される。
+ * ある単純名が既に別の型に割り当てられている場合や、予約された名前と衝突する場合には限定名で表現される。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class ImportBuilder {
+
+    private static final String JAVA_LANG = "java.lang";
+
+    private AnnotationProcessorEnvironment environment;
+
+    private String packageName;
+
+    private Set<String> reserved;
+
+    private Map<String, String> simpleNames;
+
+    private Set<String> imports;
+
+    /**
+     * インスタンスを生成する。
+     * @param environment 実行環境
+     * @param packageName 生成するソースプログラムのパッケージ名、無名パッケージの場合は空文字列
+     * @param reserved 型の単純名として利用できない名前の一覧
+     */
+    public ImportBuilder(
+            AnnotationProcessorEnvironment environment,
+            String packageName,
+            Collection<String> reserved) {
+        if (environment == null) {
+            throw new IllegalArgumentException("environment is null"); //$NON-NLS-1$
+        }
+        if (packageName == null) {
+            throw new IllegalArgumentException("packageName is null"); //$NON-NLS-1$
+        }
+        if (reserved == null) {
+            throw new IllegalArgumentException("reserved is null"); //$NON-NLS-1$
+        }
+        this.environment = environment;
+        this.packageName = packageName;
+        this.reserved = new HashSet<String>(reserved);
+        this.simpleNames = new HashMap<String, String>();
+        this.imports = new TreeSet<String>();
+    }
+
+    /**
+     * 指定の型を参照するための名前を返す。
+     * @param type 対象の型
+     * @return 対象の型を参照するための名前
+     */
+    public String toName(TypeMirror type) {
+        if (type == null) {
+            throw new IllegalArgumentException("type is null"); //$NON-NLS-1$
+        }
+        if (type instanceof DeclaredType) {
+            return toName((DeclaredType) type);
+        }
+        if (type instanceof ArrayType) {
+            return toName(((ArrayType) type).getComponentType()) + "[]";
+        }
+        if (type instanceof TypeVariable) {
+            return ((TypeVariable) type).getDeclaration().getSimpleName();
+        }
+        if (type instanceof WildcardType) {
+            return toName((WildcardType) type);
+        }
+        // primitive types and void
+        return type.toString();
+    }
+
+    /**
+     * 指定のトップレベルクラスを参照するための名前を返す。
+     * @param qualifiedName 対象クラスの限定名
+     * @return 対象のクラスを参照するための名前
+     */
+    public String toName(String qualifiedName) {
+        if (qualifiedName == null) {
+            throw new IllegalArgumentException("qualifiedName is null"); //$NON-NLS-1$
+        }
+        int lastDot = qualifiedName.lastIndexOf('.');
+        if (lastDot < 0) {
+            return resolve(qualifiedName, qualifiedName, "", true);
+        }
+        return resolve(
+            qualifiedName,
+            qualifiedName.substring(lastDot + 1),
+            qualifiedName.substring(0, lastDot),
+            true);
+    }
+
+    /**
+     * 指定の仮型引数を宣言するための表現を返す。
+     * @param typeParameter 対象の仮型引数
+     * @return 対象の仮型引数を宣言するための表現
+     */
+    public String toName(TypeParameterModel typeParameter) {
+        if (typeParameter == null) {
+            throw new IllegalArgumentException("typeParameter is null"); //$NON-NLS-1$
+        }
+        StringBuilder buf = new StringBuilder();
+        buf.append(typeParameter.getName());
+        Iterator<ReferenceType> bounds = typeParameter.getBounds().iterator();
+        if (bounds.hasNext()) {
+            buf.append(" extends ");
+            buf.append(toName(bounds.next()));
+            while (bounds.hasNext()) {
+                buf.append(" & ");
+                buf.append(toName(bounds.next()));
+            }
+        }
+        return buf.toString();
+    }
+
+    /**
+     * これまでに参照された型のうち、インポート宣言が必要なものの限定名の一覧を返す。
+     * @return インポート宣言が必要な型の限定名の一覧 (辞書順)
+     */
+    public List<String> getImports() {
+        return new ArrayList<String>(imports);
+    }
+
+    private String toName(DeclaredType type) {
+        assert type != null;
+        TypeDeclaration decl = type.getDeclaration();
+        StringBuilder buf = new StringBuilder();
+        DeclaredType containing = type.getContainingType();
+        if (containing != null && containing.getActualTypeArguments().isEmpty() == false) {
+            // 総称型のメンバー型はインポートせずに外側の型から修飾する
+            buf.append(toName(containing));
+            buf.append('.');
+            buf.append(decl.getSimpleName());
+        }
+        else {
+            buf.append(resolve(
+                decl.getQualifiedName(),
+                decl.getSimpleName(),
+                decl.getPackage().getQualifiedName(),
+                decl.getDeclaringType() == null));
+        }
+        Iterator<TypeMirror> arguments = type.getActualTypeArguments().iterator();
+        if (arguments.hasNext()) {
+            buf.append('<');
+            buf.append(toName(arguments.next()));
+            while (arguments.hasNext()) {
+                buf.append(", ");
+                buf.append(toName(arguments.next()));
+            }
+            buf.append('>');
+        }
+        return buf.toString();
+    }
+
+    private String toName(WildcardType type) {
+        assert type != null;
+        Collection<ReferenceType> upper = type.getUpperBounds();
+        if (upper.isEmpty() == false) {
+            return "? extends " + toName(upper.iterator().next());
+        }
+        Collection<ReferenceType> lower = type.getLowerBounds();
+        if (lower.isEmpty() == false) {
+            return "? super " + toName(lower.iterator().next());
+        }
+        return "?";
+    }
+
+    private String resolve(String qualifiedName, String simpleName, String typePackage, boolean topLevel) {
+        assert qualifiedName != null;
+        assert simpleName != null;
+        assert typePackage != null;
+        String current = simpleNames.get(simpleName);
+        if (current != null) {
+            return current.equals(qualifiedName) ? simpleName : qualifiedName;
+        }
+        if (reserved.contains(simpleName)) {
+            return qualifiedName;
+        }
+        if (topLevel && typePackage.equals(packageName)) {
+            // 同一パッケージのトップレベルクラスはインポート不要
+        }
+        else if (topLevel && typePackage.equals(JAVA_LANG) && isDeclaredInPackage(simpleName) == false) {
+            // 同一パッケージの同名クラスに隠されない限り、java.langはインポート不要
+        }
+        else if (typePackage.length() == 0) {
+            // 無名パッケージのクラスはインポートできない
+            return qualifiedName;
+        }
+        else {
+            imports.add(qualifiedName);
+        }
+        simpleNames.put(simpleName, qualifiedName);
+        return simpleName;
+    }
+
+    private boolean isDeclaredInPackage(String simpleName) {
+        assert simpleName != null;
+        String name = packageName.length() == 0 ? simpleName : packageName + "." + simpleName;
+        return environment.getTypeDeclaration(name) != null;
+    }
+}
@@ -15,6 +15,7 @@
  */
 package com.ashigeru.lab.makecallable.processor;
 
+import java.io.File;
 import java.io.IOException;
 import java.io.Serializable;
 import java.text.MessageFormat;
@@ -22,12 +23,15 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Future;
 
+import com.ashigeru.lab.makecallable.runtime.TaskKind;
 import com.sun.mirror.apt.AnnotationProcessor;
 import com.sun.mirror.apt.AnnotationProcessorEnvironment;
 import com.sun.mirror.declaration.AnnotationMirror;
@@ -38,10 +42,16 @@ import com.sun.mirror.declaration.Declaration;
 import com.sun.mirror.declaration.EnumConstantDeclaration;
 import com.sun.mirror.declaration.MethodDeclaration;
 import com.sun.mirror.declaration.Modifier;
+import com.sun.mirror.declaration.ParameterDeclaration;
 import com.sun.mirror.declaration.TypeDeclaration;
+import com.sun.mirror.type.ClassType;
 import com.sun.mirror.type.DeclaredType;
+import com.sun.mirror.type.InterfaceType;
+import com.sun.mirror.type.PrimitiveType;
 import com.sun.mirror.type.ReferenceType;
+import com.sun.mirror.type.TypeMirror;
 import com.sun.mirror.type.TypeVariable;
+import com.sun.mirror.type.WildcardType;
 import com.sun.mirror.util.DeclarationFilter;
 import com.sun.mirror.util.SourcePosition;
 import com.sun.mirror.util.Types;
@@ -111,44 +121,79 @@ public class MakeCallableProcessor implements AnnotationProcessor {
         Collection<TypeDeclaration> containers = findContainers();
         debug(null, "Containers: {0}", containers);
 
-        Map<TypeDeclaration, ContainerModel> models = new HashMap<TypeDeclaration, ContainerModel>();
+        String profilePath = Options.PROFILE.getOption(environment);
+        ProcessingProfile profile = profilePath == null ? null : new ProcessingProfile();
+
+        // コンテナごとにモデルの構築から出力までを完了させ、モデルを保持し続けない
         for (TypeDeclaration decl : containers) {
+            long modelStart = System.nanoTime();
             ContainerModel model = toModel(decl);
-            if (model != null) {
-                debug(decl.getPosition(), "{0} is valid container (with {1} methods)",
-                    model.getSimpleName(), model.getMethods().size());
-                models.put(decl, model);
-            }
-        }
-        for (Map.Entry<TypeDeclaration, ContainerModel> entry : models.entrySet()) {
-            TypeDeclaration type = entry.getKey();
-            ContainerModel model = entry.getValue();
-            try {
-                debug(type.getPosition(), "Generating {0}", model.getSimpleName());
-                SourceGenerator.generate(environment, model);
+            if (model == null) {
+                continue;
             }
-            catch (IOException e) {
-                environment.getMessager().printError(
-                    type.getPosition(),
-                    MessageFormat.format(
-                        "Cannot generate a @MakeCallable class {0} into {1}",
-                        model.getSimpleName(),
-                        model.getPackageName().length() == 0 ? "default package" : model.getPackageName()));
+            debug(decl.getPosition(), "{0} is valid container (with {1} methods)",
+                model.getSimpleName(), model.getMethods().size());
+            long generateStart = System.nanoTime();
+            generate(decl, model);
+            if (profile != null) {
+                profile.add(
+                    decl.getQualifiedName(),
+                    model.getMethods().size(),
+                    generateStart - modelStart,
+                    System.nanoTime() - generateStart);
             }
         }
+        if (profile != null) {
+            writeProfile(profile, new File(profilePath));
+        }
+    }
+
+    private void writeProfile(ProcessingProfile profile, File file) {
+        assert profile != null;
+        assert file != null;
+        try {
+            profile.appendTo(file);
+        }
+        catch (IOException e) {
+            environment.getMessager().printWarning(MessageFormat.format(
+                "Cannot write the processing profile into {0}",
+                file));
+        }
+    }
+
+    private void generate(TypeDeclaration type, ContainerModel model) {
+        assert type != null;
+        assert model != null;
+        try {
+            debug(type.getPosition(), "Generating {0}", model.getSimpleName());
+            SourceGenerator.generate(environment, model);
+        }
+        catch (IOException e) {
+            environment.getMessager().printError(
+                type.getPosition(),
+                MessageFormat.format(
+                    "Cannot generate a @MakeCallable class {0} into {1}",
+                    model.getSimpleName(),
+                    model.getPackageName().length() == 0 ? "default package" : model.getPackageName()));
+        }
     }
 
     private Collection<TypeDeclaration> findContainers() {
-        Collection<TypeDeclaration> containers = new HashSet<TypeDeclaration>();
-        containers.addAll(findExplicitContainers());
-        containers.addAll(findImplicitContainers());
-        for (Iterator<TypeDeclaration> iter = containers.iterator(); iter.hasNext(); ) {
+        // 生成結果や診断の順序を実行ごとに変えないため、限定名の順に整列する
+        Map<String, TypeDeclaration> containers = new TreeMap<String, TypeDeclaration>();
+        for (TypeDeclaration container : findExplicitContainers()) {
+            containers.put(container.getQualifiedName(), container);
+        }
+        for (TypeDeclaration container : findImplicitContainers()) {
+            containers.put(container.getQualifiedName(), container);
+        }
+        for (Iterator<TypeDeclaration> iter = containers.values().iterator(); iter.hasNext(); ) {
             TypeDeclaration container = iter.next();
             if (verify(container) == false) {
                 iter.remove();
             }
         }
-        return containers;
+        return new ArrayList<TypeDeclaration>(containers.values());
     }
 
     private Collection<TypeDeclaration> findExplicitContainers() {
@@ -162,7 +207,7 @@ public class MakeCallableProcessor implements AnnotationProcessor {
         Collection<MethodDeclaration> methods = DeclarationFilter.getFilter(MethodDeclaration.class)
             .filter(environment.getDeclarationsAnnotatedWith(makecallableDecl), MethodDeclaration.class);
 
-        Collection<TypeDeclaration> results = new HashSet<TypeDeclaration>();
+        Collection<TypeDeclaration> results = new ArrayList<TypeDeclaration>();
         for (MethodDeclaration method : methods) {
             TypeDeclaration declaring = method.getDeclaringType();
             results.add(declaring);
@@ -195,7 +240,7 @@ public class MakeCallableProcessor implements AnnotationProcessor {
             return null;
         }
         List<MethodModel> methods = new ArrayList<MethodModel>();
-        for (MethodDeclaration method : container.getMethods()) {
+        for (MethodDeclaration method : sortByPosition(container.getMethods())) {
             AnnotationMirror target = getMethodAnnotation(method);
             if (target == null) {
                 continue;
@@ -216,6 +261,27 @@ public class MakeCallableProcessor implements AnnotationProcessor {
         return model;
     }
 
+    private List<MethodDeclaration> sortByPosition(Collection<? extends MethodDeclaration> methods) {
+        assert methods != null;
+        List<MethodDeclaration> results = new ArrayList<MethodDeclaration>(methods);
+        Collections.sort(results, new Comparator<MethodDeclaration>() {
+            public int compare(MethodDeclaration o1, MethodDeclaration o2) {
+                SourcePosition p1 = o1.getPosition();
+                SourcePosition p2 = o2.getPosition();
+                if (p1 != null && p2 != null) {
+                    if (p1.line() != p2.line()) {
+                        return p1.line() < p2.line() ? -1 : +1;
+                    }
+                    if (p1.column() != p2.column()) {
+                        return p1.column() < p2.column() ? -1 : +1;
+                    }
+                }
+                return o1.toString().compareTo(o2.toString());
+            }
+        });
+        return results;
+    }
+
     private ContainerConfig parseContainerConfig(TypeDeclaration container) {
         AnnotationMirror annotation = findAnnotation(containerDecl, container);
         Map<String, AnnotationValue> elements = getElements(annotation, containerDecl);
@@ -224,7 +290,19 @@ public class MakeCallableProcessor implements AnnotationProcessor {
         if (namePattern == null) {
             return null;
         }
-        ContainerConfig config = new ContainerConfig(acessible, namePattern);
+        AnnotationValue warmUp = elements.get(Names.CONTAINER_WARM_UP);
+        String warmUpName = warmUp == null ? null : (String) warmUp.getValue();
+        if (warmUpName != null && warmUpName.length() == 0) {
+            warmUpName = null;
+        }
+        if (warmUpName != null && isJavaIdentifier(warmUpName) == false) {
+            environment.getMessager().printError(warmUp.getPosition(), MessageFormat.format(
+                "\"{0}\" must be a valid Java method name (\"{1}\")",
+                Names.CONTAINER_WARM_UP,
+                warmUpName));
+            return null;
+        }
+        ContainerConfig config = new ContainerConfig(acessible, namePattern, warmUpName);
         return config;
     }
 
@@ -243,6 +321,17 @@ public class MakeCallableProcessor implements AnnotationProcessor {
             }
             names.put(name, method);
         }
+        String warmUpName = model.getWarmUpName();
+        if (warmUpName != null) {
+            for (MethodModel method : model.getMethods()) {
+                if (warmUpName.equals(method.getTargetName())) {
+                    verified = false;
+                    environment.getMessager().printError(method.getPosition(), MessageFormat.format(
+                        "The warm-up method \"{0}\" conflicts with the callable method {1}",
+                        warmUpName, method.getTargetName()));
+                }
+            }
+        }
         return verified;
     }
 
@@ -260,11 +349,23 @@ public class MakeCallableProcessor implements AnnotationProcessor {
         }
         debug(method.getPosition(), "{0} is valid target method", method);
 
-        MethodConfig config = parseMethodConfig(target);
+        MethodConfig config = parseMethodConfig(target, method);
         if (config == null) {
             debug(method.getPosition(), "{0} has invalid config", method);
             return null;
         }
+        Integer priorityParameter = findPriorityParameter(method);
+        if (priorityParameter == null) {
+            debug(method.getPosition(), "{0} has invalid priority parameter", method);
+            return null;
+        }
+        config.setPriorityParameter(priorityParameter);
+        Integer partitionKeyParameter = findAnnotatedParameter(method, Names.PARTITION_KEY);
+        if (partitionKeyParameter == null) {
+            debug(method.getPosition(), "{0} has invalid partition key parameter", method);
+            return null;
+        }
+        config.setPartitionKeyParameter(partitionKeyParameter);
         debug(method.getPosition(), "{0} is valid method", method);
         return new MethodModel(environment.getTypeUtils(), config, method);
     }
@@ -304,7 +405,7 @@ public class MakeCallableProcessor implements AnnotationProcessor {
     private Collection<ReferenceType> findUnsupportedExceptions(Collection<ReferenceType> thrownTypes) {
         assert thrownTypes != null;
         Types types = environment.getTypeUtils();
-        Collection<ReferenceType> results = new HashSet<ReferenceType>();
+        Collection<ReferenceType> results = new ArrayList<ReferenceType>();
         for (ReferenceType t : thrownTypes) {
             if (t instanceof TypeVariable
                     || (types.isSubtype(t, exceptionType) == false && types.isSubtype(t, errorType) == false)) {
@@ -314,8 +415,9 @@ public class MakeCallableProcessor implements AnnotationProcessor {
         return results;
     }
 
-    private MethodConfig parseMethodConfig(AnnotationMirror annotation) {
+    private MethodConfig parseMethodConfig(AnnotationMirror annotation, MethodDeclaration method) {
         assert annotation != null;
+        assert method != null;
         Map<String, AnnotationValue> elements = getElements(annotation, makecallableDecl);
         AccessPolicy access = getAccessibility(elements);
         String name = getNamePattern(elements);
@@ -323,7 +425,184 @@ public class MakeCallableProcessor implements AnnotationProcessor {
             return null;
         }
         List<DeclaredType> markerInterfaces = getMarkerInterfaces(elements);
-        return new MethodConfig(access, name, markerInterfaces);
+        MethodConfig config = new MethodConfig(access, name, markerInterfaces);
+        Long hedgeDelay = getHedgeDelay(elements);
+        if (hedgeDelay == null) {
+            return null;
+        }
+        config.setHedgeDelay(hedgeDelay);
+        Integer maxConcurrency = getMaxConcurrency(elements);
+        Long concurrencyTimeout = getConcurrencyTimeout(elements);
+        if (maxConcurrency == null || concurrencyTimeout == null) {
+            return null;
+        }
+        config.setMaxConcurrency(maxConcurrency);
+        config.setConcurrencyPolicy(getConcurrencyPolicy(elements));
+        config.setConcurrencyTimeout(concurrencyTimeout);
+        config.setPriority(getPriority(elements));
+        config.setKind(getKind(elements));
+        config.setEstimateSize(isEstimateSize(elements));
+        Boolean weakTarget = isWeakTarget(elements, markerInterfaces);
+        if (weakTarget == null) {
+            return null;
+        }
+        config.setWeakTarget(weakTarget);
+        config.setDeadline(isDeadline(elements));
+        if (parseDelegates(elements, method, config) == false) {
+            return null;
+        }
+        return config;
+    }
+
+    private boolean parseDelegates(
+            Map<String, AnnotationValue> elements,
+            MethodDeclaration method,
+            MethodConfig config) {
+        assert elements != null;
+        assert method != null;
+        assert config != null;
+        boolean valid = true;
+        AnnotationValue stage = getFlag(elements, Names.MAKE_CALLABLE_STAGE);
+        if (stage != null) {
+            // 前段の結果を一つだけ受け取る、総称化されていないメソッドのみパイプラインの段にできる
+            if (method.getParameters().size() == 1 && method.getFormalTypeParameters().isEmpty()) {
+                config.setStage(true);
+            }
+            else {
+                environment.getMessager().printError(stage.getPosition(), MessageFormat.format(
+                    "\"{0}\" requires a non-generic method with exactly one parameter: {1}",
+                    Names.MAKE_CALLABLE_STAGE,
+                    method.getSimpleName()));
+                valid = false;
+            }
+        }
+        AnnotationValue publisher = getFlag(elements, Names.MAKE_CALLABLE_PUBLISHER);
+        if (publisher != null) {
+            TypeMirror element = findTypeArgument(method.getReturnType(), Iterable.class);
+            if (element != null) {
+                config.setPublisherElementType(element);
+            }
+            else {
+                environment.getMessager().printError(publisher.getPosition(), MessageFormat.format(
+                    "\"{0}\" requires a method which returns Iterable: {1}",
+                    Names.MAKE_CALLABLE_PUBLISHER,
+                    method.getSimpleName()));
+                valid = false;
+            }
+        }
+        AnnotationValue async = getFlag(elements, Names.MAKE_CALLABLE_ASYNC);
+        if (async != null) {
+            TypeMirror result = findTypeArgument(method.getReturnType(), Future.class);
+            if (result != null) {
+                config.setAsyncResultType(result);
+            }
+            else {
+                environment.getMessager().printError(async.getPosition(), MessageFormat.format(
+                    "\"{0}\" requires a method which returns Future: {1}",
+                    Names.MAKE_CALLABLE_ASYNC,
+                    method.getSimpleName()));
+                valid = false;
+            }
+        }
+        return valid;
+    }
+
+    private AnnotationValue getFlag(Map<String, AnnotationValue> elements, String name) {
+        assert elements != null;
+        assert name != null;
+        AnnotationValue value = elements.get(name);
+        if (value == null || Boolean.TRUE.equals(value.getValue()) == false) {
+            return null;
+        }
+        return value;
+    }
+
+    private TypeMirror findTypeArgument(TypeMirror type, Class<?> generic) {
+        assert type != null;
+        assert generic != null;
+        if ((type instanceof DeclaredType) == false) {
+            return null;
+        }
+        DeclaredType declared = (DeclaredType) type;
+        if (declared.getDeclaration().getQualifiedName().equals(generic.getName())) {
+            Collection<TypeMirror> arguments = declared.getActualTypeArguments();
+            if (arguments.isEmpty()) {
+                return getType(Object.class);
+            }
+            TypeMirror element = arguments.iterator().next();
+            if (element instanceof WildcardType) {
+                Collection<ReferenceType> bounds = ((WildcardType) element).getUpperBounds();
+                return bounds.isEmpty() ? getType(Object.class) : bounds.iterator().next();
+            }
+            return element;
+        }
+        for (InterfaceType parent : declared.getSuperinterfaces()) {
+            TypeMirror element = findTypeArgument(parent, generic);
+            if (element != null) {
+                return element;
+            }
+        }
+        if (declared instanceof ClassType) {
+            ClassType parent = ((ClassType) declared).getSuperclass();
+            if (parent != null) {
+                return findTypeArgument(parent, generic);
+            }
+        }
+        return null;
+    }
+
+    private Integer findPriorityParameter(MethodDeclaration method) {
+        assert method != null;
+        Integer index = findAnnotatedParameter(method, Names.PRIORITY);
+        if (index == null || index < 0) {
+            return index;
+        }
+        ParameterDeclaration parameter = new ArrayList<ParameterDeclaration>(method.getParameters()).get(index);
+        if (isInt(parameter.getType()) == false) {
+            environment.getMessager().printError(parameter.getPosition(), MessageFormat.format(
+                "The @Priority parameter \"{0}\" must be int",
+                parameter.getSimpleName()));
+            return null;
+        }
+        return index;
+    }
+
+    private Integer findAnnotatedParameter(MethodDeclaration method, String annotationName) {
+        assert method != null;
+        assert annotationName != null;
+        int found = -1;
+        int index = 0;
+        for (ParameterDeclaration parameter : method.getParameters()) {
+            if (findAnnotation(annotationName, parameter) != null) {
+                if (found >= 0) {
+                    environment.getMessager().printError(parameter.getPosition(), MessageFormat.format(
+                        "The callable method \"{0}\" can have at most one @{1} parameter",
+                        method.getSimpleName(),
+                        annotationName.substring(annotationName.lastIndexOf('.') + 1)));
+                    return null;
+                }
+                found = index;
+            }
+            index++;
+        }
+        return found;
+    }
+
+    private boolean isInt(TypeMirror type) {
+        assert type != null;
+        return type instanceof PrimitiveType
+            && ((PrimitiveType) type).getKind() == PrimitiveType.Kind.INT;
+    }
+
+    private AnnotationMirror findAnnotation(String qualifiedName, Declaration elementDecl) {
+        assert qualifiedName != null;
+        assert elementDecl != null;
+        for (AnnotationMirror a : elementDecl.getAnnotationMirrors()) {
+            if (qualifiedName.equals(a.getAnnotationType().getDeclaration().getQualifiedName())) {
+                return a;
+            }
+        }
+        return null;
     }
 
     private AnnotationMirror findAnnotation(AnnotationTypeDeclaration annotationDecl, Declaration elementDecl) {
@@ -413,6 +692,123 @@ public class MakeCallableProcessor implements AnnotationProcessor {
         return Collections.emptyList();
     }
 
+    private Long getHedgeDelay(Map<String, AnnotationValue> elements) {
+        assert elements != null;
+        AnnotationValue value = elements.get(Names.MAKE_CALLABLE_HEDGE_DELAY);
+        if (value == null) {
+            // 古い注釈には該当するプロパティが存在しない
+            return 0L;
+        }
+        long delay = ((Number) value.getValue()).longValue();
+        if (delay < 0) {
+            environment.getMessager().printError(value.getPosition(), MessageFormat.format(
+                "\"{0}\" must not be negative ({1})",
+                Names.MAKE_CALLABLE_HEDGE_DELAY,
+                delay));
+            return null;
+        }
+        return delay;
+    }
+
+    private Integer getMaxConcurrency(Map<String, AnnotationValue> elements) {
+        assert elements != null;
+        AnnotationValue value = elements.get(Names.MAKE_CALLABLE_MAX_CONCURRENCY);
+        if (value == null) {
+            return 0;
+        }
+        int max = ((Number) value.getValue()).intValue();
+        if (max < 0) {
+            environment.getMessager().printError(value.getPosition(), MessageFormat.format(
+                "\"{0}\" must not be negative ({1})",
+                Names.MAKE_CALLABLE_MAX_CONCURRENCY,
+                max));
+            return null;
+        }
+        return max;
+    }
+
+    private ConcurrencyPolicy getConcurrencyPolicy(Map<String, AnnotationValue> elements) {
+        assert elements != null;
+        AnnotationValue value = elements.get(Names.MAKE_CALLABLE_CONCURRENCY_POLICY);
+        if (value == null) {
+            return ConcurrencyPolicy.WAIT;
+        }
+        EnumConstantDeclaration constant = (EnumConstantDeclaration) value.getValue();
+        return ConcurrencyPolicy.valueOf(constant.getSimpleName());
+    }
+
+    private Long getConcurrencyTimeout(Map<String, AnnotationValue> elements) {
+        assert elements != null;
+        AnnotationValue value = elements.get(Names.MAKE_CALLABLE_CONCURRENCY_TIMEOUT);
+        if (value == null) {
+            return 0L;
+        }
+        long timeout = ((Number) value.getValue()).longValue();
+        if (timeout < 0) {
+            environment.getMessager().printError(value.getPosition(), MessageFormat.format(
+                "\"{0}\" must not be negative ({1})",
+                Names.MAKE_CALLABLE_CONCURRENCY_TIMEOUT,
+                timeout));
+            return null;
+        }
+        return timeout;
+    }
+
+    private int getPriority(Map<String, AnnotationValue> elements) {
+        assert elements != null;
+        AnnotationValue value = elements.get(Names.MAKE_CALLABLE_PRIORITY);
+        if (value == null) {
+            return 0;
+        }
+        return ((Number) value.getValue()).intValue();
+    }
+
+    private TaskKind getKind(Map<String, AnnotationValue> elements) {
+        assert elements != null;
+        AnnotationValue value = elements.get(Names.MAKE_CALLABLE_KIND);
+        if (value == null) {
+            return TaskKind.DEFAULT;
+        }
+        EnumConstantDeclaration constant = (EnumConstantDeclaration) value.getValue();
+        return TaskKind.valueOf(constant.getSimpleName());
+    }
+
+    private boolean isEstimateSize(Map<String, AnnotationValue> elements) {
+        assert elements != null;
+        AnnotationValue value = elements.get(Names.MAKE_CALLABLE_ESTIMATE_SIZE);
+        if (value == null) {
+            return false;
+        }
+        return Boolean.TRUE.equals(value.getValue());
+    }
+
+    private boolean isDeadline(Map<String, AnnotationValue> elements) {
+        assert elements != null;
+        AnnotationValue value = elements.get(Names.MAKE_CALLABLE_DEADLINE);
+        if (value == null) {
+            return false;
+        }
+        return Boolean.TRUE.equals(value.getValue());
+    }
+
+    private Boolean isWeakTarget(Map<String, AnnotationValue> elements, List<DeclaredType> markerInterfaces) {
+        assert elements != null;
+        assert markerInterfaces != null;
+        AnnotationValue value = elements.get(Names.MAKE_CALLABLE_WEAK_TARGET);
+        if (value == null || Boolean.TRUE.equals(value.getValue()) == false) {
+            return false;
+        }
+        if (markerInterfaces.contains(serializableType)) {
+            // 弱参照は直列化できない
+            environment.getMessager().printError(value.getPosition(), MessageFormat.format(
+                "\"{0}\" cannot be used together with \"{1}\"",
+                Names.MAKE_CALLABLE_WEAK_TARGET,
+                Names.MAKE_CALLABLE_SERIALIZABLE));
+            return null;
+        }
+        return true;
+    }
+
     private void debug(SourcePosition position, String pattern, Object...arguments) {
         if (DEBUG) {
             environment.getMessager().printNotice(position, MessageFormat.format(pattern, arguments));
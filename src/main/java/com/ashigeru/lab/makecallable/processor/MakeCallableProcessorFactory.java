@@ -15,8 +15,10 @@
  */
 package com.ashigeru.lab.makecallable.processor;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 
 import com.sun.mirror.apt.AnnotationProcessor;
@@ -39,8 +41,13 @@ public class MakeCallableProcessorFactory implements AnnotationProcessorFactory
     }
 
     public Collection<String> supportedOptions() {
-        return Arrays.asList(new String[] {
-        });
+        List<String> results = new ArrayList<String>();
+        for (Options option : Options.values()) {
+            if (option.isProcessorSpecific()) {
+                results.add(option.getOptionName());
+            }
+        }
+        return results;
     }
 
     public AnnotationProcessor getProcessorFor(
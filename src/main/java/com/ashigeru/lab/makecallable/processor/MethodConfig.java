@@ -17,11 +17,18 @@ package com.ashigeru.lab.makecallable.processor;
 
 import java.util.List;
 
+import com.ashigeru.lab.makecallable.runtime.TaskKind;
 import com.sun.mirror.type.DeclaredType;
+import com.sun.mirror.type.TypeMirror;
 
 /**
  * 生成するメソッドおよび{@code Callable}インターフェースの実装に関する設定。
  * <p>
+ * 注釈の要素は一つずつ検証しながら読み取り、引数の注釈など注釈の外にある情報も後から加えるため、
+ * 必須の項目以外は構築後に設定メソッドで与える。
+ * この設定は注釈を解析する間だけ利用し、生成には{@link MethodModel}を利用すること。
+ * </p>
+ * <p>
  * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
  * </p>
  * @author ashigeru
@@ -34,6 +41,34 @@ public class MethodConfig {
 
     private List<DeclaredType> markerInterfaces;
 
+    private long hedgeDelay;
+
+    private int maxConcurrency;
+
+    private ConcurrencyPolicy concurrencyPolicy = ConcurrencyPolicy.WAIT;
+
+    private long concurrencyTimeout;
+
+    private int priority;
+
+    private int priorityParameter = -1;
+
+    private int partitionKeyParameter = -1;
+
+    private TaskKind kind = TaskKind.DEFAULT;
+
+    private boolean estimateSize;
+
+    private boolean weakTarget;
+
+    private boolean deadline;
+
+    private boolean stage;
+
+    private TypeMirror publisherElementType;
+
+    private TypeMirror asyncResultType;
+
     /**
      * インスタンスを生成する。
      * @param access 設定によって上書きするアクセス修飾子
@@ -82,4 +117,254 @@ public class MethodConfig {
     public List<DeclaredType> getExtraMarkerInterfaces() {
         return markerInterfaces;
     }
+
+    /**
+     * ヘッジ起動を開始するまでの待機時間(ミリ秒)を返す。
+     * @return ヘッジ起動を開始するまでの待機時間、ヘッジ起動を行わない場合は{@code 0}
+     */
+    public long getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    /**
+     * ヘッジ起動を開始するまでの待機時間(ミリ秒)を設定する。
+     * @param hedgeDelay ヘッジ起動を開始するまでの待機時間、ヘッジ起動を行わない場合は{@code 0}
+     * @throws IllegalArgumentException 引数に負の値が指定された場合
+     */
+    public void setHedgeDelay(long hedgeDelay) {
+        if (hedgeDelay < 0) {
+            throw new IllegalArgumentException("hedgeDelay must not be negative"); //$NON-NLS-1$
+        }
+        this.hedgeDelay = hedgeDelay;
+    }
+
+    /**
+     * 同時実行数の上限を返す。
+     * @return 同時実行数の上限、制限しない場合は{@code 0}
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * 同時実行数の上限を設定する。
+     * @param maxConcurrency 同時実行数の上限、制限しない場合は{@code 0}
+     * @throws IllegalArgumentException 引数に負の値が指定された場合
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        if (maxConcurrency < 0) {
+            throw new IllegalArgumentException("maxConcurrency must not be negative"); //$NON-NLS-1$
+        }
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * 同時実行数の上限に達した際の振る舞いを返す。
+     * @return 同時実行数の上限に達した際の振る舞い
+     */
+    public ConcurrencyPolicy getConcurrencyPolicy() {
+        return concurrencyPolicy;
+    }
+
+    /**
+     * 同時実行数の上限に達した際の振る舞いを設定する。
+     * @param concurrencyPolicy 同時実行数の上限に達した際の振る舞い
+     */
+    public void setConcurrencyPolicy(ConcurrencyPolicy concurrencyPolicy) {
+        if (concurrencyPolicy == null) {
+            throw new IllegalArgumentException("concurrencyPolicy is null"); //$NON-NLS-1$
+        }
+        this.concurrencyPolicy = concurrencyPolicy;
+    }
+
+    /**
+     * 同時実行数の上限に達した際に許可を待機する最大の時間(ミリ秒)を返す。
+     * @return 許可を待機する最大の時間、無期限に待機する場合は{@code 0}
+     */
+    public long getConcurrencyTimeout() {
+        return concurrencyTimeout;
+    }
+
+    /**
+     * 同時実行数の上限に達した際に許可を待機する最大の時間(ミリ秒)を設定する。
+     * @param concurrencyTimeout 許可を待機する最大の時間、無期限に待機する場合は{@code 0}
+     * @throws IllegalArgumentException 引数に負の値が指定された場合
+     */
+    public void setConcurrencyTimeout(long concurrencyTimeout) {
+        if (concurrencyTimeout < 0) {
+            throw new IllegalArgumentException("concurrencyTimeout must not be negative"); //$NON-NLS-1$
+        }
+        this.concurrencyTimeout = concurrencyTimeout;
+    }
+
+    /**
+     * 生成する実装クラスの優先度を返す。
+     * @return 生成する実装クラスの優先度
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * 生成する実装クラスの優先度を設定する。
+     * @param priority 生成する実装クラスの優先度
+     */
+    public void setPriority(int priority) {
+        this.priority = priority;
+    }
+
+    /**
+     * 実行時の優先度を表す仮引数の位置を返す。
+     * @return 実行時の優先度を表す仮引数の位置(0起算)、存在しない場合は{@code -1}
+     */
+    public int getPriorityParameter() {
+        return priorityParameter;
+    }
+
+    /**
+     * 実行時の優先度を表す仮引数の位置を設定する。
+     * @param priorityParameter 実行時の優先度を表す仮引数の位置(0起算)、存在しない場合は{@code -1}
+     * @throws IllegalArgumentException 引数に{@code -1}未満の値が指定された場合
+     */
+    public void setPriorityParameter(int priorityParameter) {
+        if (priorityParameter < -1) {
+            throw new IllegalArgumentException("priorityParameter must be >= -1"); //$NON-NLS-1$
+        }
+        this.priorityParameter = priorityParameter;
+    }
+
+    /**
+     * 分割キーを表す仮引数の位置を返す。
+     * @return 分割キーを表す仮引数の位置(0起算)、存在しない場合は{@code -1}
+     */
+    public int getPartitionKeyParameter() {
+        return partitionKeyParameter;
+    }
+
+    /**
+     * 分割キーを表す仮引数の位置を設定する。
+     * @param partitionKeyParameter 分割キーを表す仮引数の位置(0起算)、存在しない場合は{@code -1}
+     * @throws IllegalArgumentException 引数に{@code -1}未満の値が指定された場合
+     */
+    public void setPartitionKeyParameter(int partitionKeyParameter) {
+        if (partitionKeyParameter < -1) {
+            throw new IllegalArgumentException("partitionKeyParameter must be >= -1"); //$NON-NLS-1$
+        }
+        this.partitionKeyParameter = partitionKeyParameter;
+    }
+
+    /**
+     * 生成する実装クラスの負荷の種類を返す。
+     * @return 生成する実装クラスの負荷の種類
+     */
+    public TaskKind getKind() {
+        return kind;
+    }
+
+    /**
+     * 生成する実装クラスの負荷の種類を設定する。
+     * @param kind 生成する実装クラスの負荷の種類
+     */
+    public void setKind(TaskKind kind) {
+        if (kind == null) {
+            throw new IllegalArgumentException("kind is null"); //$NON-NLS-1$
+        }
+        this.kind = kind;
+    }
+
+    /**
+     * 生成する実装クラスが保持するデータ量の見積もりを公開する場合のみ{@code true}を返す。
+     * @return データ量の見積もりを公開する場合のみ{@code true}
+     */
+    public boolean isEstimateSize() {
+        return estimateSize;
+    }
+
+    /**
+     * 生成する実装クラスが保持するデータ量の見積もりを公開するかどうかを設定する。
+     * @param estimateSize データ量の見積もりを公開する場合は{@code true}
+     */
+    public void setEstimateSize(boolean estimateSize) {
+        this.estimateSize = estimateSize;
+    }
+
+    /**
+     * 生成する実装クラスが起動対象のインスタンスを弱参照で保持する場合のみ{@code true}を返す。
+     * @return 起動対象のインスタンスを弱参照で保持する場合のみ{@code true}
+     */
+    public boolean isWeakTarget() {
+        return weakTarget;
+    }
+
+    /**
+     * 生成する実装クラスが起動対象のインスタンスを弱参照で保持するかどうかを設定する。
+     * @param weakTarget 起動対象のインスタンスを弱参照で保持する場合は{@code true}
+     */
+    public void setWeakTarget(boolean weakTarget) {
+        this.weakTarget = weakTarget;
+    }
+
+    /**
+     * 生成する実装クラスが実行の期限を持てる場合のみ{@code true}を返す。
+     * @return 実行の期限を持てる場合のみ{@code true}
+     */
+    public boolean isDeadline() {
+        return deadline;
+    }
+
+    /**
+     * 生成する実装クラスが実行の期限を持てるかどうかを設定する。
+     * @param deadline 実行の期限を持てる場合は{@code true}
+     */
+    public void setDeadline(boolean deadline) {
+        this.deadline = deadline;
+    }
+
+    /**
+     * パイプラインの段として利用するメソッドを生成する場合のみ{@code true}を返す。
+     * @return パイプラインの段として利用するメソッドを生成する場合のみ{@code true}
+     */
+    public boolean isStage() {
+        return stage;
+    }
+
+    /**
+     * パイプラインの段として利用するメソッドを生成するかどうかを設定する。
+     * @param stage パイプラインの段として利用するメソッドを生成する場合は{@code true}
+     */
+    public void setStage(boolean stage) {
+        this.stage = stage;
+    }
+
+    /**
+     * 要素を逐次配信するメソッドが配信する要素の型を返す。
+     * @return 配信する要素の型、該当するメソッドを生成しない場合は{@code null}
+     */
+    public TypeMirror getPublisherElementType() {
+        return publisherElementType;
+    }
+
+    /**
+     * 要素を逐次配信するメソッドが配信する要素の型を設定する。
+     * @param elementType 配信する要素の型、該当するメソッドを生成しない場合は{@code null}
+     */
+    public void setPublisherElementType(TypeMirror elementType) {
+        this.publisherElementType = elementType;
+    }
+
+    /**
+     * 返された{@code Future}を平坦化して起動するメソッドの結果型を返す。
+     * @return 平坦化した{@code Future}の結果型、該当するメソッドを生成しない場合は{@code null}
+     */
+    public TypeMirror getAsyncResultType() {
+        return asyncResultType;
+    }
+
+    /**
+     * 返された{@code Future}を平坦化して起動するメソッドの結果型を設定する。
+     * @param resultType 平坦化した{@code Future}の結果型、該当するメソッドを生成しない場合は{@code null}
+     */
+    public void setAsyncResultType(TypeMirror resultType) {
+        this.asyncResultType = resultType;
+    }
 }
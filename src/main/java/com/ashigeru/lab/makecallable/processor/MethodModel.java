@@ -16,13 +16,15 @@
 package com.ashigeru.lab.makecallable.processor;
 
 import java.text.MessageFormat;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 
+import com.ashigeru.lab.makecallable.runtime.TaskKind;
 import com.sun.mirror.declaration.MethodDeclaration;
 import com.sun.mirror.declaration.Modifier;
 import com.sun.mirror.declaration.ParameterDeclaration;
-import com.sun.mirror.declaration.TypeParameterDeclaration;
 import com.sun.mirror.type.DeclaredType;
 import com.sun.mirror.type.ReferenceType;
 import com.sun.mirror.type.TypeMirror;
@@ -38,23 +40,117 @@ import com.sun.mirror.util.Types;
  */
 public class MethodModel {
 
-    private Types types;
+    private final SourcePosition position;
 
-    private MethodConfig config;
+    private final Modifier access;
 
-    private MethodDeclaration decl;
+    private final List<TypeParameterModel> typeParameters;
+
+    private final TypeMirror returnType;
+
+    private final String name;
+
+    private final String targetName;
+
+    private final List<String> parameterNames;
+
+    private final List<TypeMirror> parameterTypes;
+
+    private final List<TypeMirror> erasedParameterTypes;
+
+    private final List<ReferenceType> exceptionTypes;
+
+    private final boolean staticMethod;
+
+    private final boolean voidMethod;
+
+    private final long serialVersionUid;
+
+    private final List<DeclaredType> extraMarkerInterfaces;
+
+    private final long hedgeDelay;
+
+    private final int maxConcurrency;
+
+    private final ConcurrencyPolicy concurrencyPolicy;
+
+    private final long concurrencyTimeout;
+
+    private final int priority;
+
+    private final int priorityParameter;
+
+    private final int partitionKeyParameter;
+
+    private final TaskKind kind;
+
+    private final boolean sized;
+
+    private final boolean weakTarget;
+
+    private final boolean deadlined;
+
+    private final boolean stage;
+
+    private final TypeMirror publisherElementType;
+
+    private final TypeMirror asyncResultType;
 
     /**
      * インスタンスを生成する。
-     * @param types
-     * @param config
-     * @param decl
+     * <p>
+     * 生成に必要な情報はこの時点ですべて計算され、以後は起動対象メソッドの宣言や{@code config}を参照しない。
+     * </p>
+     * @param types 型に関するユーティリティ
+     * @param config このメソッドの設定
+     * @param decl 起動対象メソッドの宣言
      */
     public MethodModel(Types types, MethodConfig config, MethodDeclaration decl) {
-        super();
-        this.types = types;
-        this.config = config;
-        this.decl = decl;
+        if (types == null) {
+            throw new IllegalArgumentException("types is null"); //$NON-NLS-1$
+        }
+        if (config == null) {
+            throw new IllegalArgumentException("config is null"); //$NON-NLS-1$
+        }
+        if (decl == null) {
+            throw new IllegalArgumentException("decl is null"); //$NON-NLS-1$
+        }
+        this.position = decl.getPosition();
+        this.access = computeAccess(config, decl);
+        this.typeParameters = TypeParameterModel.toModels(decl.getFormalTypeParameters());
+        this.returnType = decl.getReturnType();
+        this.name = MessageFormat.format(config.getNamePattern(), decl.getSimpleName());
+        this.targetName = decl.getSimpleName();
+        List<String> names = new ArrayList<String>();
+        List<TypeMirror> declared = new ArrayList<TypeMirror>();
+        List<TypeMirror> erased = new ArrayList<TypeMirror>();
+        for (ParameterDeclaration p : decl.getParameters()) {
+            names.add(p.getSimpleName());
+            declared.add(p.getType());
+            erased.add(types.getErasure(p.getType()));
+        }
+        this.parameterNames = Collections.unmodifiableList(names);
+        this.parameterTypes = Collections.unmodifiableList(declared);
+        this.erasedParameterTypes = Collections.unmodifiableList(erased);
+        this.exceptionTypes = freeze(decl.getThrownTypes());
+        this.staticMethod = decl.getModifiers().contains(Modifier.STATIC);
+        this.voidMethod = types.getVoidType().equals(decl.getReturnType());
+        this.serialVersionUid = computeSerialVersionUid(types, decl);
+        this.extraMarkerInterfaces = freeze(config.getExtraMarkerInterfaces());
+        this.hedgeDelay = config.getHedgeDelay();
+        this.maxConcurrency = config.getMaxConcurrency();
+        this.concurrencyPolicy = config.getConcurrencyPolicy();
+        this.concurrencyTimeout = config.getConcurrencyTimeout();
+        this.priority = config.getPriority();
+        this.priorityParameter = config.getPriorityParameter();
+        this.partitionKeyParameter = config.getPartitionKeyParameter();
+        this.kind = config.getKind();
+        this.sized = config.isEstimateSize();
+        this.weakTarget = config.isWeakTarget() && staticMethod == false;
+        this.deadlined = config.isDeadline();
+        this.stage = config.isStage();
+        this.publisherElementType = config.getPublisherElementType();
+        this.asyncResultType = config.getAsyncResultType();
     }
 
     /**
@@ -62,7 +158,7 @@ public class MethodModel {
      * @return 起動対象メソッドのソースコード上の位置
      */
     public SourcePosition getPosition() {
-        return decl.getPosition();
+        return position;
     }
 
     /**
@@ -73,28 +169,15 @@ public class MethodModel {
      * @return 生成するデリゲートメソッドのアクセス性に関する修飾子(public, protected, or null (package default))
      */
     public Modifier getAccess() {
-        AccessPolicy access = config.getAccessOverride();
-        if (access == AccessPolicy.PUBLIC) {
-            return Modifier.PUBLIC;
-        }
-        if (access == AccessPolicy.PACKAGE) {
-            return null;
-        }
-        if (decl.getModifiers().contains(Modifier.PUBLIC)) {
-            return Modifier.PUBLIC;
-        }
-        else if (decl.getModifiers().contains(Modifier.PROTECTED)) {
-            return Modifier.PROTECTED;
-        }
-        return null;
+        return access;
     }
 
     /**
      * 生成するデリゲートメソッドの仮型引数一覧を返す。
      * @return 生成するデリゲートメソッドの仮型引数一覧
      */
-    public Collection<TypeParameterDeclaration> getTypeParameters() {
-        return decl.getFormalTypeParameters();
+    public List<TypeParameterModel> getTypeParameters() {
+        return typeParameters;
     }
 
     /**
@@ -102,7 +185,7 @@ public class MethodModel {
      * @return 生成するデリゲートメソッドの戻り値型
      */
     public TypeMirror getReturnType() {
-        return decl.getReturnType();
+        return returnType;
     }
 
     /**
@@ -110,32 +193,47 @@ public class MethodModel {
      * @return 生成するデリゲートメソッドの名前
      */
     public String getName() {
-        String pattern = config.getNamePattern();
-        return MessageFormat.format(pattern, decl.getSimpleName());
+        return name;
     }
 
     /**
      * 実際に起動されるメソッドの名前を返す。
      * @return 実際に起動されるメソッドの名前
      */
-    public Object getTargetName() {
-        return decl.getSimpleName();
+    public String getTargetName() {
+        return targetName;
+    }
+
+    /**
+     * 生成するデリゲートメソッドの仮引数名の一覧を返す。
+     * @return 生成するデリゲートメソッドの仮引数名の一覧
+     */
+    public List<String> getParameterNames() {
+        return parameterNames;
+    }
+
+    /**
+     * 生成するデリゲートメソッドの引数型の一覧を返す。
+     * @return 生成するデリゲートメソッドの引数型の一覧 ({@link #getParameterNames()}の順序に対応する)
+     */
+    public List<TypeMirror> getParameterTypes() {
+        return parameterTypes;
     }
 
     /**
-     * 生成するデリゲートメソッドの引数一覧を返す。
-     * @return 生成するデリゲートメソッドの引数一覧
+     * 生成するデリゲートメソッドの引数型を消去したものの一覧を返す。
+     * @return 引数型を消去したものの一覧 ({@link #getParameterNames()}の順序に対応する)
      */
-    public Collection<ParameterDeclaration> getParameters() {
-        return decl.getParameters();
+    public List<TypeMirror> getErasedParameterTypes() {
+        return erasedParameterTypes;
     }
 
     /**
      * 生成するデリゲートメソッドの例外一覧を返す。
      * @return 生成するデリゲートメソッドの例外一覧
      */
-    public Collection<ReferenceType> getExceptionTypes() {
-        return decl.getThrownTypes();
+    public List<ReferenceType> getExceptionTypes() {
+        return exceptionTypes;
     }
 
     /**
@@ -143,7 +241,162 @@ public class MethodModel {
      * @return 生成する実装クラスに付与するマーカーインターフェースの一覧
      */
     public List<DeclaredType> getExtraMarkerInterfaces() {
-        return config.getExtraMarkerInterfaces();
+        return extraMarkerInterfaces;
+    }
+
+    /**
+     * ヘッジ起動を開始するまでの待機時間(ミリ秒)を返す。
+     * @return ヘッジ起動を開始するまでの待機時間、ヘッジ起動を行わない場合は{@code 0}
+     */
+    public long getHedgeDelay() {
+        return hedgeDelay;
+    }
+
+    /**
+     * ヘッジ起動用のメソッドを生成する場合のみ{@code true}を返す。
+     * @return ヘッジ起動用のメソッドを生成する場合のみ{@code true}
+     */
+    public boolean isHedged() {
+        return hedgeDelay > 0;
+    }
+
+    /**
+     * 同時実行数の上限を返す。
+     * @return 同時実行数の上限、制限しない場合は{@code 0}
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * 同時実行数の上限に達した際の振る舞いを返す。
+     * @return 同時実行数の上限に達した際の振る舞い
+     */
+    public ConcurrencyPolicy getConcurrencyPolicy() {
+        return concurrencyPolicy;
+    }
+
+    /**
+     * 同時実行数の上限に達した際に許可を待機する最大の時間(ミリ秒)を返す。
+     * @return 許可を待機する最大の時間、無期限に待機する場合は{@code 0}
+     */
+    public long getConcurrencyTimeout() {
+        return concurrencyTimeout;
+    }
+
+    /**
+     * 同時実行数を制限する場合のみ{@code true}を返す。
+     * @return 同時実行数を制限する場合のみ{@code true}
+     */
+    public boolean isConcurrencyLimited() {
+        return maxConcurrency > 0;
+    }
+
+    /**
+     * 生成する実装クラスの優先度を返す。
+     * @return 生成する実装クラスの優先度
+     */
+    public int getPriority() {
+        return priority;
+    }
+
+    /**
+     * 実行時の優先度を表す仮引数の位置を返す。
+     * @return 実行時の優先度を表す仮引数の位置(0起算)、存在しない場合は{@code -1}
+     */
+    public int getPriorityParameter() {
+        return priorityParameter;
+    }
+
+    /**
+     * 生成する実装クラスが優先度を持つ場合のみ{@code true}を返す。
+     * @return 生成する実装クラスが優先度を持つ場合のみ{@code true}
+     */
+    public boolean isPrioritized() {
+        return priority != 0 || priorityParameter >= 0;
+    }
+
+    /**
+     * 分割キーを表す仮引数の位置を返す。
+     * @return 分割キーを表す仮引数の位置(0起算)、存在しない場合は{@code -1}
+     */
+    public int getPartitionKeyParameter() {
+        return partitionKeyParameter;
+    }
+
+    /**
+     * 生成する実装クラスが分割キーを持つ場合のみ{@code true}を返す。
+     * @return 生成する実装クラスが分割キーを持つ場合のみ{@code true}
+     */
+    public boolean isPartitioned() {
+        return partitionKeyParameter >= 0;
+    }
+
+    /**
+     * 生成する実装クラスの負荷の種類を返す。
+     * @return 生成する実装クラスの負荷の種類
+     */
+    public TaskKind getKind() {
+        return kind;
+    }
+
+    /**
+     * 生成する実装クラスが負荷の種類を公開する場合のみ{@code true}を返す。
+     * @return 生成する実装クラスが負荷の種類を公開する場合のみ{@code true}
+     */
+    public boolean isClassified() {
+        return kind != TaskKind.DEFAULT;
+    }
+
+    /**
+     * 生成する実装クラスが保持するデータ量の見積もりを公開する場合のみ{@code true}を返す。
+     * @return データ量の見積もりを公開する場合のみ{@code true}
+     */
+    public boolean isSized() {
+        return sized;
+    }
+
+    /**
+     * 生成する実装クラスが起動対象のインスタンスを弱参照で保持する場合のみ{@code true}を返す。
+     * <p>
+     * 起動対象がクラスメソッドである場合は常に{@code false}を返す。
+     * </p>
+     * @return 起動対象のインスタンスを弱参照で保持する場合のみ{@code true}
+     */
+    public boolean isWeakTarget() {
+        return weakTarget;
+    }
+
+    /**
+     * 生成する実装クラスが実行の期限を持てる場合のみ{@code true}を返す。
+     * @return 実行の期限を持てる場合のみ{@code true}
+     */
+    public boolean isDeadlined() {
+        return deadlined;
+    }
+
+    /**
+     * パイプラインの段として利用するメソッドを生成する場合のみ{@code true}を返す。
+     * @return パイプラインの段として利用するメソッドを生成する場合のみ{@code true}
+     */
+    public boolean isStage() {
+        return stage;
+    }
+
+    /**
+     * 要素を逐次配信するメソッドが配信する要素の型を返す。
+     * @return 配信する要素の型、該当するメソッドを生成しない場合は{@code null}
+     */
+    public TypeMirror getPublisherElementType() {
+        return publisherElementType;
+    }
+
+    /**
+     * 返された{@code Future}を平坦化して起動するメソッドの結果型を返す。
+     * @return 平坦化した{@code Future}の結果型、該当するメソッドを生成しない場合は{@code null}
+     */
+    public TypeMirror getAsyncResultType() {
+        return asyncResultType;
     }
 
     /**
@@ -151,7 +404,7 @@ public class MethodModel {
      * @return 起動対象がクラスメソッドである場合のみ{@code true}
      */
     public boolean isStatic() {
-        return decl.getModifiers().contains(Modifier.STATIC);
+        return staticMethod;
     }
 
     /**
@@ -159,6 +412,58 @@ public class MethodModel {
      * @return 起動対象が戻り値を持たない場合のみ{@code true}
      */
     public boolean isVoid() {
-        return types.getVoidType().equals(decl.getReturnType());
+        return voidMethod;
+    }
+
+    /**
+     * 生成する実装クラスの{@code serialVersionUID}を返す。
+     * @return 生成する実装クラスの{@code serialVersionUID}
+     */
+    public long getSerialVersionUid() {
+        return serialVersionUid;
+    }
+
+    private static Modifier computeAccess(MethodConfig config, MethodDeclaration decl) {
+        assert config != null;
+        assert decl != null;
+        AccessPolicy access = config.getAccessOverride();
+        if (access == AccessPolicy.PUBLIC) {
+            return Modifier.PUBLIC;
+        }
+        if (access == AccessPolicy.PACKAGE) {
+            return null;
+        }
+        if (decl.getModifiers().contains(Modifier.PUBLIC)) {
+            return Modifier.PUBLIC;
+        }
+        else if (decl.getModifiers().contains(Modifier.PROTECTED)) {
+            return Modifier.PROTECTED;
+        }
+        return null;
+    }
+
+    private static long computeSerialVersionUid(Types types, MethodDeclaration decl) {
+        assert types != null;
+        assert decl != null;
+        // 直列化形式の互換性を保つため、型の消去の文字列表現から計算する
+        long result = 0;
+        if (decl.getModifiers().contains(Modifier.STATIC) == false) {
+            result++;
+            result += types.getErasure(types.getDeclaredType(decl.getDeclaringType())).toString().hashCode();
+        }
+        for (ParameterDeclaration p : decl.getParameters()) {
+            result *= 31;
+            result += types.getErasure(p.getType()).toString().hashCode();
+        }
+        if (types.getVoidType().equals(decl.getReturnType()) == false) {
+            result *= 31;
+            result += types.getErasure(decl.getReturnType()).toString().hashCode();
+        }
+        return result;
+    }
+
+    private static <T> List<T> freeze(Collection<? extends T> values) {
+        assert values != null;
+        return Collections.unmodifiableList(new ArrayList<T>(values));
     }
 }
@@ -38,6 +38,16 @@ public class Names {
      */
     public static final String CONTAINER = MAKE_CALLABLE + ".Container";
 
+    /**
+     * 実行時の優先度を表す仮引数に付与する注釈の限定名。
+     */
+    public static final String PRIORITY = MAKE_CALLABLE + ".Priority";
+
+    /**
+     * 分割キーを表す仮引数に付与する注釈の限定名。
+     */
+    public static final String PARTITION_KEY = MAKE_CALLABLE + ".PartitionKey";
+
     /**
      * 生成するデリゲートクラスやコンテナクラスのアクセス修飾子を指定するプロパティ名。
      */
@@ -48,11 +58,81 @@ public class Names {
      */
     public static final String COMMON_NAME_PATTERN = "name";
 
+    /**
+     * コンテナクラスに生成するウォームアップ用のメソッド名を指定するプロパティ名。
+     */
+    public static final String CONTAINER_WARM_UP = "warmUp";
+
     /**
      * 生成するデリゲートクラスの直列化可能性を指定するプロパティ名。
      */
     public static final String MAKE_CALLABLE_SERIALIZABLE = "serializable";
 
+    /**
+     * 生成するデリゲートクラスのヘッジ起動を開始するまでの待機時間(ミリ秒)を指定するプロパティ名。
+     */
+    public static final String MAKE_CALLABLE_HEDGE_DELAY = "hedgeDelay";
+
+    /**
+     * 生成するデリゲートクラスの同時実行数の上限を指定するプロパティ名。
+     */
+    public static final String MAKE_CALLABLE_MAX_CONCURRENCY = "maxConcurrency";
+
+    /**
+     * 同時実行数の上限に達した際の振る舞いを指定するプロパティ名。
+     */
+    public static final String MAKE_CALLABLE_CONCURRENCY_POLICY = "concurrencyPolicy";
+
+    /**
+     * 同時実行数の上限に達した際に許可を待機する最大の時間(ミリ秒)を指定するプロパティ名。
+     */
+    public static final String MAKE_CALLABLE_CONCURRENCY_TIMEOUT = "concurrencyTimeout";
+
+    /**
+     * 生成するデリゲートクラスの優先度を指定するプロパティ名。
+     */
+    public static final String MAKE_CALLABLE_PRIORITY = "priority";
+
+    /**
+     * 生成するデリゲートクラスの負荷の種類を指定するプロパティ名。
+     */
+    public static final String MAKE_CALLABLE_KIND = "kind";
+
+    /**
+     * 生成するデリゲートクラスが保持するデータ量の見積もりを公開するかどうかを指定するプロパティ名。
+     */
+    public static final String MAKE_CALLABLE_ESTIMATE_SIZE = "estimateSize";
+
+    /**
+     * 生成するデリゲートクラスが起動対象のインスタンスを弱参照で保持するかどうかを指定するプロパティ名。
+     */
+    public static final String MAKE_CALLABLE_WEAK_TARGET = "weakTarget";
+
+    /**
+     * 生成するデリゲートクラスが実行の期限を持てるかどうかを指定するプロパティ名。
+     */
+    public static final String MAKE_CALLABLE_DEADLINE = "deadline";
+
+    /**
+     * パイプラインの段として利用するメソッドを生成するかどうかを指定するプロパティ名。
+     */
+    public static final String MAKE_CALLABLE_STAGE = "stage";
+
+    /**
+     * 要素を逐次配信するメソッドを生成するかどうかを指定するプロパティ名。
+     */
+    public static final String MAKE_CALLABLE_PUBLISHER = "publisher";
+
+    /**
+     * 返された{@code Future}を平坦化して起動するメソッドを生成するかどうかを指定するプロパティ名。
+     */
+    public static final String MAKE_CALLABLE_ASYNC = "async";
+
+    /**
+     * 生成されたコードが利用する実行時ライブラリのパッケージ名。
+     */
+    public static final String RUNTIME_PACKAGE = BASE_PACKAGE + ".runtime";
+
     /**
      * インスタンス生成の禁止。
      */
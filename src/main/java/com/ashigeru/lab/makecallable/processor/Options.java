@@ -32,7 +32,18 @@ public enum Options {
     /**
      * エンコーディング情報 (javac組み込みオプション)。
      */
-    ENCODING("encoding", false)
+    ENCODING("encoding", false),
+
+    /**
+     * 生成する実装クラスとそのフィールドを{@code final}とする不変モード。
+     */
+    IMMUTABLE("-Aimmutable", true),
+
+    /**
+     * 処理時間の記録を追記するファイルのパス。
+     * @see ProcessingProfile
+     */
+    PROFILE("-Aprofile", true),
     ;
 
     private String optionName;
@@ -53,8 +64,19 @@ public enum Options {
         return this.optionName;
     }
 
+    /**
+     * このオプションがこの注釈プロセッサに固有のものである場合のみ{@code true}を返す。
+     * @return このオプションがこの注釈プロセッサに固有のものである場合のみ{@code true}
+     */
+    public boolean isProcessorSpecific() {
+        return this.processorSpecific;
+    }
+
     /**
      * このオプションの値を返す。
+     * <p>
+     * 注釈プロセッサ固有のオプションは、{@code -Akey=value}の全体がキーとして渡された場合にも値を取り出す。
+     * </p>
      * @param environment 実行環境
      * @return 対応する値、不明の場合は{@code null}
      */
@@ -64,10 +86,57 @@ public enum Options {
         }
         Map<String, String> options = environment.getOptions();
         if (processorSpecific) {
-            return options.get(optionName);
+            String value = options.get(optionName);
+            if (value != null) {
+                return value;
+            }
+            return findValueInKey(options);
         }
         else {
             return options.get("-" + optionName);
         }
     }
+
+    /**
+     * このオプションが有効化されている場合のみ{@code true}を返す。
+     * <p>
+     * 値を持たずに指定された場合、または値が{@code true}である場合に有効とみなす。
+     * </p>
+     * @param environment 実行環境
+     * @return このオプションが有効化されている場合のみ{@code true}
+     */
+    public boolean isEnabled(AnnotationProcessorEnvironment environment) {
+        if (environment == null) {
+            throw new IllegalArgumentException("environment is null"); //$NON-NLS-1$
+        }
+        Map<String, String> options = environment.getOptions();
+        String key = processorSpecific ? optionName : "-" + optionName;
+        String value;
+        if (options.containsKey(key)) {
+            value = options.get(key);
+        }
+        else if (processorSpecific) {
+            value = findValueInKey(options);
+            if (value == null) {
+                return false;
+            }
+        }
+        else {
+            return false;
+        }
+        return value == null || Boolean.parseBoolean(value);
+    }
+
+    private String findValueInKey(Map<String, String> options) {
+        assert options != null;
+        assert processorSpecific;
+        // aptは"-Akey=value"を値のない一つのキーとして渡すことがある
+        String prefix = optionName + "=";
+        for (String key : options.keySet()) {
+            if (key.startsWith(prefix)) {
+                return key.substring(prefix.length());
+            }
+        }
+        return null;
+    }
 }
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.processor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 注釈プロセッサの処理時間を記録する。
+ * <p>
+ * 記録した内容は、コンテナごとに次の項目をタブで区切った行として出力される。
+ * </p>
+ * <ol>
+ * <li> 元になったクラスの限定名 </li>
+ * <li> 含まれるメソッドの数 </li>
+ * <li> モデルの構築に要した時間(ナノ秒) </li>
+ * <li> ソースプログラムの生成と出力に要した時間(ナノ秒) </li>
+ * </ol>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class ProcessingProfile {
+
+    private List<String> entries = new ArrayList<String>();
+
+    private int totalMethods;
+
+    private long totalModelNanos;
+
+    private long totalGenerateNanos;
+
+    /**
+     * コンテナひとつ分の処理時間を記録する。
+     * @param qualifiedName 元になったクラスの限定名
+     * @param methods 含まれるメソッドの数
+     * @param modelNanos モデルの構築に要した時間(ナノ秒)
+     * @param generateNanos ソースプログラムの生成と出力に要した時間(ナノ秒)
+     */
+    public void add(String qualifiedName, int methods, long modelNanos, long generateNanos) {
+        if (qualifiedName == null) {
+            throw new IllegalArgumentException("qualifiedName is null"); //$NON-NLS-1$
+        }
+        entries.add(String.format("%s\t%d\t%d\t%d", qualifiedName, methods, modelNanos, generateNanos));
+        totalMethods += methods;
+        totalModelNanos += modelNanos;
+        totalGenerateNanos += generateNanos;
+    }
+
+    /**
+     * これまでに記録した内容を指定のファイルの末尾に追記する。
+     * <p>
+     * 最後の行には、すべてのコンテナに対する合計を{@code *}という名前で出力する。
+     * </p>
+     * @param file 出力先のファイル
+     * @throws IOException 出力に失敗した場合
+     */
+    public void appendTo(File file) throws IOException {
+        if (file == null) {
+            throw new IllegalArgumentException("file is null"); //$NON-NLS-1$
+        }
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file, true), "UTF-8"));
+        try {
+            for (String entry : entries) {
+                out.println(entry);
+            }
+            out.println(String.format("*\t%d\t%d\t%d", totalMethods, totalModelNanos, totalGenerateNanos));
+        }
+        finally {
+            out.close();
+        }
+    }
+}
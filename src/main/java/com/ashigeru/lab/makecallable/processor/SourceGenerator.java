@@ -17,18 +17,23 @@ package com.ashigeru.lab.makecallable.processor;
 
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.io.Serializable;
+import java.io.StringWriter;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 
+import com.ashigeru.lab.makecallable.runtime.TaskKind;
 import com.sun.mirror.apt.AnnotationProcessorEnvironment;
 import com.sun.mirror.apt.Filer;
-import com.sun.mirror.declaration.ParameterDeclaration;
 import com.sun.mirror.declaration.TypeDeclaration;
+import com.sun.mirror.type.ArrayType;
 import com.sun.mirror.type.DeclaredType;
 import com.sun.mirror.type.PrimitiveType;
 import com.sun.mirror.type.TypeMirror;
+import com.sun.mirror.type.TypeVariable;
+import com.sun.mirror.type.WildcardType;
 
 /**
  * 実際にソースプログラムを生成する。
@@ -43,21 +48,63 @@ public class SourceGenerator {
 
     private static final String THIS = "__this__";
 
+    private static final String TARGET = "__target__";
+
     private static final String RETURN_TYPE_VAR = "R";
 
+    private static final String EXECUTOR = "__executor__";
+
+    private static final String HEDGED_SUFFIX = "Hedged";
+
+    private static final String STAGE_SUFFIX = "Stage";
+
+    private static final String PUBLISHER_SUFFIX = "Publisher";
+
+    private static final String CHUNK_SIZE = "__chunkSize__";
+
+    private static final String ASYNC_SUFFIX = "Async";
+
+    private static final String WARM_UP_TARGET = "__target__";
+
+    private static final long WEAK_REFERENCE_SIZE = 32;
+
+    private static final String ITERATIONS = "__iterations__";
+
+    private static final String BULKHEAD = "BULKHEAD";
+
+    private static final String PARTITION = "__partition__";
+
+    private static final String DEADLINE = "DEADLINE";
+
+    private static final String DEADLINE_FIELD = "__deadline__";
+
+    private static final String WITHIN_SUFFIX = "Within";
+
+    private static final String TIMEOUT = "__timeout__";
+
+    private static final String UNIT = "__unit__";
+
     private AnnotationProcessorEnvironment environment;
 
+    private StringWriter body;
+
     private SourceWriter out;
 
     private ContainerModel container;
 
-    private SourceGenerator(AnnotationProcessorEnvironment environment, SourceWriter out, ContainerModel container) {
+    private ImportBuilder imports;
+
+    private boolean immutable;
+
+    private SourceGenerator(AnnotationProcessorEnvironment environment, ContainerModel container) {
         assert environment != null;
-        assert out != null;
         assert container != null;
         this.environment = environment;
-        this.out = out;
+        this.body = new StringWriter();
+        this.out = new SourceWriter(new PrintWriter(body));
         this.container = container;
+        this.imports = new ImportBuilder(environment, container.getPackageName(), getReservedNames(container));
+        this.immutable = Options.IMMUTABLE.isEnabled(environment);
     }
 
     /**
@@ -75,36 +122,70 @@ public class SourceGenerator {
         if (container == null) {
             throw new IllegalArgumentException("container is null"); //$NON-NLS-1$
         }
+        // インポート宣言は本体で参照した型から決まるため、先に本体を構築しておく
+        SourceGenerator generator = new SourceGenerator(environment, container);
+        generator.generateContainer();
         PrintWriter out = open(environment, container);
         try {
-            SourceGenerator generator = new SourceGenerator(environment, new SourceWriter(out), container);
-            generator.generateHeadComments();
-            generator.generatePackageDecl();
-            generator.generateContainer();
+            SourceWriter head = new SourceWriter(out);
+            generator.generateHeadComments(head);
+            generator.generatePackageDecl(head);
+            generator.generateImportDecls(head);
+            out.print(generator.body);
         }
         finally {
             out.close();
         }
     }
 
-    private void generateHeadComments() {
+    private static List<String> getReservedNames(ContainerModel container) {
+        assert container != null;
+        // 生成するクラス、型変数、変数の名前と衝突する単純名は利用しない
+        List<String> results = new ArrayList<String>();
+        results.add(container.getSimpleName());
+        results.add(RETURN_TYPE_VAR);
+        results.add(BULKHEAD);
+        results.add(DEADLINE);
+        for (TypeParameterModel typeParameter : container.getTypeParameters()) {
+            results.add(typeParameter.getName());
+        }
+        for (MethodModel method : container.getMethods()) {
+            results.add(method.getName());
+            for (TypeParameterModel typeParameter : method.getTypeParameters()) {
+                results.add(typeParameter.getName());
+            }
+            results.addAll(method.getParameterNames());
+        }
+        return results;
+    }
+
+    private void generateHeadComments(SourceWriter head) {
+        assert head != null;
         List<String> headComments = getHeadComments();
         if (headComments.isEmpty()) {
             return;
         }
-        out.line("/*");
-        out.begin(" * ");
+        head.line("/*");
+        head.begin(" * ");
         for (String line : headComments) {
-            out.line(line);
+            head.line(line);
         }
-        out.end();
-        out.line(" */");
+        head.end();
+        head.line(" */");
     }
 
-    private void generatePackageDecl() {
+    private void generatePackageDecl(SourceWriter head) {
+        assert head != null;
         String packageName = container.getPackageName();
-        if (packageName != null) {
-            out.line("package ${[0]};", packageName);
+        if (packageName.length() >= 1) {
+            head.line("package ${[0]};", packageName);
+        }
+    }
+
+    private void generateImportDecls(SourceWriter head) {
+        assert head != null;
+        for (String name : imports.getImports()) {
+            head.line("import ${[0]};", name);
         }
     }
 
@@ -117,7 +198,7 @@ public class SourceGenerator {
         out.line("${[0] }class ${[1]}${<[2]>} {",
             container.getAccess(),
             container.getSimpleName(),
-            container.getTypeParameters());
+            typeParametersOf(container.getTypeParameters()));
         out.begin(INDENT_UNIT);
         generateContainerBody();
         out.end();
@@ -125,40 +206,101 @@ public class SourceGenerator {
     }
 
     private void generateContainerBody() {
+        List<MethodModel> methods = container.getMethods();
         generateThisField();
+        for (MethodModel method : methods) {
+            if (isShareable(method)) {
+                generateSharedField(method);
+            }
+        }
         generateContainerConstructor();
-        List<MethodModel> methods = container.getMethods();
         for (MethodModel method : methods) {
             generateDelegate(method);
         }
+        for (MethodModel method : methods) {
+            if (method.isHedged()) {
+                generateHedgedDelegate(method);
+            }
+        }
+        for (MethodModel method : methods) {
+            if (method.isDeadlined()) {
+                generateDeadlineDelegate(method);
+            }
+        }
+        for (MethodModel method : methods) {
+            if (method.isStage()) {
+                generateStageDelegate(method);
+            }
+        }
+        for (MethodModel method : methods) {
+            if (method.getPublisherElementType() != null) {
+                generatePublisherDelegate(method, method.getPublisherElementType());
+            }
+        }
+        for (MethodModel method : methods) {
+            if (method.getAsyncResultType() != null) {
+                generateAsyncDelegate(method, method.getAsyncResultType());
+            }
+        }
+        if (container.getWarmUpName() != null) {
+            generateWarmUp(container.getWarmUpName());
+        }
         for (MethodModel method : methods) {
             generateCallable(method);
         }
     }
 
     private void generateThisField() {
-        out.line("private ${[0]} ${[1]};", container.getType(), THIS);
+        out.line("${[0]} ${[1]} ${[2]};", fieldModifiers(), toName(container.getType()), THIS);
     }
 
     private void generateContainerConstructor() {
-        out.line("public ${[0]}(${[1]} target) {", container.getSimpleName(), container.getType());
+        out.line("public ${[0]}(${[1]} target) {", container.getSimpleName(), toName(container.getType()));
         out.begin(INDENT_UNIT);
         out.line("this.${[0]} = target;", THIS);
+        for (MethodModel method : container.getMethods()) {
+            if (isShareable(method) && method.isStatic() == false) {
+                out.line("this.${[0]} = new ${[1]}(target);", sharedNameOf(method), callableTypeOf(method));
+            }
+        }
         out.end();
         out.line("}");
     }
 
+    private boolean isShareable(MethodModel method) {
+        assert method != null;
+        // 引数を持たない起動はすべて等価なため、一つのインスタンスを使い回す
+        return method.getParameterNames().isEmpty()
+            && method.getTypeParameters().isEmpty();
+    }
+
+    private String sharedNameOf(MethodModel method) {
+        assert method != null;
+        return "__" + method.getName() + "__";
+    }
+
+    private void generateSharedField(MethodModel method) {
+        assert method != null;
+        if (method.isStatic()) {
+            out.line("private static final ${[0]} ${[1]} = new ${[0]}();",
+                callableTypeOf(method),
+                sharedNameOf(method));
+        }
+        else {
+            out.line("${[0]} ${[1]} ${[2]};", fieldModifiers(), callableTypeOf(method), sharedNameOf(method));
+        }
+    }
+
     private void generateDelegate(MethodModel method) {
         assert method != null;
-        out.line("${[0] }${[1] }${<[2]> }${[3]}<${[4]}> ${[5]}(${[6]})${ throws [7]} {",
+        out.line("${[0] }${[1] }${<[2]> }${[3]} ${[4]}(${[5]})${ throws [6]} {",
             method.getAccess(),
             method.isStatic() ? "static" : null,
-            method.getTypeParameters(),
-            method.getName(),
-            boxing(method.getReturnType()),
+            typeParametersOf(method.getTypeParameters()),
+            callableTypeOf(method),
             method.getTargetName(),
-            method.getParameters(),
-            method.getExceptionTypes());
+            parametersOf(method),
+            toNames(method.getExceptionTypes()));
         out.begin(INDENT_UNIT);
         generateDelegateBody(method);
         out.end();
@@ -167,28 +309,259 @@ public class SourceGenerator {
 
     private void generateDelegateBody(MethodModel method) {
         assert method != null;
-        if (method.isStatic()) {
-            out.line("return new ${[0]}<${[1]}>(${[3]});",
-                method.getName(),
-                boxing(method.getReturnType()),
+        if (isShareable(method)) {
+            out.line("return ${[0]}${[1]};", method.isStatic() ? null : "this.", sharedNameOf(method));
+        }
+        else if (method.isStatic()) {
+            out.line("return new ${[0]}(${[2]});",
+                callableTypeOf(method),
                 THIS,
-                toParameterNames(method.getParameters()));
+                method.getParameterNames());
         }
         else {
-            out.line("return new ${[0]}<${[1]}>(this.${[2]}${, [3]});",
-                method.getName(),
-                boxing(method.getReturnType()),
+            out.line("return new ${[0]}(this.${[1]}${, [2]});",
+                callableTypeOf(method),
                 THIS,
-                toParameterNames(method.getParameters()));
+                method.getParameterNames());
         }
     }
 
-    private void generateCallable(MethodModel method) {
+    private void generateHedgedDelegate(MethodModel method) {
+        assert method != null;
+        out.line("${[0] }${[1] }${<[2]> }${[3]} ${[4]}${[5]}(${[6]}${, [7]}) throws ${[8]}${, [9]} {",
+            method.getAccess(),
+            method.isStatic() ? "static" : null,
+            typeParametersOf(method.getTypeParameters()),
+            toName(boxing(method.getReturnType())),
+            method.getTargetName(),
+            HEDGED_SUFFIX,
+            imports.toName("java.util.concurrent.ExecutorService") + " " + EXECUTOR,
+            parametersOf(method),
+            imports.toName("java.lang.InterruptedException")
+                + ", " + imports.toName("java.util.concurrent.ExecutionException"),
+            toNames(method.getExceptionTypes()));
+        out.begin(INDENT_UNIT);
+        out.line("return ${[0]}.invoke(${[1]}, ${[2]}(${[3]}), ${[4]}L, ${[5]}.MILLISECONDS);",
+            runtime("HedgedInvoker"),
+            EXECUTOR,
+            method.getTargetName(),
+            method.getParameterNames(),
+            method.getHedgeDelay(),
+            imports.toName("java.util.concurrent.TimeUnit"));
+        out.end();
+        out.line("}");
+    }
+
+    private void generateDeadlineDelegate(MethodModel method) {
+        assert method != null;
+        out.line("${[0] }${[1] }${<[2]> }${[3]} ${[4]}${[5]}(long ${[6]}, ${[7]} ${[8]}${, [9]})${ throws [10]} {",
+            method.getAccess(),
+            method.isStatic() ? "static" : null,
+            typeParametersOf(method.getTypeParameters()),
+            callableTypeOf(method),
+            method.getTargetName(),
+            WITHIN_SUFFIX,
+            TIMEOUT,
+            imports.toName("java.util.concurrent.TimeUnit"),
+            UNIT,
+            parametersOf(method),
+            toNames(method.getExceptionTypes()));
+        out.begin(INDENT_UNIT);
+        List<String> arguments = new ArrayList<String>();
+        if (method.isStatic() == false) {
+            arguments.add("this." + THIS);
+        }
+        arguments.addAll(method.getParameterNames());
+        arguments.add(String.format("%s.after(%s, %s)", runtime("Deadlines"), TIMEOUT, UNIT));
+        out.line("return new ${[0]}(${[1]});", callableTypeOf(method), arguments);
+        out.end();
+        out.line("}");
+    }
+
+    private void generateWarmUp(String name) {
+        assert name != null;
+        List<String> classes = new ArrayList<String>();
+        boolean invocable = false;
+        for (MethodModel method : container.getMethods()) {
+            classes.add(method.getName() + ".class");
+            invocable |= method.isStatic() == false;
+        }
+        out.line("public static void ${[0]}() {", name);
+        out.begin(INDENT_UNIT);
+        out.line("${[0]}.initialize(${[1]});", runtime("WarmUp"), classes);
+        out.end();
+        out.line("}");
+        if (invocable == false) {
+            return;
+        }
+        // 副作用を避けるため、起動対象には呼び出し側が用意したスタブを渡せるようにする
+        out.line("public static ${<[0]> }int ${[1]}(${[2]} ${[3]}, int ${[4]}) {",
+            typeParametersOf(container.getTypeParameters()),
+            name,
+            toName(container.getType()),
+            WARM_UP_TARGET,
+            ITERATIONS);
+        out.begin(INDENT_UNIT);
+        out.line("${[0]}();", name);
+        out.line("int succeeded = 0;");
+        for (MethodModel method : container.getMethods()) {
+            // クラスメソッドは差し替えられないため、合成された起動の対象にしない
+            if (method.isStatic()) {
+                continue;
+            }
+            out.line("succeeded += ${[0]}.invoke(new ${[1]}${<[2]>}(${[3]}${, [4]}), ${[5]});",
+                runtime("WarmUp"),
+                method.getName(),
+                isMonomorphic(method) ? null : "Object",
+                WARM_UP_TARGET,
+                defaultArgumentsOf(method),
+                ITERATIONS);
+        }
+        out.line("return succeeded;");
+        out.end();
+        out.line("}");
+    }
+
+    private List<String> defaultArgumentsOf(MethodModel method) {
+        assert method != null;
+        List<String> results = new ArrayList<String>();
+        for (TypeMirror type : method.getErasedParameterTypes()) {
+            results.add(defaultValueOf(type));
+        }
+        return results;
+    }
+
+    private String defaultValueOf(TypeMirror type) {
+        assert type != null;
+        if ((type instanceof PrimitiveType) == false) {
+            return "null";
+        }
+        switch (((PrimitiveType) type).getKind()) {
+        case BOOLEAN:
+            return "false";
+        case BYTE:
+            return "(byte) 0";
+        case SHORT:
+            return "(short) 0";
+        case CHAR:
+            return "'\\0'";
+        case LONG:
+            return "0L";
+        case FLOAT:
+            return "0.0f";
+        case DOUBLE:
+            return "0.0";
+        default:
+            return "0";
+        }
+    }
+
+    private void generateStageDelegate(MethodModel method) {
         assert method != null;
-        out.line("public static class ${[0]}<${[1]}> implements java.util.concurrent.Callable<${[1]}>${, [2]} {",
+        TypeMirror parameterType = method.getParameterTypes().get(0);
+        String stageType = String.format("%s<%s, %s>",
+            runtime("Stage"),
+            toName(boxing(parameterType)),
+            toName(boxing(method.getReturnType())));
+        out.line("${[0] }${[1] }${[2]} ${[3]}${[4]}() {",
+            method.getAccess(),
+            method.isStatic() ? "static" : null,
+            stageType,
             method.getName(),
-            RETURN_TYPE_VAR,
-            method.getExtraMarkerInterfaces());
+            STAGE_SUFFIX);
+        out.begin(INDENT_UNIT);
+        out.line("return new ${[0]}() {", stageType);
+        out.begin(INDENT_UNIT);
+        out.line("public ${[0]} apply(${[1]} ${[2]}) throws ${[3]} {",
+            toName(boxing(method.getReturnType())),
+            toName(boxing(parameterType)),
+            argumentNameOf(0),
+            imports.toName("java.lang.Exception"));
+        out.begin(INDENT_UNIT);
+        out.line("return ${[0]}${.[1]}.${[2]}(${[3]}).call();",
+            container.getSimpleName(),
+            method.isStatic() ? null : "this",
+            method.getTargetName(),
+            argumentNameOf(0));
+        out.end();
+        out.line("}");
+        out.end();
+        out.line("};");
+        out.end();
+        out.line("}");
+    }
+
+    private void generatePublisherDelegate(MethodModel method, TypeMirror element) {
+        assert method != null;
+        assert element != null;
+        out.line("${[0] }${[1] }${<[2]> }${[3]}<${[4]}> ${[5]}${[6]}(${[7]}${, [8]})${ throws [9]} {",
+            method.getAccess(),
+            method.isStatic() ? "static" : null,
+            typeParametersOf(method.getTypeParameters()),
+            runtime("Publisher"),
+            toName(element),
+            method.getTargetName(),
+            PUBLISHER_SUFFIX,
+            imports.toName("java.util.concurrent.Executor") + " " + EXECUTOR + ", int " + CHUNK_SIZE,
+            parametersOf(method),
+            toNames(method.getExceptionTypes()));
+        out.begin(INDENT_UNIT);
+        out.line("return new ${[0]}<${[1]}>(${[2]}(${[3]}), ${[4]}, ${[5]});",
+            runtime("IterablePublisher"),
+            toName(element),
+            method.getTargetName(),
+            method.getParameterNames(),
+            EXECUTOR,
+            CHUNK_SIZE);
+        out.end();
+        out.line("}");
+    }
+
+    private void generateAsyncDelegate(MethodModel method, TypeMirror result) {
+        assert method != null;
+        assert result != null;
+        String futureType = imports.toName("java.util.concurrent.Future");
+        out.line("${[0] }${[1] }${<[2]> }${[3]}<${[4]}> ${[5]}${[6]}(${[7]}${, [8]})${ throws [9]} {",
+            method.getAccess(),
+            method.isStatic() ? "static" : null,
+            typeParametersOf(method.getTypeParameters()),
+            futureType,
+            toName(result),
+            method.getTargetName(),
+            ASYNC_SUFFIX,
+            imports.toName("java.util.concurrent.ExecutorService") + " " + EXECUTOR,
+            parametersOf(method),
+            toNames(method.getExceptionTypes()));
+        out.begin(INDENT_UNIT);
+        // 実行スレッドは内側のFutureを返した時点で解放され、その完了は呼び出し側が待機する
+        out.line("return ${[0]}.<${[1]}>flatten(${[2]}.submit(${[3]}(${[4]})));",
+            runtime("FlatteningFuture"),
+            toName(result),
+            EXECUTOR,
+            method.getTargetName(),
+            method.getParameterNames());
+        out.end();
+        out.line("}");
+    }
+
+    private void generateCallable(MethodModel method) {
+        assert method != null;
+        if (isMonomorphic(method)) {
+            out.line("public static ${[0] }class ${[1]} implements ${[4]}<${[2]}>${, [3]} {",
+                immutable ? "final" : null,
+                method.getName(),
+                resultTypeOf(method),
+                getExtraInterfaces(method),
+                imports.toName("java.util.concurrent.Callable"));
+        }
+        else {
+            out.line("public static ${[0] }class ${[1]}<${[2]}> implements ${[4]}<${[2]}>${, [3]} {",
+                immutable ? "final" : null,
+                method.getName(),
+                RETURN_TYPE_VAR,
+                getExtraInterfaces(method),
+                imports.toName("java.util.concurrent.Callable"));
+        }
         out.begin(INDENT_UNIT);
         generateCallableBody(method);
         out.end();
@@ -200,96 +573,546 @@ public class SourceGenerator {
         generateCallableFields(method);
         generateConstructor(method);
         generateCallMethod(method);
+        if (method.isPrioritized()) {
+            generatePriorityMethods(method);
+        }
+        if (method.isPartitioned()) {
+            generatePartitionMethods(method);
+        }
+        if (method.isClassified()) {
+            generateKindMethod(method);
+        }
+        if (method.isSized()) {
+            generateEstimatedSizeMethod(method);
+        }
+        if (method.isWeakTarget()) {
+            generateTargetAvailableMethod(method);
+        }
+        if (method.isDeadlined()) {
+            generateDeadlineMethods(method);
+        }
+        if (isShareable(method) && method.isStatic() && isSerializable(method)) {
+            generateReadResolveMethod(method);
+        }
+    }
+
+    private boolean isSerializable(MethodModel method) {
+        assert method != null;
+        TypeMirror serializable = getType(Serializable.class);
+        for (TypeMirror marker : method.getExtraMarkerInterfaces()) {
+            if (environment.getTypeUtils().isSubtype(marker, serializable)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private List<Object> getExtraInterfaces(MethodModel method) {
+        assert method != null;
+        List<Object> results = new ArrayList<Object>();
+        results.addAll(toNames(method.getExtraMarkerInterfaces()));
+        if (method.isPrioritized()) {
+            results.add(runtime("Prioritized"));
+            results.add(imports.toName("java.lang.Comparable") + "<" + runtime("Prioritized") + ">");
+        }
+        if (method.isPartitioned()) {
+            results.add(runtime("Partitioned"));
+        }
+        if (method.isClassified()) {
+            results.add(runtime("Classified"));
+        }
+        if (method.isSized()) {
+            results.add(runtime("Sized"));
+        }
+        if (method.isWeakTarget()) {
+            results.add(runtime("Detachable"));
+        }
+        if (method.isDeadlined()) {
+            results.add(runtime("Deadlined"));
+        }
+        return results;
     }
 
     private void generateCallableFields(MethodModel method) {
         assert method != null;
-        out.line("private static final long serialVersionUID = ${[0]}L;", calculateHash(method));
-        if (method.isStatic() == false) {
-            out.line("private ${[0]} ${[1]};", erase(container.getType()), THIS);
+        out.line("private static final long serialVersionUID = ${[0]}L;", method.getSerialVersionUid());
+        if (method.isConcurrencyLimited()) {
+            generateBulkheadField(method);
+        }
+        if (method.isDeadlined()) {
+            out.line("public static final ${[0]} ${[1]} = new ${[0]}();", runtime("DeadlineMonitor"), DEADLINE);
+        }
+        if (method.isWeakTarget()) {
+            out.line("${[0]} ${[1]}<${[2]}> ${[3]};",
+                fieldModifiers(),
+                imports.toName("java.lang.ref.WeakReference"),
+                toName(container.getErasedType()),
+                THIS);
         }
-        for (String parameter : erase(method.getParameters())) {
-            out.line("private ${[0]};", parameter);
+        else if (method.isStatic() == false) {
+            out.line("${[0]} ${[1]} ${[2]};", fieldModifiers(), toName(container.getErasedType()), THIS);
+        }
+        for (String parameter : erasedParametersOf(method)) {
+            out.line("${[0]} ${[1]};", fieldModifiers(), parameter);
+        }
+        if (method.isPartitioned()) {
+            out.line("${[0]} int ${[1]};", fieldModifiers(), PARTITION);
+        }
+        if (method.isDeadlined()) {
+            // 期限は同一のJVM内でのみ意味を持つため、直列化しない
+            out.line("${[0]} transient long ${[1]};", fieldModifiers(), DEADLINE_FIELD);
         }
     }
 
-    private void generateConstructor(MethodModel method) {
+    private void generateBulkheadField(MethodModel method) {
         assert method != null;
-        if (method.isStatic()) {
-            out.line("${[0]}(${[3]}) {",
-                method.getName(),
-                erase(container.getType()),
-                THIS,
-                erase(method.getParameters()));
+        if (method.getConcurrencyPolicy() == ConcurrencyPolicy.REJECT) {
+            out.line("public static final ${[0]} ${[1]} = ${[0]}.rejecting(${[2]});",
+                runtime("Bulkhead"),
+                BULKHEAD,
+                method.getMaxConcurrency());
         }
         else {
-            out.line("${[0]}(${[1]} ${[2]} ${, [3]}) {",
-                method.getName(),
-                erase(container.getType()),
-                THIS,
-                erase(method.getParameters()));
+            out.line("public static final ${[0]} ${[1]} = ${[0]}.waiting(${[2]}, ${[3]}L, ${[4]}.MILLISECONDS);",
+                runtime("Bulkhead"),
+                BULKHEAD,
+                method.getMaxConcurrency(),
+                method.getConcurrencyTimeout(),
+                imports.toName("java.util.concurrent.TimeUnit"));
         }
-        out.begin(INDENT_UNIT);
+    }
+
+    private void generateConstructor(MethodModel method) {
+        assert method != null;
+        List<String> parameters = new ArrayList<String>();
+        List<String> arguments = new ArrayList<String>();
         if (method.isStatic() == false) {
+            parameters.add(toName(container.getErasedType()) + " " + THIS);
+            arguments.add(THIS);
+        }
+        parameters.addAll(erasedParametersOf(method));
+        for (int i = 0, n = method.getParameterNames().size(); i < n; i++) {
+            arguments.add(argumentNameOf(i));
+        }
+        if (method.isDeadlined()) {
+            // 期限を持たない起動は、期限付きのコンストラクタに委譲する
+            out.line("${[0]}(${[1]}) {", method.getName(), parameters);
+            out.begin(INDENT_UNIT);
+            arguments.add(runtime("Deadlines") + ".NONE");
+            out.line("this(${[0]});", arguments);
+            out.end();
+            out.line("}");
+            parameters.add("long " + DEADLINE_FIELD);
+        }
+        out.line("${[0]}(${[1]}) {", method.getName(), parameters);
+        out.begin(INDENT_UNIT);
+        if (method.isWeakTarget()) {
+            out.line("this.${[0]} = new ${[1]}<${[2]}>(${[0]});",
+                THIS,
+                imports.toName("java.lang.ref.WeakReference"),
+                toName(container.getErasedType()));
+        }
+        else if (method.isStatic() == false) {
             out.line("this.${[0]} = ${[0]};", THIS);
         }
-        for (int i = 0, n = method.getParameters().size(); i < n; i++) {
+        for (int i = 0, n = method.getParameterNames().size(); i < n; i++) {
             out.line("this.${[0]} = ${[0]};", argumentNameOf(i));
         }
+        if (method.isPartitioned()) {
+            out.line("this.${[0]} = ${[1]};", PARTITION, partitionKeyHash(method));
+        }
+        if (method.isDeadlined()) {
+            out.line("this.${[0]} = ${[0]};", DEADLINE_FIELD);
+        }
         out.end();
         out.line("}");
     }
 
     private void generateCallMethod(MethodModel method) {
         assert method != null;
-        out.line("public ${[0]} call()${ throws [1]} {", RETURN_TYPE_VAR, method.getExceptionTypes());
+        out.line("public ${[0]} call()${ throws [1]} {", resultTypeOf(method), toNames(method.getExceptionTypes()));
+        out.begin(INDENT_UNIT);
+        if (method.isDeadlined()) {
+            generateDeadlineCheck(method);
+        }
+        if (method.isWeakTarget()) {
+            generateTargetDereference(method);
+        }
+        if (method.isConcurrencyLimited()) {
+            out.line("${[0]}.acquire();", BULKHEAD);
+            out.line("try {");
+            out.begin(INDENT_UNIT);
+            generateInvocation(method);
+            out.end();
+            out.line("}");
+            out.line("finally {");
+            out.begin(INDENT_UNIT);
+            out.line("${[0]}.release();", BULKHEAD);
+            out.end();
+            out.line("}");
+        }
+        else {
+            generateInvocation(method);
+        }
+        out.end();
+        out.line("}");
+    }
+
+    private void generateTargetDereference(MethodModel method) {
+        assert method != null;
+        // 許可を取得する前に、起動対象が回収されていれば即座に失敗する
+        out.line("final ${[0]} ${[1]} = this.${[2]}.get();", toName(container.getErasedType()), TARGET, THIS);
+        out.line("if (${[0]} == null) {", TARGET);
+        out.begin(INDENT_UNIT);
+        out.line("throw new ${[0]}(\"${[1]}.${[2]}\");",
+            runtime("TargetUnavailableException"),
+            container.getErasedType(),
+            method.getTargetName());
+        out.end();
+        out.line("}");
+    }
+
+    private void generateDeadlineCheck(MethodModel method) {
+        assert method != null;
+        // 期限を過ぎたタスクは、起動対象を参照する前に打ち切る
+        out.line("if (${[0]}.isExpired(this.${[1]})) {", runtime("Deadlines"), DEADLINE_FIELD);
+        out.begin(INDENT_UNIT);
+        out.line("throw ${[0]}.expire(\"${[1]}.${[2]}\");",
+            DEADLINE,
+            container.getErasedType(),
+            method.getTargetName());
+        out.end();
+        out.line("}");
+    }
+
+    private void generateInvocation(MethodModel method) {
+        assert method != null;
+        if (method.getKind() != TaskKind.BLOCKING_IO) {
+            generateCallBody(method);
+            return;
+        }
+        // ForkJoinPool上ではブロックを通知してから起動する
+        out.line("return ${[0]}.invoke(new ${[1]}<${[2]}>() {",
+            runtime("ManagedBlocking"),
+            imports.toName("java.util.concurrent.Callable"),
+            resultTypeOf(method));
+        out.begin(INDENT_UNIT);
+        out.line("public ${[0]} call()${ throws [1]} {", resultTypeOf(method), toNames(method.getExceptionTypes()));
         out.begin(INDENT_UNIT);
+        generateCallBody(method);
+        out.end();
+        out.line("}");
+        out.end();
+        out.line("});");
+    }
+
+    private void generateCallBody(MethodModel method) {
+        assert method != null;
         if (method.isVoid()) {
             out.line("${[0]}.${[1]}(${[2]});",
-                method.isStatic() ? erase(container.getType()) : THIS,
+                receiverOf(method),
                 method.getTargetName(),
-                generateArgumentNames(method.getParameters()));
+                generateArgumentNames(method));
             out.line("return null;");
         }
+        else if (isMonomorphic(method)) {
+            out.line("return ${[0]}.${[1]}(${[2]});",
+                receiverOf(method),
+                method.getTargetName(),
+                generateArgumentNames(method));
+        }
         else {
             out.line("return (${[3]}) ${([4]) }${[0]}.${[1]}(${[2]});",
-                method.isStatic() ? erase(container.getType()) : THIS,
+                receiverOf(method),
                 method.getTargetName(),
-                generateArgumentNames(method.getParameters()),
+                generateArgumentNames(method),
                 RETURN_TYPE_VAR,
-                boxingIfPrimitive(method.getReturnType()));
+                toName(boxingIfPrimitive(method.getReturnType())));
+        }
+    }
+
+    private String receiverOf(MethodModel method) {
+        assert method != null;
+        if (method.isStatic()) {
+            return toName(container.getErasedType());
+        }
+        return method.isWeakTarget() ? TARGET : THIS;
+    }
+
+    private boolean isMonomorphic(MethodModel method) {
+        assert method != null;
+        // 不変モードでは、戻り値型が型変数を含まなければ実装クラスを総称化せずにキャストを省略する
+        return immutable && containsTypeVariable(boxing(method.getReturnType())) == false;
+    }
+
+    private boolean containsTypeVariable(TypeMirror type) {
+        assert type != null;
+        if (type instanceof TypeVariable) {
+            return true;
+        }
+        if (type instanceof ArrayType) {
+            return containsTypeVariable(((ArrayType) type).getComponentType());
+        }
+        if (type instanceof WildcardType) {
+            WildcardType wildcard = (WildcardType) type;
+            for (TypeMirror bound : wildcard.getUpperBounds()) {
+                if (containsTypeVariable(bound)) {
+                    return true;
+                }
+            }
+            for (TypeMirror bound : wildcard.getLowerBounds()) {
+                if (containsTypeVariable(bound)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (type instanceof DeclaredType) {
+            DeclaredType declared = (DeclaredType) type;
+            for (TypeMirror argument : declared.getActualTypeArguments()) {
+                if (containsTypeVariable(argument)) {
+                    return true;
+                }
+            }
+            DeclaredType containing = declared.getContainingType();
+            return containing != null && containsTypeVariable(containing);
+        }
+        return false;
+    }
+
+    private String fieldModifiers() {
+        return immutable ? "private final" : "private";
+    }
+
+    private String resultTypeOf(MethodModel method) {
+        assert method != null;
+        if (isMonomorphic(method)) {
+            return toName(boxing(method.getReturnType()));
+        }
+        return RETURN_TYPE_VAR;
+    }
+
+    private String callableTypeOf(MethodModel method) {
+        assert method != null;
+        if (isMonomorphic(method)) {
+            return method.getName();
+        }
+        return String.format("%s<%s>", method.getName(), toName(boxing(method.getReturnType())));
+    }
+
+    private void generatePriorityMethods(MethodModel method) {
+        assert method != null;
+        out.line("public int getPriority() {");
+        out.begin(INDENT_UNIT);
+        if (method.getPriorityParameter() >= 0) {
+            out.line("return ${[0]};", argumentNameOf(method.getPriorityParameter()));
+        }
+        else {
+            out.line("return ${[0]};", method.getPriority());
+        }
+        out.end();
+        out.line("}");
+        out.line("public int compareTo(${[0]} other) {", runtime("Prioritized"));
+        out.begin(INDENT_UNIT);
+        out.line("return ${[0]}.compare(this, other);", runtime("Priorities"));
+        out.end();
+        out.line("}");
+    }
+
+    private String partitionKeyHash(MethodModel method) {
+        assert method != null;
+        int index = method.getPartitionKeyParameter();
+        TypeMirror type = method.getParameterTypes().get(index);
+        String name = argumentNameOf(index);
+        if (type instanceof PrimitiveType) {
+            return String.format("%s.valueOf(%s).hashCode()", toName(boxing(type)), name);
+        }
+        if (type instanceof ArrayType) {
+            return String.format("%s.hashCode(%s)", imports.toName("java.util.Arrays"), name);
+        }
+        return String.format("(%s == null ? 0 : %s.hashCode())", name, name);
+    }
+
+    private void generatePartitionMethods(MethodModel method) {
+        assert method != null;
+        out.line("public int partitionKey() {");
+        out.begin(INDENT_UNIT);
+        out.line("return ${[0]};", PARTITION);
+        out.end();
+        out.line("}");
+    }
+
+    private void generateKindMethod(MethodModel method) {
+        assert method != null;
+        out.line("public ${[0]} getKind() {", runtime("TaskKind"));
+        out.begin(INDENT_UNIT);
+        out.line("return ${[0]}.${[1]};", runtime("TaskKind"), method.getKind().name());
+        out.end();
+        out.line("}");
+    }
+
+    private void generateTargetAvailableMethod(MethodModel method) {
+        assert method != null;
+        out.line("public boolean isTargetAvailable() {");
+        out.begin(INDENT_UNIT);
+        out.line("return this.${[0]}.get() != null;", THIS);
+        out.end();
+        out.line("}");
+    }
+
+    private void generateReadResolveMethod(MethodModel method) {
+        assert method != null;
+        // 直列化復元したインスタンスを共有インスタンスに置き換え、同一性を保つ
+        out.line("private Object readResolve() {");
+        out.begin(INDENT_UNIT);
+        out.line("return ${[0]}.${[1]};", container.getSimpleName(), sharedNameOf(method));
+        out.end();
+        out.line("}");
+    }
+
+    private void generateDeadlineMethods(MethodModel method) {
+        assert method != null;
+        out.line("public long getDeadline() {");
+        out.begin(INDENT_UNIT);
+        out.line("return this.${[0]};", DEADLINE_FIELD);
+        out.end();
+        out.line("}");
+        out.line("public boolean isExpired() {");
+        out.begin(INDENT_UNIT);
+        out.line("return ${[0]}.isExpired(this.${[1]});", runtime("Deadlines"), DEADLINE_FIELD);
+        out.end();
+        out.line("}");
+    }
+
+    private void generateEstimatedSizeMethod(MethodModel method) {
+        assert method != null;
+        List<String> terms = new ArrayList<String>();
+        terms.add(String.format("%dL", shallowSizeOf(method)));
+        TypeMirror charSequence = getType(CharSequence.class);
+        int index = 0;
+        for (TypeMirror type : method.getErasedParameterTypes()) {
+            String name = argumentNameOf(index++);
+            if (type instanceof ArrayType) {
+                terms.add(String.format("%s.ofArray(%s)", runtime("Sizes"), name));
+            }
+            else if (type instanceof DeclaredType && environment.getTypeUtils().isSubtype(type, charSequence)) {
+                terms.add(String.format("%s.ofCharSequence(%s)", runtime("Sizes"), name));
+            }
         }
+        out.line("public long estimatedSize() {");
+        out.begin(INDENT_UNIT);
+        StringBuilder buf = new StringBuilder();
+        for (String term : terms) {
+            if (buf.length() > 0) {
+                buf.append(" + ");
+            }
+            buf.append(term);
+        }
+        out.line("return ${[0]};", buf);
         out.end();
         out.line("}");
     }
 
-    private List<String> toParameterNames(Collection<ParameterDeclaration> parameters) {
-        assert parameters != null;
+    private long shallowSizeOf(MethodModel method) {
+        assert method != null;
+        // 圧縮参照を有効にした64ビットのJVMを想定する (runtime.Sizesと同じ前提)
+        long size = 12;
+        if (method.isStatic() == false) {
+            size += 4;
+        }
+        for (TypeMirror type : method.getErasedParameterTypes()) {
+            size += fieldSizeOf(type);
+        }
+        if (method.isPartitioned()) {
+            size += 4;
+        }
+        if (method.isDeadlined()) {
+            size += 8;
+        }
+        long aligned = (size + 7) / 8 * 8;
+        if (method.isWeakTarget()) {
+            // 起動対象を指すWeakReferenceも別のオブジェクトとして保持する (ヘッダと4つの参照)
+            aligned += WEAK_REFERENCE_SIZE;
+        }
+        return aligned;
+    }
+
+    private int fieldSizeOf(TypeMirror type) {
+        assert type != null;
+        if ((type instanceof PrimitiveType) == false) {
+            return 4;
+        }
+        switch (((PrimitiveType) type).getKind()) {
+        case LONG:
+        case DOUBLE:
+            return 8;
+        case INT:
+        case FLOAT:
+            return 4;
+        case SHORT:
+        case CHAR:
+            return 2;
+        default:
+            return 1;
+        }
+    }
+
+    private String toName(TypeMirror type) {
+        if (type == null) {
+            return null;
+        }
+        return imports.toName(type);
+    }
+
+    private List<String> toNames(Collection<? extends TypeMirror> types) {
+        assert types != null;
         List<String> results = new ArrayList<String>();
-        for (ParameterDeclaration p : parameters) {
-            results.add(p.getSimpleName());
+        for (TypeMirror type : types) {
+            results.add(imports.toName(type));
         }
         return results;
     }
 
-    private List<String> generateArgumentNames(Collection<ParameterDeclaration> parameters) {
-        assert parameters != null;
+    private String runtime(String simpleName) {
+        assert simpleName != null;
+        return imports.toName(Names.RUNTIME_PACKAGE + "." + simpleName);
+    }
+
+    private List<String> typeParametersOf(List<TypeParameterModel> typeParameters) {
+        assert typeParameters != null;
         List<String> results = new ArrayList<String>();
-        for (int i = 0, n = parameters.size(); i < n; i++) {
-            results.add(argumentNameOf(i));
+        for (TypeParameterModel typeParameter : typeParameters) {
+            results.add(imports.toName(typeParameter));
         }
         return results;
     }
 
-    private TypeMirror erase(TypeMirror t) {
-        return environment.getTypeUtils().getErasure(t);
+    private List<String> parametersOf(MethodModel method) {
+        assert method != null;
+        List<String> results = new ArrayList<String>();
+        List<String> names = method.getParameterNames();
+        List<TypeMirror> types = method.getParameterTypes();
+        for (int i = 0, n = names.size(); i < n; i++) {
+            results.add(String.format("%s %s", imports.toName(types.get(i)), names.get(i)));
+        }
+        return results;
     }
 
-    private Collection<String> erase(Collection<ParameterDeclaration> parameters) {
-        Collection<String> results = new ArrayList<String>();
+    private List<String> generateArgumentNames(MethodModel method) {
+        assert method != null;
+        List<String> results = new ArrayList<String>();
+        for (int i = 0, n = method.getParameterNames().size(); i < n; i++) {
+            results.add(argumentNameOf(i));
+        }
+        return results;
+    }
+
+    private List<String> erasedParametersOf(MethodModel method) {
+        assert method != null;
+        List<String> results = new ArrayList<String>();
         int index = 0;
-        for (ParameterDeclaration p : parameters) {
-            results.add(String.format("%s %s", erase(p.getType()), argumentNameOf(index++)));
+        for (TypeMirror type : method.getErasedParameterTypes()) {
+            results.add(String.format("%s %s", toName(type), argumentNameOf(index++)));
         }
         return results;
     }
@@ -344,24 +1167,6 @@ public class SourceGenerator {
         return environment.getTypeUtils().getDeclaredType(type);
     }
 
-    private long calculateHash(MethodModel method) {
-        assert method != null;
-        long result = 0;
-        if (method.isStatic() == false) {
-            result++;
-            result += erase(container.getType()).toString().hashCode();
-        }
-        for (ParameterDeclaration p : method.getParameters()) {
-            result *= 31;
-            result += erase(p.getType()).toString().hashCode();
-        }
-        if (method.isVoid() == false) {
-            result *= 31;
-            result += erase(method.getReturnType()).toString().hashCode();
-        }
-        return result;
-    }
-
     private static PrintWriter open(AnnotationProcessorEnvironment environment, ContainerModel model) throws IOException {
         assert environment != null;
         assert model != null;
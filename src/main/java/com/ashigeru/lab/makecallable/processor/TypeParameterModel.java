@@ -0,0 +1,86 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.processor;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import com.sun.mirror.declaration.TypeParameterDeclaration;
+import com.sun.mirror.type.ReferenceType;
+
+/**
+ * 生成するクラスやメソッドが宣言する仮型引数。
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class TypeParameterModel {
+
+    private final String name;
+
+    private final List<ReferenceType> bounds;
+
+    /**
+     * インスタンスを生成する。
+     * @param decl 元になった仮型引数の宣言
+     */
+    public TypeParameterModel(TypeParameterDeclaration decl) {
+        if (decl == null) {
+            throw new IllegalArgumentException("decl is null"); //$NON-NLS-1$
+        }
+        this.name = decl.getSimpleName();
+        this.bounds = Collections.unmodifiableList(new ArrayList<ReferenceType>(decl.getBounds()));
+    }
+
+    /**
+     * 仮型引数の名前を返す。
+     * @return 仮型引数の名前
+     */
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * 仮型引数の境界の一覧を返す。
+     * @return 仮型引数の境界の一覧、境界を持たない場合は空のリスト
+     */
+    public List<ReferenceType> getBounds() {
+        return bounds;
+    }
+
+    /**
+     * 指定の仮型引数の宣言の一覧から、対応するモデルの一覧を生成する。
+     * @param decls 元になった仮型引数の宣言の一覧
+     * @return 生成したモデルの一覧
+     */
+    public static List<TypeParameterModel> toModels(Iterable<? extends TypeParameterDeclaration> decls) {
+        if (decls == null) {
+            throw new IllegalArgumentException("decls is null"); //$NON-NLS-1$
+        }
+        List<TypeParameterModel> results = new ArrayList<TypeParameterModel>();
+        for (TypeParameterDeclaration decl : decls) {
+            results.add(new TypeParameterModel(decl));
+        }
+        return Collections.unmodifiableList(results);
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,522 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * タスクの種類ごとに計測した待ち時間と実行時間から、スレッド数を継続的に調整する{@code ExecutorService}。
+ * <p>
+ * タスクはその種類({@code Callable}または{@code Runnable}のクラス)ごとに別々のスレッドプールで実行される。
+ * 生成された{@code Callable}はメソッドごとに異なるクラスを持つため、メソッドごとに独立して調整される。
+ * 種類ごとのスレッドプールの数には上限があり、上限に達した後に現れた種類のタスクは、
+ * すべて共有の一つのスレッドプールでまとめて実行される。
+ * </p>
+ * <p>
+ * スレッドは制御周期の{@value #IDLE_PERIODS}回分の間アイドル状態であれば終了する。
+ * 同じ期間タスクが一つも投入されなかった種類のスレッドプールは破棄され、
+ * 再びその種類のタスクが投入された時点で改めて作成される。
+ * </p>
+ * <p>
+ * 制御器は一定の周期で各スレッドプールの計測値を集計し、以下の二つのうち小さい方を目標のスレッド数とする。
+ * </p>
+ * <ul>
+ * <li> リトルの法則から求めた、到着率と平均実行時間の積を目標の利用率で割った値に、
+ *      待機中のタスクを一周期で処理するための値を加えたもの </li>
+ * <li> CPU数を、実行時間のうちCPUを利用していた割合で割ったもの (ブロックの多いタスクほど大きくなる) </li>
+ * </ul>
+ * <p>
+ * 二つ目の値は、このオブジェクトを生成した時点でスレッドのCPU時間の計測が有効である場合にのみ利用する
+ * ({@link ThreadMXBean#isThreadCpuTimeEnabled()})。
+ * このクラスがその設定を変更することはなく、無効であればCPUを利用していた割合は計測されない。
+ * </p>
+ * <p>
+ * 実際のスレッド数は目標との差の半分ずつ変更され、常に指定の範囲内に収められる。
+ * 各スレッドプールの計測値と制御の結果は{@link #getStatistics()}で参照できる。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class AdaptiveExecutor extends AbstractExecutorService {
+
+    private static final double TARGET_UTILIZATION = 0.8;
+
+    private static final double SMOOTHING = 0.5;
+
+    private static final double MIN_CPU_RATIO = 0.01;
+
+    private static final int IDLE_PERIODS = 10;
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final int minThreads;
+
+    private final int maxThreads;
+
+    private final int maxLanes;
+
+    private final long intervalNanos;
+
+    private final ThreadFactory threadFactory;
+
+    private final ConcurrentMap<Class<?>, Lane> lanes = new ConcurrentHashMap<Class<?>, Lane>();
+
+    private final Lane overflow;
+
+    private final ScheduledExecutorService controller;
+
+    private final boolean cpuTimeSupported;
+
+    private volatile boolean shutdown;
+
+    /**
+     * インスタンスを生成する。
+     * @param minThreads タスクの種類ごとのスレッド数の下限
+     * @param maxThreads タスクの種類ごとのスレッド数の上限
+     * @param maxLanes 種類ごとに作成するスレッドプールの数の上限 (共有のスレッドプールを除く)
+     * @param interval スレッド数を調整する周期
+     * @param unit {@code interval}の単位
+     * @param threadFactory スレッドを生成するファクトリ
+     * @throws IllegalArgumentException {@code minThreads}や{@code interval}が正の値でない場合、
+     *     {@code maxThreads}が{@code minThreads}より小さい場合、または{@code maxLanes}が負の値である場合
+     */
+    public AdaptiveExecutor(
+            int minThreads,
+            int maxThreads,
+            int maxLanes,
+            long interval,
+            TimeUnit unit,
+            ThreadFactory threadFactory) {
+        if (minThreads <= 0) {
+            throw new IllegalArgumentException("minThreads must be positive"); //$NON-NLS-1$
+        }
+        if (maxThreads < minThreads) {
+            throw new IllegalArgumentException("maxThreads must be >= minThreads"); //$NON-NLS-1$
+        }
+        if (maxLanes < 0) {
+            throw new IllegalArgumentException("maxLanes must not be negative"); //$NON-NLS-1$
+        }
+        if (interval <= 0) {
+            throw new IllegalArgumentException("interval must be positive"); //$NON-NLS-1$
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit is null"); //$NON-NLS-1$
+        }
+        if (threadFactory == null) {
+            throw new IllegalArgumentException("threadFactory is null"); //$NON-NLS-1$
+        }
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.maxLanes = maxLanes;
+        this.intervalNanos = unit.toNanos(interval);
+        this.threadFactory = threadFactory;
+        this.cpuTimeSupported = isCpuTimeEnabled();
+        this.overflow = new Lane(Object.class, false);
+        this.controller = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "AdaptiveExecutor-controller");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.controller.scheduleWithFixedDelay(new Runnable() {
+            public void run() {
+                adjust();
+            }
+        }, intervalNanos, intervalNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * タスクの種類ごとの計測値と制御の結果を返す。
+     * <p>
+     * 共有のスレッドプールにタスクが投入されたことがある場合、
+     * その計測値は種類を{@code Object.class}として含まれる。
+     * </p>
+     * @return タスクの種類ごとの計測値と制御の結果
+     */
+    public List<AdaptiveStatistics> getStatistics() {
+        List<AdaptiveStatistics> results = new ArrayList<AdaptiveStatistics>();
+        for (Lane lane : lanes.values()) {
+            results.add(lane.toStatistics());
+        }
+        if (overflow.submitted.get() > 0) {
+            results.add(overflow.toStatistics());
+        }
+        return results;
+    }
+
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new IllegalArgumentException("command is null"); //$NON-NLS-1$
+        }
+        if (shutdown) {
+            throw new RejectedExecutionException("executor is shut down");
+        }
+        Class<?> type = command instanceof AdaptiveTask<?>
+            ? ((AdaptiveTask<?>) command).type
+            : command.getClass();
+        while (true) {
+            Lane lane = laneFor(type);
+            try {
+                lane.execute(command);
+                return;
+            }
+            catch (RejectedExecutionException e) {
+                if (lane.retired == false || shutdown) {
+                    throw e;
+                }
+                // 破棄された直後のスレッドプールに投入しようとした場合は、作り直して再試行する
+            }
+        }
+    }
+
+    public void shutdown() {
+        shutdown = true;
+        controller.shutdown();
+        for (Lane lane : allLanes()) {
+            lane.pool.shutdown();
+        }
+    }
+
+    public List<Runnable> shutdownNow() {
+        shutdown = true;
+        controller.shutdownNow();
+        List<Runnable> results = new ArrayList<Runnable>();
+        for (Lane lane : allLanes()) {
+            for (Runnable runnable : lane.pool.shutdownNow()) {
+                results.add(((Measured) runnable).command);
+            }
+        }
+        return results;
+    }
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean isTerminated() {
+        if (shutdown == false) {
+            return false;
+        }
+        for (Lane lane : allLanes()) {
+            if (lane.pool.isTerminated() == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (unit == null) {
+            throw new IllegalArgumentException("unit is null"); //$NON-NLS-1$
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (Lane lane : allLanes()) {
+            if (lane.pool.awaitTermination(deadline - System.nanoTime(), TimeUnit.NANOSECONDS) == false) {
+                return false;
+            }
+        }
+        return isTerminated();
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new AdaptiveTask<T>(callable, callable.getClass());
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new AdaptiveTask<T>(Executors.callable(runnable, value), runnable.getClass());
+    }
+
+    private Lane laneFor(Class<?> type) {
+        assert type != null;
+        Lane lane = lanes.get(type);
+        if (lane != null) {
+            return lane;
+        }
+        if (lanes.size() >= maxLanes) {
+            return overflow;
+        }
+        Lane created = new Lane(type, true);
+        lane = lanes.putIfAbsent(type, created);
+        if (lane == null) {
+            lane = created;
+        }
+        else {
+            created.pool.shutdown();
+        }
+        if (shutdown) {
+            lane.pool.shutdown();
+        }
+        return lane;
+    }
+
+    private List<Lane> allLanes() {
+        List<Lane> results = new ArrayList<Lane>(lanes.values());
+        results.add(overflow);
+        return results;
+    }
+
+    private void adjust() {
+        for (Lane lane : lanes.values()) {
+            lane.adjust();
+            if (lane.isIdle()) {
+                lane.retired = true;
+                lanes.remove(lane.type, lane);
+                lane.pool.shutdown();
+            }
+        }
+        overflow.adjust();
+    }
+
+    private static double smooth(double current, double sample) {
+        return current + (sample - current) * SMOOTHING;
+    }
+
+    private static boolean isCpuTimeEnabled() {
+        // 計測の有効化はJVM全体に影響するため、既に有効な場合にのみ利用する
+        try {
+            return THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();
+        }
+        catch (UnsupportedOperationException e) {
+            return false;
+        }
+    }
+
+    private final class Lane {
+
+        final Class<?> type;
+
+        final ThreadPoolExecutor pool;
+
+        final AtomicLong submitted = new AtomicLong();
+
+        final AtomicLong completed = new AtomicLong();
+
+        final AtomicLong waitNanos = new AtomicLong();
+
+        final AtomicLong serviceNanos = new AtomicLong();
+
+        final AtomicLong cpuNanos = new AtomicLong();
+
+        final AtomicLong adjustments = new AtomicLong();
+
+        final boolean retirable;
+
+        volatile boolean retired;
+
+        // 以下は制御器のスレッドのみが更新する
+        private long lastSubmitted;
+
+        private long lastCompleted;
+
+        private long lastWait;
+
+        private long lastService;
+
+        private long lastCpu;
+
+        private int idlePeriods;
+
+        private volatile int target;
+
+        private volatile double arrivalRate;
+
+        private volatile double meanWait;
+
+        private volatile double meanService;
+
+        private volatile double blockingRatio = Double.NaN;
+
+        Lane(Class<?> type, boolean retirable) {
+            assert type != null;
+            this.type = type;
+            this.retirable = retirable;
+            this.target = minThreads;
+            this.pool = new ThreadPoolExecutor(
+                minThreads, minThreads, intervalNanos * IDLE_PERIODS, TimeUnit.NANOSECONDS,
+                new LinkedBlockingQueue<Runnable>(),
+                threadFactory);
+            this.pool.allowCoreThreadTimeOut(true);
+        }
+
+        void execute(Runnable command) {
+            assert command != null;
+            submitted.incrementAndGet();
+            try {
+                pool.execute(new Measured(this, command));
+            }
+            catch (RejectedExecutionException e) {
+                submitted.decrementAndGet();
+                throw e;
+            }
+        }
+
+        void adjust() {
+            long nowSubmitted = submitted.get();
+            long nowCompleted = completed.get();
+            long nowWait = waitNanos.get();
+            long nowService = serviceNanos.get();
+            long nowCpu = cpuNanos.get();
+            long arrived = nowSubmitted - lastSubmitted;
+            long count = nowCompleted - lastCompleted;
+            if (arrived == 0 && nowCompleted == nowSubmitted) {
+                idlePeriods++;
+            }
+            else {
+                idlePeriods = 0;
+            }
+            double service = nowService - lastService;
+            arrivalRate = smooth(arrivalRate, arrived * 1e9 / intervalNanos);
+            if (count > 0) {
+                meanWait = smooth(meanWait, (double) (nowWait - lastWait) / count);
+                meanService = smooth(meanService, service / count);
+                if (cpuTimeSupported && service > 0) {
+                    double ratio = Math.max(0.0, Math.min(1.0, 1.0 - (nowCpu - lastCpu) / service));
+                    blockingRatio = Double.isNaN(blockingRatio) ? ratio : smooth(blockingRatio, ratio);
+                }
+            }
+            lastSubmitted = nowSubmitted;
+            lastCompleted = nowCompleted;
+            lastWait = nowWait;
+            lastService = nowService;
+            lastCpu = nowCpu;
+            int current = pool.getMaximumPoolSize();
+            int computed = computeTarget(current);
+            target = computed;
+            // 振動を抑えるため、目標との差の半分(切り上げ)だけ近づける
+            int difference = computed - current;
+            int next = current + (difference + Integer.signum(difference)) / 2;
+            if (next != current) {
+                resize(current, next);
+                adjustments.incrementAndGet();
+            }
+        }
+
+        boolean isIdle() {
+            return retirable && idlePeriods >= IDLE_PERIODS;
+        }
+
+        private int computeTarget(int current) {
+            int backlog = pool.getQueue().size();
+            if (meanService <= 0) {
+                // 実行時間がまだ分からない場合は、滞留している間だけ一つずつ増やす
+                return clamp(backlog > 0 ? current + 1 : current);
+            }
+            double busy = arrivalRate * meanService / 1e9;
+            double drain = backlog * meanService / intervalNanos;
+            double little = Math.ceil((busy + drain) / TARGET_UTILIZATION);
+            double cpuBound = Double.isNaN(blockingRatio)
+                ? maxThreads
+                : Math.ceil(Runtime.getRuntime().availableProcessors()
+                    / Math.max(MIN_CPU_RATIO, 1.0 - blockingRatio));
+            return clamp((int) Math.min(Math.min(little, cpuBound), Integer.MAX_VALUE));
+        }
+
+        private int clamp(int value) {
+            return Math.max(minThreads, Math.min(maxThreads, value));
+        }
+
+        private void resize(int current, int next) {
+            // 上限を下回るコアサイズを保つよう、変更の方向によって順序を入れ替える
+            if (next > current) {
+                pool.setMaximumPoolSize(next);
+                pool.setCorePoolSize(next);
+            }
+            else {
+                pool.setCorePoolSize(next);
+                pool.setMaximumPoolSize(next);
+            }
+        }
+
+        AdaptiveStatistics toStatistics() {
+            return new AdaptiveStatistics(
+                type,
+                pool.getPoolSize(),
+                target,
+                pool.getQueue().size(),
+                arrivalRate,
+                meanWait,
+                meanService,
+                blockingRatio,
+                adjustments.get());
+        }
+    }
+
+    private final class Measured implements Runnable {
+
+        final Lane lane;
+
+        final Runnable command;
+
+        final long enqueued;
+
+        Measured(Lane lane, Runnable command) {
+            assert lane != null;
+            assert command != null;
+            this.lane = lane;
+            this.command = command;
+            this.enqueued = System.nanoTime();
+        }
+
+        public void run() {
+            long start = System.nanoTime();
+            long cpuStart = cpuTimeSupported ? THREADS.getCurrentThreadCpuTime() : 0L;
+            try {
+                command.run();
+            }
+            finally {
+                long end = System.nanoTime();
+                if (cpuTimeSupported) {
+                    lane.cpuNanos.addAndGet(THREADS.getCurrentThreadCpuTime() - cpuStart);
+                }
+                lane.waitNanos.addAndGet(start - enqueued);
+                lane.serviceNanos.addAndGet(end - start);
+                lane.completed.incrementAndGet();
+            }
+        }
+    }
+
+    private static final class AdaptiveTask<T> extends FutureTask<T> {
+
+        final Class<?> type;
+
+        AdaptiveTask(Callable<T> callable, Class<?> type) {
+            super(callable);
+            this.type = type;
+        }
+    }
+}
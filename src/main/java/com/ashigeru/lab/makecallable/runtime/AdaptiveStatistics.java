@@ -0,0 +1,170 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.text.MessageFormat;
+
+/**
+ * {@link AdaptiveExecutor}がタスクの種類ごとに計測した値と、それに基づく制御の結果。
+ * <p>
+ * 平均値は直近の制御周期における値を指数移動平均で平滑化したものである。
+ * </p>
+ * @author ashigeru
+ */
+public class AdaptiveStatistics {
+
+    private final Class<?> taskType;
+
+    private final int poolSize;
+
+    private final int targetPoolSize;
+
+    private final int queueSize;
+
+    private final double arrivalRate;
+
+    private final double meanWaitNanos;
+
+    private final double meanServiceNanos;
+
+    private final double blockingRatio;
+
+    private final long adjustmentCount;
+
+    /**
+     * インスタンスを生成する。
+     * @param taskType 対象のタスクの種類
+     * @param poolSize 現在のスレッド数
+     * @param targetPoolSize 制御器が算出した目標のスレッド数
+     * @param queueSize 待機中のタスクの数
+     * @param arrivalRate 一秒あたりのタスクの到着数
+     * @param meanWaitNanos タスクがキューで待機した時間の平均(ナノ秒)
+     * @param meanServiceNanos タスクの実行に要した時間の平均(ナノ秒)
+     * @param blockingRatio 実行時間のうちCPUを利用していなかった割合、計測できない場合は{@code NaN}
+     * @param adjustmentCount スレッド数を変更した回数
+     */
+    public AdaptiveStatistics(
+            Class<?> taskType,
+            int poolSize,
+            int targetPoolSize,
+            int queueSize,
+            double arrivalRate,
+            double meanWaitNanos,
+            double meanServiceNanos,
+            double blockingRatio,
+            long adjustmentCount) {
+        if (taskType == null) {
+            throw new IllegalArgumentException("taskType is null"); //$NON-NLS-1$
+        }
+        this.taskType = taskType;
+        this.poolSize = poolSize;
+        this.targetPoolSize = targetPoolSize;
+        this.queueSize = queueSize;
+        this.arrivalRate = arrivalRate;
+        this.meanWaitNanos = meanWaitNanos;
+        this.meanServiceNanos = meanServiceNanos;
+        this.blockingRatio = blockingRatio;
+        this.adjustmentCount = adjustmentCount;
+    }
+
+    /**
+     * 対象のタスクの種類を返す。
+     * @return 対象のタスクの種類
+     */
+    public Class<?> getTaskType() {
+        return taskType;
+    }
+
+    /**
+     * 現在のスレッド数を返す。
+     * @return 現在のスレッド数
+     */
+    public int getPoolSize() {
+        return poolSize;
+    }
+
+    /**
+     * 制御器が算出した目標のスレッド数を返す。
+     * @return 目標のスレッド数
+     */
+    public int getTargetPoolSize() {
+        return targetPoolSize;
+    }
+
+    /**
+     * 待機中のタスクの数を返す。
+     * @return 待機中のタスクの数
+     */
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    /**
+     * 一秒あたりのタスクの到着数を返す。
+     * @return 一秒あたりのタスクの到着数
+     */
+    public double getArrivalRate() {
+        return arrivalRate;
+    }
+
+    /**
+     * タスクがキューで待機した時間の平均を返す。
+     * @return 待機時間の平均(ナノ秒)
+     */
+    public double getMeanWaitNanos() {
+        return meanWaitNanos;
+    }
+
+    /**
+     * タスクの実行に要した時間の平均を返す。
+     * @return 実行時間の平均(ナノ秒)
+     */
+    public double getMeanServiceNanos() {
+        return meanServiceNanos;
+    }
+
+    /**
+     * 実行時間のうちCPUを利用していなかった割合を返す。
+     * @return {@code 0.0}から{@code 1.0}までの割合、計測できない場合は{@code NaN}
+     */
+    public double getBlockingRatio() {
+        return blockingRatio;
+    }
+
+    /**
+     * スレッド数を変更した回数を返す。
+     * @return スレッド数を変更した回数
+     */
+    public long getAdjustmentCount() {
+        return adjustmentCount;
+    }
+
+    @Override
+    public String toString() {
+        return MessageFormat.format(
+            "{0}(pool={1}, target={2}, queue={3}, rate={4,number,0.0}/s, "
+            + "wait={5,number,0.000}ms, service={6,number,0.000}ms, blocking={7,number,0.00}, adjustments={8})",
+            taskType.getName(),
+            poolSize,
+            targetPoolSize,
+            queueSize,
+            arrivalRate,
+            meanWaitNanos / 1e6,
+            meanServiceNanos / 1e6,
+            blockingRatio,
+            adjustmentCount);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.text.MessageFormat;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 生成された{@code Callable}の同時実行数を制限する。
+ * <p>
+ * 生成されたクラスはメソッドごとにこのクラスのインスタンスを保持し、
+ * 起動対象のメソッドを呼び出す前に{@link #acquire()}、呼び出した後に{@link #release()}を起動する。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class Bulkhead {
+
+    private final int maxConcurrency;
+
+    private final boolean wait;
+
+    private final long timeoutNanos;
+
+    private final Semaphore permits;
+
+    private final AtomicLong rejectedCount = new AtomicLong();
+
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    private Bulkhead(int maxConcurrency, boolean wait, long timeoutNanos) {
+        assert maxConcurrency >= 1;
+        assert timeoutNanos >= 0;
+        this.maxConcurrency = maxConcurrency;
+        this.wait = wait;
+        this.timeoutNanos = timeoutNanos;
+        this.permits = new Semaphore(maxConcurrency);
+    }
+
+    /**
+     * 上限に達した際に即座に起動を拒否するインスタンスを生成する。
+     * @param maxConcurrency 同時実行数の上限
+     * @return 生成したインスタンス
+     * @throws IllegalArgumentException {@code maxConcurrency}が正の値でない場合
+     */
+    public static Bulkhead rejecting(int maxConcurrency) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive"); //$NON-NLS-1$
+        }
+        return new Bulkhead(maxConcurrency, false, 0L);
+    }
+
+    /**
+     * 上限に達した際に許可を待機するインスタンスを生成する。
+     * @param maxConcurrency 同時実行数の上限
+     * @param timeout 許可を待機する最大の時間、{@code 0}の場合は無期限に待機する
+     * @param unit {@code timeout}の単位
+     * @return 生成したインスタンス
+     * @throws IllegalArgumentException {@code maxConcurrency}が正の値でない場合、
+     *     または{@code timeout}が負の値である場合
+     */
+    public static Bulkhead waiting(int maxConcurrency, long timeout, TimeUnit unit) {
+        if (maxConcurrency <= 0) {
+            throw new IllegalArgumentException("maxConcurrency must be positive"); //$NON-NLS-1$
+        }
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative"); //$NON-NLS-1$
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit is null"); //$NON-NLS-1$
+        }
+        return new Bulkhead(maxConcurrency, true, unit.toNanos(timeout));
+    }
+
+    /**
+     * 実行の許可を取得する。
+     * <p>
+     * 許可を取得できた場合、呼び出し側は処理の完了後に必ず{@link #release()}を起動しなければならない。
+     * 待機中に割り込まれた場合、スレッドの割り込み状態を復元した上で起動を拒否する。
+     * </p>
+     * @throws RejectedExecutionException 許可を取得できなかった場合
+     */
+    public void acquire() {
+        if (permits.tryAcquire()) {
+            return;
+        }
+        if (wait == false) {
+            rejectedCount.incrementAndGet();
+            throw new RejectedExecutionException(MessageFormat.format(
+                "Concurrency limit exceeded ({0})",
+                maxConcurrency));
+        }
+        long start = System.nanoTime();
+        boolean acquired;
+        try {
+            if (timeoutNanos == 0) {
+                permits.acquire();
+                acquired = true;
+            }
+            else {
+                acquired = permits.tryAcquire(timeoutNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            acquired = false;
+        }
+        finally {
+            waitNanos.addAndGet(System.nanoTime() - start);
+        }
+        if (acquired == false) {
+            rejectedCount.incrementAndGet();
+            throw new RejectedExecutionException(MessageFormat.format(
+                "Concurrency limit exceeded ({0})",
+                maxConcurrency));
+        }
+    }
+
+    /**
+     * {@link #acquire()}で取得した許可を返却する。
+     */
+    public void release() {
+        permits.release();
+    }
+
+    /**
+     * 同時実行数の上限を返す。
+     * @return 同時実行数の上限
+     */
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * 現在取得可能な許可の数を返す。
+     * @return 現在取得可能な許可の数
+     */
+    public int getAvailablePermits() {
+        return permits.availablePermits();
+    }
+
+    /**
+     * これまでに拒否された起動の回数を返す。
+     * @return これまでに拒否された起動の回数
+     */
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+
+    /**
+     * これまでに許可の待機に費やした時間の合計を返す。
+     * @param unit 戻り値の単位
+     * @return 許可の待機に費やした時間の合計
+     */
+    public long getTotalWaitTime(TimeUnit unit) {
+        if (unit == null) {
+            throw new IllegalArgumentException("unit is null"); //$NON-NLS-1$
+        }
+        return unit.convert(waitNanos.get(), TimeUnit.NANOSECONDS);
+    }
+}
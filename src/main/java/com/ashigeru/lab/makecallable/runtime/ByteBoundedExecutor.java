@@ -0,0 +1,96 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 待機中のタスクが保持するデータ量の合計で、キューの容量を制限する{@code ThreadPoolExecutor}。
+ * <p>
+ * 待機中のタスクは{@link ByteBoundedQueue}に保持される。
+ * {@link Sized}を実装するタスクは、{@code submit}で投入された場合にもその大きさが引き継がれる。
+ * キューが一杯の場合の振る舞いは{@link #setRejectedExecutionHandler}で変更でき、
+ * 既定では{@code RejectedExecutionException}をスローする。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class ByteBoundedExecutor extends ThreadPoolExecutor {
+
+    /**
+     * インスタンスを生成する。
+     * @param threads スレッド数
+     * @param capacity 待機中のタスクの大きさの合計の上限(バイト)
+     * @param defaultSize {@link Sized}を実装しないタスクの大きさ(バイト)
+     * @param threadFactory スレッドを生成するファクトリ
+     * @throws IllegalArgumentException {@code threads}や{@code capacity}が正の値でない場合、
+     *     または{@code defaultSize}が負の値である場合
+     */
+    public ByteBoundedExecutor(int threads, long capacity, long defaultSize, ThreadFactory threadFactory) {
+        super(threads, threads, 0L, TimeUnit.MILLISECONDS,
+            new ByteBoundedQueue<Runnable>(capacity, defaultSize),
+            threadFactory);
+    }
+
+    /**
+     * 待機中のタスクを保持するキューを返す。
+     * @return 待機中のタスクを保持するキュー
+     */
+    @Override
+    public ByteBoundedQueue<Runnable> getQueue() {
+        return (ByteBoundedQueue<Runnable>) super.getQueue();
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        if (callable instanceof Sized) {
+            return new SizedTask<T>(callable, ((Sized) callable).estimatedSize());
+        }
+        return super.newTaskFor(callable);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        if (runnable instanceof Sized) {
+            return new SizedTask<T>(
+                Executors.callable(runnable, value),
+                ((Sized) runnable).estimatedSize());
+        }
+        return super.newTaskFor(runnable, value);
+    }
+
+    private static final class SizedTask<T> extends FutureTask<T> implements Sized {
+
+        private final long estimatedSize;
+
+        SizedTask(Callable<T> callable, long estimatedSize) {
+            super(callable);
+            this.estimatedSize = estimatedSize;
+        }
+
+        public long estimatedSize() {
+            return estimatedSize;
+        }
+    }
+}
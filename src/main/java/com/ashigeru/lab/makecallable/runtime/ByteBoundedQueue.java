@@ -0,0 +1,379 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.util.AbstractQueue;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 要素の個数ではなく、要素が保持するデータ量の合計で容量を制限する{@code BlockingQueue}。
+ * <p>
+ * {@link Sized}を実装する要素は{@link Sized#estimatedSize()}の値を、
+ * それ以外の要素はインスタンス生成時に指定した既定の大きさを、それぞれ要素の大きさとして扱う。
+ * 要素の大きさは追加した時点で確定し、取り出す際にはその値が差し引かれる。
+ * </p>
+ * <p>
+ * キューが空の場合、容量を超える大きさの要素であっても一つだけは追加できる。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ * @param <E> 要素の型
+ */
+public class ByteBoundedQueue<E> extends AbstractQueue<E> implements BlockingQueue<E> {
+
+    private final long capacity;
+
+    private final long defaultSize;
+
+    private final LinkedList<Node<E>> nodes = new LinkedList<Node<E>>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private final Condition notEmpty = lock.newCondition();
+
+    private final Condition notFull = lock.newCondition();
+
+    private long bytes;
+
+    /**
+     * インスタンスを生成する。
+     * @param capacity 容量(バイト)
+     * @param defaultSize {@link Sized}を実装しない要素の大きさ(バイト)
+     * @throws IllegalArgumentException {@code capacity}が正の値でない場合、
+     *     または{@code defaultSize}が負の値である場合
+     */
+    public ByteBoundedQueue(long capacity, long defaultSize) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive"); //$NON-NLS-1$
+        }
+        if (defaultSize < 0) {
+            throw new IllegalArgumentException("defaultSize must not be negative"); //$NON-NLS-1$
+        }
+        this.capacity = capacity;
+        this.defaultSize = defaultSize;
+    }
+
+    /**
+     * このキューの容量を返す。
+     * @return 容量(バイト)
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * このキューが現在保持している要素の大きさの合計を返す。
+     * @return 要素の大きさの合計(バイト)
+     */
+    public long getBytes() {
+        lock.lock();
+        try {
+            return bytes;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 指定の要素をこのキューで扱う際の大きさを返す。
+     * @param element 対象の要素
+     * @return 要素の大きさ(バイト)
+     */
+    public long sizeOf(Object element) {
+        if (element == null) {
+            throw new IllegalArgumentException("element is null"); //$NON-NLS-1$
+        }
+        if (element instanceof Sized) {
+            return Math.max(0, ((Sized) element).estimatedSize());
+        }
+        return defaultSize;
+    }
+
+    public boolean offer(E e) {
+        long size = sizeOf(e);
+        lock.lock();
+        try {
+            if (fits(size) == false) {
+                return false;
+            }
+            enqueue(e, size);
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public boolean offer(E e, long timeout, TimeUnit unit) throws InterruptedException {
+        if (unit == null) {
+            throw new IllegalArgumentException("unit is null"); //$NON-NLS-1$
+        }
+        long size = sizeOf(e);
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (fits(size) == false) {
+                if (nanos <= 0) {
+                    return false;
+                }
+                nanos = notFull.awaitNanos(nanos);
+            }
+            enqueue(e, size);
+            return true;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(E e) throws InterruptedException {
+        long size = sizeOf(e);
+        lock.lockInterruptibly();
+        try {
+            while (fits(size) == false) {
+                notFull.await();
+            }
+            enqueue(e, size);
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public E poll() {
+        lock.lock();
+        try {
+            if (nodes.isEmpty()) {
+                return null;
+            }
+            return dequeue();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public E poll(long timeout, TimeUnit unit) throws InterruptedException {
+        if (unit == null) {
+            throw new IllegalArgumentException("unit is null"); //$NON-NLS-1$
+        }
+        long nanos = unit.toNanos(timeout);
+        lock.lockInterruptibly();
+        try {
+            while (nodes.isEmpty()) {
+                if (nanos <= 0) {
+                    return null;
+                }
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return dequeue();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public E take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (nodes.isEmpty()) {
+                notEmpty.await();
+            }
+            return dequeue();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public E peek() {
+        lock.lock();
+        try {
+            return nodes.isEmpty() ? null : nodes.getFirst().element;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public int size() {
+        lock.lock();
+        try {
+            return nodes.size();
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * このキューの残りの容量を返す。
+     * <p>
+     * 要素の個数ではなく、残りのバイト数を{@code int}の範囲に切り詰めたものを返す。
+     * </p>
+     * @return 残りの容量(バイト)
+     */
+    public int remainingCapacity() {
+        lock.lock();
+        try {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, capacity - bytes));
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public boolean remove(Object o) {
+        if (o == null) {
+            return false;
+        }
+        lock.lock();
+        try {
+            for (Iterator<Node<E>> iter = nodes.iterator(); iter.hasNext();) {
+                Node<E> node = iter.next();
+                if (o.equals(node.element)) {
+                    iter.remove();
+                    released(node);
+                    return true;
+                }
+            }
+            return false;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    public int drainTo(Collection<? super E> c) {
+        return drainTo(c, Integer.MAX_VALUE);
+    }
+
+    public int drainTo(Collection<? super E> c, int maxElements) {
+        if (c == null) {
+            throw new IllegalArgumentException("c is null"); //$NON-NLS-1$
+        }
+        if (c == this) {
+            throw new IllegalArgumentException("c must not be this queue"); //$NON-NLS-1$
+        }
+        lock.lock();
+        try {
+            int count = 0;
+            while (count < maxElements && nodes.isEmpty() == false) {
+                c.add(dequeue());
+                count++;
+            }
+            return count;
+        }
+        finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * このキューの要素を先頭から順に返す反復子を返す。
+     * <p>
+     * 反復子は呼び出した時点の要素の複製を走査するため、その後のキューの変更は反映されない。
+     * </p>
+     * @return 反復子
+     */
+    @Override
+    public Iterator<E> iterator() {
+        final List<E> snapshot;
+        lock.lock();
+        try {
+            snapshot = new ArrayList<E>(nodes.size());
+            for (Node<E> node : nodes) {
+                snapshot.add(node.element);
+            }
+        }
+        finally {
+            lock.unlock();
+        }
+        final Iterator<E> delegate = snapshot.iterator();
+        return new Iterator<E>() {
+
+            private E last;
+
+            public boolean hasNext() {
+                return delegate.hasNext();
+            }
+
+            public E next() {
+                last = delegate.next();
+                return last;
+            }
+
+            public void remove() {
+                if (last == null) {
+                    throw new IllegalStateException();
+                }
+                ByteBoundedQueue.this.remove(last);
+                last = null;
+            }
+        };
+    }
+
+    private boolean fits(long size) {
+        assert lock.isHeldByCurrentThread();
+        return nodes.isEmpty() || bytes + size <= capacity;
+    }
+
+    private void enqueue(E element, long size) {
+        assert lock.isHeldByCurrentThread();
+        nodes.addLast(new Node<E>(element, size));
+        bytes += size;
+        notEmpty.signal();
+    }
+
+    private E dequeue() {
+        assert lock.isHeldByCurrentThread();
+        Node<E> node = nodes.removeFirst();
+        released(node);
+        return node.element;
+    }
+
+    private void released(Node<E> node) {
+        assert lock.isHeldByCurrentThread();
+        bytes -= node.size;
+        // 要素の大きさがそれぞれ異なるため、待機中のすべてのスレッドに再確認させる
+        notFull.signalAll();
+    }
+
+    private static class Node<E> {
+
+        final E element;
+
+        final long size;
+
+        Node(E element, long size) {
+            this.element = element;
+            this.size = size;
+        }
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+/**
+ * タスクの期限が既に過ぎているため、起動対象を呼び出さなかったことを表す例外。
+ * @author ashigeru
+ */
+public class DeadlineExceededException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * インスタンスを生成する。
+     */
+    public DeadlineExceededException() {
+        super();
+    }
+
+    /**
+     * インスタンスを生成する。
+     * @param message メッセージ
+     */
+    public DeadlineExceededException(String message) {
+        super(message);
+    }
+}
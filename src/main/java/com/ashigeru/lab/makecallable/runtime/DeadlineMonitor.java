@@ -0,0 +1,55 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 期限を過ぎたために起動対象を呼び出さなかったタスクの数を記録する。
+ * <p>
+ * 生成されたクラスはメソッドごとにこのクラスのインスタンスを保持し、
+ * 期限を過ぎたタスクが実行された際に{@link #expire(String)}を起動する。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class DeadlineMonitor {
+
+    private final AtomicLong expiredCount = new AtomicLong();
+
+    /**
+     * 期限を過ぎたタスクを記録し、呼び出し元に通知するための例外を返す。
+     * @param target 起動対象のメソッドの名前
+     * @return 呼び出し元に通知するための例外
+     */
+    public DeadlineExceededException expire(String target) {
+        if (target == null) {
+            throw new IllegalArgumentException("target is null"); //$NON-NLS-1$
+        }
+        expiredCount.incrementAndGet();
+        return new DeadlineExceededException(target);
+    }
+
+    /**
+     * 期限を過ぎたために起動対象を呼び出さなかったタスクの数を返す。
+     * @return 期限を過ぎたタスクの数
+     */
+    public long getExpiredCount() {
+        return expiredCount.get();
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+/**
+ * 実行の期限を持つタスク。
+ * <p>
+ * 期限を過ぎたタスクを実行すると、起動対象を呼び出さずに{@link DeadlineExceededException}がスローされる。
+ * 実行する前に{@link #isExpired()}を確認すれば、そのようなタスクを読み飛ばせる。
+ * </p>
+ * @author ashigeru
+ * @see Deadlines
+ * @see SheddingExecutor
+ */
+public interface Deadlined {
+
+    /**
+     * このタスクの期限を返す。
+     * @return {@code System.nanoTime()}を基準にした期限、期限を持たない場合は{@link Deadlines#NONE}
+     */
+    long getDeadline();
+
+    /**
+     * このタスクの期限が既に過ぎている場合のみ{@code true}を返す。
+     * @return 期限が既に過ぎている場合のみ{@code true}
+     */
+    boolean isExpired();
+}
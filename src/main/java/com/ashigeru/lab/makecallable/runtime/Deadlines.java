@@ -0,0 +1,75 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@code System.nanoTime()}を基準にした期限を取り扱う。
+ * <p>
+ * 期限は{@code System.nanoTime()}の値で表現されるため、同一のJVM内でのみ意味を持つ。
+ * 期限を持たないことは{@link #NONE}で表す。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class Deadlines {
+
+    /**
+     * 期限を持たないことを表す値。
+     */
+    public static final long NONE = 0L;
+
+    /**
+     * インスタンス生成の禁止。
+     */
+    private Deadlines() {
+        throw new AssertionError();
+    }
+
+    /**
+     * 現在から指定の時間が経過した時点を表す期限を返す。
+     * @param timeout 期限までの時間
+     * @param unit {@code timeout}の単位
+     * @return 対応する期限
+     * @throws IllegalArgumentException {@code timeout}が負の値である場合
+     */
+    public static long after(long timeout, TimeUnit unit) {
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative"); //$NON-NLS-1$
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit is null"); //$NON-NLS-1$
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        // 偶然NONEと一致した場合は1ナノ秒だけ遅らせる
+        return deadline == NONE ? deadline + 1 : deadline;
+    }
+
+    /**
+     * 指定の期限が既に過ぎている場合のみ{@code true}を返す。
+     * @param deadline 対象の期限、または{@link #NONE}
+     * @return 期限が既に過ぎている場合のみ{@code true}、期限を持たない場合は常に{@code false}
+     */
+    public static boolean isExpired(long deadline) {
+        if (deadline == NONE) {
+            return false;
+        }
+        return System.nanoTime() - deadline > 0;
+    }
+}
@@ -0,0 +1,33 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+/**
+ * 起動対象のインスタンスを弱参照で保持するタスク。
+ * <p>
+ * 起動対象が回収された後にタスクを実行すると、{@link TargetUnavailableException}がスローされる。
+ * 実行する前に{@link #isTargetAvailable()}を確認すれば、そのようなタスクを読み飛ばせる。
+ * </p>
+ * @author ashigeru
+ */
+public interface Detachable {
+
+    /**
+     * 起動対象のインスタンスがまだ回収されていない場合のみ{@code true}を返す。
+     * @return 起動対象のインスタンスがまだ回収されていない場合のみ{@code true}
+     */
+    boolean isTargetAvailable();
+}
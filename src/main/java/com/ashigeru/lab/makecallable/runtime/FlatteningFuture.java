@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * {@code Future}を結果に持つ{@code Future}を、内側の結果を直接返す{@code Future}として扱う。
+ * <p>
+ * 外側の{@code Future}を実行するスレッドは、内側の{@code Future}を取得した時点で解放される。
+ * 内側の処理の完了は{@link #get()}を起動したスレッドが待機する。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @param <T> 内側の結果の型
+ * @author ashigeru
+ */
+public class FlatteningFuture<T> implements Future<T> {
+
+    private final Future<? extends Future<? extends T>> outer;
+
+    private FlatteningFuture(Future<? extends Future<? extends T>> outer) {
+        assert outer != null;
+        this.outer = outer;
+    }
+
+    /**
+     * 指定の{@code Future}を平坦化した{@code Future}を返す。
+     * <p>
+     * 外側の{@code Future}の結果が{@code null}であった場合、
+     * 返される{@code Future}は{@code NullPointerException}を原因とする{@code ExecutionException}をスローする。
+     * </p>
+     * @param <T> 内側の結果の型
+     * @param outer {@code Future}を結果に持つ{@code Future}
+     * @return 内側の結果を直接返す{@code Future}
+     */
+    public static <T> Future<T> flatten(Future<? extends Future<? extends T>> outer) {
+        if (outer == null) {
+            throw new IllegalArgumentException("outer is null"); //$NON-NLS-1$
+        }
+        return new FlatteningFuture<T>(outer);
+    }
+
+    /**
+     * 外側と内側の{@code Future}をそれぞれ取り消す。
+     * 内側の{@code Future}がまだ得られていない場合、外側の{@code Future}のみを取り消す。
+     */
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (outer.cancel(mayInterruptIfRunning)) {
+            return true;
+        }
+        Future<? extends T> inner = innerIfAvailable();
+        return inner != null && inner.cancel(mayInterruptIfRunning);
+    }
+
+    public boolean isCancelled() {
+        if (outer.isCancelled()) {
+            return true;
+        }
+        Future<? extends T> inner = innerIfAvailable();
+        return inner != null && inner.isCancelled();
+    }
+
+    public boolean isDone() {
+        if (outer.isDone() == false) {
+            return false;
+        }
+        Future<? extends T> inner = innerIfAvailable();
+        return inner == null || inner.isDone();
+    }
+
+    public T get() throws InterruptedException, ExecutionException {
+        return nonNull(outer.get()).get();
+    }
+
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        if (unit == null) {
+            throw new IllegalArgumentException("unit is null"); //$NON-NLS-1$
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        Future<? extends T> inner = nonNull(outer.get(timeout, unit));
+        return inner.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private Future<? extends T> innerIfAvailable() {
+        if (outer.isDone() == false || outer.isCancelled()) {
+            return null;
+        }
+        try {
+            return outer.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        catch (ExecutionException e) {
+            return null;
+        }
+        catch (CancellationException e) {
+            return null;
+        }
+    }
+
+    private Future<? extends T> nonNull(Future<? extends T> inner) throws ExecutionException {
+        if (inner == null) {
+            throw new ExecutionException(new NullPointerException("target returned null instead of a Future"));
+        }
+        return inner;
+    }
+}
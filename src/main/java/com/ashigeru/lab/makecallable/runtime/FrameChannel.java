@@ -0,0 +1,244 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+/**
+ * {@link RemoteDispatcher}と{@link RemoteWorker}の間でフレームを送受信する。
+ * <p>
+ * フレームは本体の長さ(4バイト)、識別子(8バイト)、状態(1バイト)、本体の順に並ぶ。
+ * 送信するフレームはキューに蓄えられ、専用のスレッドが溜まっている分をまとめて書き出す。
+ * 受信は{@link #receive()}を起動したスレッドで行う。
+ * </p>
+ * @author ashigeru
+ */
+final class FrameChannel implements Closeable {
+
+    /**
+     * 正常に完了したことを表す状態。
+     */
+    static final byte STATUS_OK = 0;
+
+    /**
+     * 例外が発生したことを表す状態。
+     */
+    static final byte STATUS_FAILED = 1;
+
+    // length + id + status
+    private static final int HEADER_SIZE = 4 + 8 + 1;
+
+    private static final int MAX_BATCH = 64;
+
+    private static final ByteBuffer CLOSED = ByteBuffer.allocate(0);
+
+    private final SocketChannel channel;
+
+    private final BlockingQueue<ByteBuffer> outgoing = new LinkedBlockingQueue<ByteBuffer>();
+
+    private final ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+
+    private volatile boolean closed;
+
+    /**
+     * インスタンスを生成する。
+     * @param channel 対象のチャネル、ブロックモードであること
+     */
+    FrameChannel(SocketChannel channel) {
+        assert channel != null;
+        assert channel.isBlocking();
+        this.channel = channel;
+    }
+
+    /**
+     * 送信用のスレッドを開始する。
+     * @param name スレッドの名前
+     */
+    void start(String name) {
+        assert name != null;
+        Thread writer = new Thread(new Runnable() {
+            public void run() {
+                drain();
+            }
+        }, name);
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * 指定のフレームを送信キューに追加する。
+     * @param frame {@link #encode(long, byte, Object)}で作成したフレーム
+     * @throws IOException このチャネルが既に閉じられている場合
+     */
+    void send(ByteBuffer frame) throws IOException {
+        assert frame != null;
+        if (closed) {
+            throw new IOException("channel is closed");
+        }
+        outgoing.add(frame);
+    }
+
+    /**
+     * 次のフレームを受信する。
+     * @return 受信したフレーム、チャネルの終端に達した場合は{@code null}
+     * @throws IOException 受信に失敗した場合
+     */
+    Frame receive() throws IOException {
+        header.clear();
+        if (readFully(header, true) == false) {
+            return null;
+        }
+        header.flip();
+        int length = header.getInt();
+        long id = header.getLong();
+        byte status = header.get();
+        if (length < 0) {
+            throw new IOException("broken frame");
+        }
+        ByteBuffer body = ByteBuffer.allocate(length);
+        readFully(body, false);
+        return new Frame(id, status, body.array());
+    }
+
+    /**
+     * このチャネルを閉じる。
+     * 送信キューに残っているフレームは破棄される。
+     */
+    public void close() {
+        closed = true;
+        outgoing.clear();
+        outgoing.add(CLOSED);
+        try {
+            channel.close();
+        }
+        catch (IOException e) {
+            // ignored
+        }
+    }
+
+    /**
+     * 指定のオブジェクトを直列化したフレームを作成する。
+     * @param id フレームの識別子
+     * @param status フレームの状態
+     * @param body 直列化するオブジェクト
+     * @return 作成したフレーム
+     * @throws IOException 直列化に失敗した場合
+     */
+    static ByteBuffer encode(long id, byte status, Object body) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        buffer.write(new byte[HEADER_SIZE]);
+        ObjectOutputStream output = new ObjectOutputStream(buffer);
+        output.writeObject(body);
+        output.close();
+        ByteBuffer frame = ByteBuffer.wrap(buffer.toByteArray());
+        frame.putInt(frame.limit() - HEADER_SIZE);
+        frame.putLong(id);
+        frame.put(status);
+        frame.rewind();
+        return frame;
+    }
+
+    /**
+     * 指定のバイト列を直列化復元したオブジェクトを返す。
+     * @param body 対象のバイト列
+     * @return 直列化復元したオブジェクト
+     * @throws IOException 直列化復元に失敗した場合
+     * @throws ClassNotFoundException 直列化されたクラスが見つからない場合
+     */
+    static Object decode(byte[] body) throws IOException, ClassNotFoundException {
+        assert body != null;
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(body));
+        try {
+            return input.readObject();
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    private void drain() {
+        List<ByteBuffer> batch = new ArrayList<ByteBuffer>(MAX_BATCH);
+        try {
+            while (true) {
+                batch.add(outgoing.take());
+                outgoing.drainTo(batch, MAX_BATCH - 1);
+                if (batch.remove(CLOSED)) {
+                    return;
+                }
+                // 溜まっているフレームをまとめて書き出す
+                ByteBuffer[] buffers = batch.toArray(new ByteBuffer[batch.size()]);
+                ByteBuffer last = buffers[buffers.length - 1];
+                while (last.hasRemaining()) {
+                    channel.write(buffers);
+                }
+                batch.clear();
+            }
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        catch (IOException e) {
+            // 受信側で切断が検出される
+        }
+        finally {
+            close();
+        }
+    }
+
+    private boolean readFully(ByteBuffer buffer, boolean eofAllowed) throws IOException {
+        assert buffer != null;
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                if (eofAllowed && buffer.position() == 0) {
+                    return false;
+                }
+                throw new EOFException();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 受信したフレーム。
+     */
+    static final class Frame {
+
+        final long id;
+
+        final byte status;
+
+        final byte[] body;
+
+        Frame(long id, byte status, byte[] body) {
+            assert body != null;
+            this.id = id;
+            this.status = status;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 冪等な{@code Callable}をヘッジ付きで起動する。
+ * <p>
+ * 最初の起動が指定の待機時間内に完了しない場合、同じ{@code Callable}をもう一度投入し、
+ * 先に完了した方の結果を返す。残りの起動は取り消される。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class HedgedInvoker {
+
+    /**
+     * インスタンス生成の禁止。
+     */
+    private HedgedInvoker() {
+        throw new AssertionError();
+    }
+
+    /**
+     * 指定の{@code Callable}をヘッジ付きで起動し、その結果を返す。
+     * <p>
+     * 対象の{@code Callable}は複数回起動される可能性があるため、冪等でなければならない。
+     * 先に完了した起動が例外をスローし、かつ他の起動が残っている場合はそちらの完了を待つ。
+     * </p>
+     * @param <T> 結果の型
+     * @param executor 起動に利用する{@code ExecutorService}
+     * @param task 起動する{@code Callable}
+     * @param delay 二つ目の起動を投入するまでの待機時間
+     * @param unit {@code delay}の単位
+     * @return 先に正常に完了した起動の結果
+     * @throws InterruptedException 結果を待機中に割り込まれた場合
+     * @throws ExecutionException すべての起動が例外をスローした場合
+     * @throws IllegalArgumentException {@code delay}が負の値である場合
+     */
+    public static <T> T invoke(
+            ExecutorService executor,
+            Callable<T> task,
+            long delay,
+            TimeUnit unit) throws InterruptedException, ExecutionException {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor is null"); //$NON-NLS-1$
+        }
+        if (task == null) {
+            throw new IllegalArgumentException("task is null"); //$NON-NLS-1$
+        }
+        if (delay < 0) {
+            throw new IllegalArgumentException("delay must not be negative"); //$NON-NLS-1$
+        }
+        if (unit == null) {
+            throw new IllegalArgumentException("unit is null"); //$NON-NLS-1$
+        }
+        CompletionService<T> service = new ExecutorCompletionService<T>(executor);
+        List<Future<T>> futures = new ArrayList<Future<T>>(2);
+        try {
+            futures.add(service.submit(task));
+            Future<T> done = service.poll(delay, unit);
+            if (done == null) {
+                futures.add(service.submit(task));
+                done = service.take();
+            }
+            try {
+                return done.get();
+            }
+            catch (ExecutionException e) {
+                if (futures.size() == 1) {
+                    throw e;
+                }
+                try {
+                    return service.take().get();
+                }
+                catch (ExecutionException ignored) {
+                    throw e;
+                }
+            }
+        }
+        finally {
+            for (Future<T> future : futures) {
+                future.cancel(true);
+            }
+        }
+    }
+}
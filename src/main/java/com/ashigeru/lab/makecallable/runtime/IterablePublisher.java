@@ -0,0 +1,211 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@code Iterable}を返す{@code Callable}の結果を、要求に応じて少しずつ発行する{@link Publisher}。
+ * <p>
+ * 購読ごとに元の{@code Callable}を一度だけ起動し、その結果の要素を要求された個数まで発行する。
+ * 元の{@code Callable}は最初の要求を受けるまで起動されない。
+ * 要素は指定の{@code Executor}上で最大{@code chunkSize}個ずつ発行され、
+ * 一つのチャンクを発行し終えると残りの発行は改めて{@code Executor}に投入される。
+ * </p>
+ * <p>
+ * 元の{@code Callable}が遅延評価される{@code Iterable}を返す場合、
+ * 同時に保持される要素は購読者が要求した個数程度に抑えられる。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ * @param <T> 発行する要素の型
+ */
+public class IterablePublisher<T> implements Publisher<T> {
+
+    private final Callable<? extends Iterable<? extends T>> source;
+
+    private final Executor executor;
+
+    private final int chunkSize;
+
+    /**
+     * インスタンスを生成する。
+     * @param source 発行する要素を返す{@code Callable}
+     * @param executor 要素の発行に利用する{@code Executor}
+     * @param chunkSize 一度に発行する要素の最大個数
+     * @throws IllegalArgumentException {@code chunkSize}が正の値でない場合
+     */
+    public IterablePublisher(
+            Callable<? extends Iterable<? extends T>> source,
+            Executor executor,
+            int chunkSize) {
+        if (source == null) {
+            throw new IllegalArgumentException("source is null"); //$NON-NLS-1$
+        }
+        if (executor == null) {
+            throw new IllegalArgumentException("executor is null"); //$NON-NLS-1$
+        }
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunkSize must be positive"); //$NON-NLS-1$
+        }
+        this.source = source;
+        this.executor = executor;
+        this.chunkSize = chunkSize;
+    }
+
+    public void subscribe(Subscriber<? super T> subscriber) {
+        if (subscriber == null) {
+            throw new IllegalArgumentException("subscriber is null"); //$NON-NLS-1$
+        }
+        subscriber.onSubscribe(new ChunkedSubscription<T>(source, executor, chunkSize, subscriber));
+    }
+
+    private static class ChunkedSubscription<T> implements Subscription, Runnable {
+
+        private final Callable<? extends Iterable<? extends T>> source;
+
+        private final Executor executor;
+
+        private final int chunkSize;
+
+        private final Subscriber<? super T> subscriber;
+
+        private final AtomicLong demand = new AtomicLong();
+
+        private final AtomicInteger scheduled = new AtomicInteger();
+
+        private volatile boolean done;
+
+        private volatile Throwable invalidRequest;
+
+        // 発行処理は同時に一つしか実行されないため、同期化は不要
+        private Iterator<? extends T> iterator;
+
+        ChunkedSubscription(
+                Callable<? extends Iterable<? extends T>> source,
+                Executor executor,
+                int chunkSize,
+                Subscriber<? super T> subscriber) {
+            assert source != null;
+            assert executor != null;
+            assert chunkSize > 0;
+            assert subscriber != null;
+            this.source = source;
+            this.executor = executor;
+            this.chunkSize = chunkSize;
+            this.subscriber = subscriber;
+        }
+
+        public void request(long n) {
+            if (n <= 0) {
+                invalidRequest = new IllegalArgumentException("request must be positive"); //$NON-NLS-1$
+            }
+            else {
+                while (true) {
+                    long current = demand.get();
+                    long next = current + n;
+                    if (next < 0) {
+                        next = Long.MAX_VALUE;
+                    }
+                    if (demand.compareAndSet(current, next)) {
+                        break;
+                    }
+                }
+            }
+            schedule();
+        }
+
+        public void cancel() {
+            done = true;
+        }
+
+        private void schedule() {
+            if (scheduled.getAndIncrement() == 0) {
+                executor.execute(this);
+            }
+        }
+
+        public void run() {
+            int missed = scheduled.get();
+            while (true) {
+                emit();
+                missed = scheduled.addAndGet(-missed);
+                if (missed == 0) {
+                    break;
+                }
+                if (done == false && demand.get() > 0) {
+                    // 一つのチャンクを発行し終えたら、他のタスクに実行の機会を譲る
+                    executor.execute(this);
+                    return;
+                }
+            }
+        }
+
+        private void emit() {
+            if (done) {
+                return;
+            }
+            if (invalidRequest != null) {
+                fail(invalidRequest);
+                return;
+            }
+            try {
+                if (iterator == null) {
+                    if (demand.get() == 0) {
+                        return;
+                    }
+                    iterator = source.call().iterator();
+                }
+                int emitted = 0;
+                while (emitted < chunkSize && done == false && demand.get() > 0) {
+                    if (iterator.hasNext() == false) {
+                        done = true;
+                        subscriber.onComplete();
+                        return;
+                    }
+                    T next = iterator.next();
+                    demand.decrementAndGet();
+                    emitted++;
+                    subscriber.onNext(next);
+                }
+                if (done == false && demand.get() > 0) {
+                    // 要求が残っているので、次のチャンクを予約する
+                    scheduled.incrementAndGet();
+                }
+                else if (done == false && iterator.hasNext() == false) {
+                    done = true;
+                    subscriber.onComplete();
+                }
+            }
+            catch (Throwable t) {
+                fail(t);
+            }
+        }
+
+        private void fail(Throwable t) {
+            assert t != null;
+            done = true;
+            iterator = null;
+            subscriber.onError(t);
+        }
+    }
+}
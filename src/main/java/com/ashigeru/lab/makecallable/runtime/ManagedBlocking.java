@@ -0,0 +1,179 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.concurrent.Callable;
+
+/**
+ * ブロックする可能性のある処理を、{@code ForkJoinPool}に通知しながら実行する。
+ * <p>
+ * 現在のスレッドが{@code ForkJoinPool}のワーカースレッドである場合、
+ * 処理は{@code ForkJoinPool.managedBlock}を経由して実行され、
+ * プールはブロックしている間に補償用のスレッドを追加できる。
+ * それ以外のスレッドや、{@code ForkJoinPool}が存在しない実行環境では、処理をそのまま実行する。
+ * </p>
+ * <p>
+ * {@code ForkJoinPool}はJava SE 7で追加されたため、このクラスはリフレクションを経由して利用する。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class ManagedBlocking {
+
+    private static final Class<?> WORKER_THREAD;
+
+    private static final Class<?> BLOCKER;
+
+    private static final Method MANAGED_BLOCK;
+
+    static {
+        Class<?> worker = null;
+        Class<?> blocker = null;
+        Method managedBlock = null;
+        try {
+            Class<?> pool = Class.forName("java.util.concurrent.ForkJoinPool");
+            worker = Class.forName("java.util.concurrent.ForkJoinWorkerThread");
+            blocker = Class.forName("java.util.concurrent.ForkJoinPool$ManagedBlocker");
+            managedBlock = pool.getMethod("managedBlock", blocker);
+        }
+        catch (ClassNotFoundException e) {
+            managedBlock = null;
+        }
+        catch (NoSuchMethodException e) {
+            managedBlock = null;
+        }
+        WORKER_THREAD = worker;
+        BLOCKER = blocker;
+        MANAGED_BLOCK = managedBlock;
+    }
+
+    /**
+     * インスタンス生成の禁止。
+     */
+    private ManagedBlocking() {
+        throw new AssertionError();
+    }
+
+    /**
+     * 現在のスレッドで処理を実行した際に、{@code ForkJoinPool}へブロックが通知される場合のみ{@code true}を返す。
+     * @return {@code ForkJoinPool}へブロックが通知される場合のみ{@code true}
+     */
+    public static boolean isManaged() {
+        return MANAGED_BLOCK != null && WORKER_THREAD.isInstance(Thread.currentThread());
+    }
+
+    /**
+     * 指定の処理を、必要であれば{@code ForkJoinPool}にブロックを通知しながら実行する。
+     * <p>
+     * 処理がスローした例外は、検査例外も含めてそのまま呼び出し元にスローされる。
+     * このため、呼び出し元は処理がスローしうる検査例外を宣言しておかなければならない。
+     * </p>
+     * @param <T> 処理の結果の型
+     * @param task 実行する処理
+     * @return 処理の結果
+     */
+    public static <T> T invoke(Callable<T> task) {
+        if (task == null) {
+            throw new IllegalArgumentException("task is null"); //$NON-NLS-1$
+        }
+        if (isManaged() == false) {
+            return call(task);
+        }
+        Blocker<T> blocker = new Blocker<T>(task);
+        Object proxy = Proxy.newProxyInstance(BLOCKER.getClassLoader(), new Class<?>[] { BLOCKER }, blocker);
+        try {
+            MANAGED_BLOCK.invoke(null, proxy);
+        }
+        catch (IllegalAccessException e) {
+            throw new AssertionError(e);
+        }
+        catch (InvocationTargetException e) {
+            // managedBlockは割り込みでのみ失敗するが、処理自体は中断しないため割り込み状態を戻して続行する
+            Thread.currentThread().interrupt();
+        }
+        if (blocker.done == false) {
+            return call(task);
+        }
+        if (blocker.failure != null) {
+            throw ManagedBlocking.<RuntimeException>rethrow(blocker.failure);
+        }
+        return blocker.result;
+    }
+
+    private static <T> T call(Callable<T> task) {
+        assert task != null;
+        try {
+            return task.call();
+        }
+        catch (Exception e) {
+            throw ManagedBlocking.<RuntimeException>rethrow(e);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <E extends Throwable> E rethrow(Throwable t) throws E {
+        assert t != null;
+        throw (E) t;
+    }
+
+    private static class Blocker<T> implements InvocationHandler {
+
+        private final Callable<T> task;
+
+        volatile boolean done;
+
+        T result;
+
+        Throwable failure;
+
+        Blocker(Callable<T> task) {
+            assert task != null;
+            this.task = task;
+        }
+
+        public Object invoke(Object proxy, Method method, Object[] args) {
+            String name = method.getName();
+            if (name.equals("block")) {
+                try {
+                    result = task.call();
+                }
+                catch (Throwable t) {
+                    failure = t;
+                }
+                done = true;
+                return Boolean.TRUE;
+            }
+            else if (name.equals("isReleasable")) {
+                return done;
+            }
+            else if (name.equals("equals")) {
+                return proxy == args[0];
+            }
+            else if (name.equals("hashCode")) {
+                return System.identityHashCode(proxy);
+            }
+            else {
+                return "ManagedBlocker(" + task + ")";
+            }
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+/**
+ * 分割キーを持つタスク。
+ * <p>
+ * 同じ分割キーを持つタスクは、{@link StripedExecutor}の同じレーンで投入された順に実行される。
+ * </p>
+ * @author ashigeru
+ */
+public interface Partitioned {
+
+    /**
+     * このタスクの分割キーのハッシュ値を返す。
+     * @return 分割キーのハッシュ値
+     */
+    int partitionKey();
+}
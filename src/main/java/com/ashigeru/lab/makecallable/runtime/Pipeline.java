@@ -0,0 +1,110 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 複数の処理段を一つのタスクに融合した{@code Callable}。
+ * <p>
+ * {@link #call()}は先頭の{@code Callable}を起動し、その結果を連結した各段に順に渡す。
+ * すべての段は呼び出し元のスレッド上でそのまま実行されるため、
+ * 段ごとに{@code Executor}へ投入し直す必要がない。
+ * </p>
+ * <p>
+ * このクラスのインスタンスは不変であり、{@link #then(Stage)}は新しいパイプラインを返す。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ * @param <T> 結果の型
+ */
+public class Pipeline<T> implements Callable<T> {
+
+    private final Callable<? extends T> head;
+
+    private Pipeline(Callable<? extends T> head) {
+        assert head != null;
+        this.head = head;
+    }
+
+    /**
+     * 指定の{@code Callable}を先頭とするパイプラインを返す。
+     * @param <T> 結果の型
+     * @param head 先頭の{@code Callable}
+     * @return 生成したパイプライン
+     */
+    public static <T> Pipeline<T> of(Callable<? extends T> head) {
+        if (head == null) {
+            throw new IllegalArgumentException("head is null"); //$NON-NLS-1$
+        }
+        return new Pipeline<T>(head);
+    }
+
+    /**
+     * 指定の{@code Callable}の結果を指定の段に渡す、一つのタスクを返す。
+     * @param <A> 先頭の結果の型
+     * @param <B> 最終的な結果の型
+     * @param head 先頭の{@code Callable}
+     * @param stage 後続の段
+     * @return 生成したパイプライン
+     */
+    public static <A, B> Pipeline<B> fuse(Callable<? extends A> head, Stage<? super A, ? extends B> stage) {
+        if (head == null) {
+            throw new IllegalArgumentException("head is null"); //$NON-NLS-1$
+        }
+        if (stage == null) {
+            throw new IllegalArgumentException("stage is null"); //$NON-NLS-1$
+        }
+        return Pipeline.<A>of(head).then(stage);
+    }
+
+    /**
+     * このパイプラインの結果を指定の段に渡す、新しいパイプラインを返す。
+     * @param <U> 新しいパイプラインの結果の型
+     * @param stage 後続の段
+     * @return 生成したパイプライン
+     */
+    public <U> Pipeline<U> then(Stage<? super T, ? extends U> stage) {
+        if (stage == null) {
+            throw new IllegalArgumentException("stage is null"); //$NON-NLS-1$
+        }
+        return new Pipeline<U>(new Fused<T, U>(head, stage));
+    }
+
+    public T call() throws Exception {
+        return head.call();
+    }
+
+    private static class Fused<A, B> implements Callable<B> {
+
+        private final Callable<? extends A> upstream;
+
+        private final Stage<? super A, ? extends B> stage;
+
+        Fused(Callable<? extends A> upstream, Stage<? super A, ? extends B> stage) {
+            assert upstream != null;
+            assert stage != null;
+            this.upstream = upstream;
+            this.stage = stage;
+        }
+
+        public B call() throws Exception {
+            return stage.apply(upstream.call());
+        }
+    }
+}
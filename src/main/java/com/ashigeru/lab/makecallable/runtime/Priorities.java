@@ -0,0 +1,57 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+/**
+ * {@link Prioritized}に関するユーティリティ。
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class Priorities {
+
+    /**
+     * インスタンス生成の禁止。
+     */
+    private Priorities() {
+        throw new AssertionError();
+    }
+
+    /**
+     * 指定のタスクを実行する順序で比較する。
+     * <p>
+     * 優先度の値が大きいタスクが先となる。
+     * </p>
+     * @param a 比較するタスク
+     * @param b 比較するタスク
+     * @return {@code a}を先に実行する場合は負の値、{@code b}を先に実行する場合は正の値、いずれでもない場合は{@code 0}
+     */
+    public static int compare(Prioritized a, Prioritized b) {
+        if (a == null) {
+            throw new IllegalArgumentException("a is null"); //$NON-NLS-1$
+        }
+        if (b == null) {
+            throw new IllegalArgumentException("b is null"); //$NON-NLS-1$
+        }
+        int pa = a.getPriority();
+        int pb = b.getPriority();
+        if (pa != pb) {
+            return pa > pb ? -1 : +1;
+        }
+        return 0;
+    }
+}
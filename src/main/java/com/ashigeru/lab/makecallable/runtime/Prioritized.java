@@ -0,0 +1,35 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+/**
+ * 優先度を持つタスク。
+ * <p>
+ * 優先度の値が大きいタスクほど先に実行される。
+ * 優先度が等しいタスクの順序は実行する側が決める。
+ * {@link PriorityExecutor}は、優先度が等しいタスクを投入した順に実行する。
+ * </p>
+ * @author ashigeru
+ * @see Priorities#compare(Prioritized, Prioritized)
+ */
+public interface Prioritized {
+
+    /**
+     * このタスクの優先度を返す。
+     * @return このタスクの優先度
+     */
+    int getPriority();
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * {@link Prioritized}を実装するタスクを優先度の順に実行する{@code ExecutorService}。
+ * <p>
+ * {@link Prioritized}を実装しないタスクは、優先度{@code 0}として扱う。
+ * 優先度が等しいタスクは、投入された順に実行される。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class PriorityExecutor extends ThreadPoolExecutor {
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    /**
+     * インスタンスを生成する。
+     * @param poolSize ワーカースレッドの数
+     * @param threadFactory ワーカースレッドを生成するファクトリ
+     * @throws IllegalArgumentException {@code poolSize}が正の値でない場合
+     */
+    public PriorityExecutor(int poolSize, ThreadFactory threadFactory) {
+        super(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<Runnable>(),
+            nonNull(threadFactory));
+    }
+
+    private static ThreadFactory nonNull(ThreadFactory threadFactory) {
+        if (threadFactory == null) {
+            throw new IllegalArgumentException("threadFactory is null"); //$NON-NLS-1$
+        }
+        return threadFactory;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new IllegalArgumentException("command is null"); //$NON-NLS-1$
+        }
+        if (command instanceof PriorityTask<?>) {
+            super.execute(command);
+        }
+        else {
+            super.execute(new PriorityTask<Object>(command, null, command, sequence.getAndIncrement()));
+        }
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        return new PriorityTask<T>(callable, callable, sequence.getAndIncrement());
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        return new PriorityTask<T>(runnable, value, runnable, sequence.getAndIncrement());
+    }
+
+    // 優先度が等しいタスクは、投入時に採番した連番の順に実行する
+    private static final class PriorityTask<T> extends FutureTask<T>
+            implements Prioritized, Comparable<PriorityTask<?>> {
+
+        private final int priority;
+
+        private final long sequence;
+
+        PriorityTask(Callable<T> callable, Object origin, long sequence) {
+            super(callable);
+            this.priority = priorityOf(origin);
+            this.sequence = sequence;
+        }
+
+        PriorityTask(Runnable runnable, T value, Object origin, long sequence) {
+            super(runnable, value);
+            this.priority = priorityOf(origin);
+            this.sequence = sequence;
+        }
+
+        private static int priorityOf(Object origin) {
+            if (origin instanceof Prioritized) {
+                return ((Prioritized) origin).getPriority();
+            }
+            return 0;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+
+        public int compareTo(PriorityTask<?> o) {
+            int diff = Priorities.compare(this, o);
+            if (diff != 0) {
+                return diff;
+            }
+            if (sequence != o.sequence) {
+                return sequence < o.sequence ? -1 : +1;
+            }
+            return 0;
+        }
+    }
+}
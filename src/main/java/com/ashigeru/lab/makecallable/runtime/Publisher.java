@@ -0,0 +1,37 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+/**
+ * 要求に応じて要素を発行する発行者。
+ * <p>
+ * Reactive Streamsの{@code Publisher}と同じ規約に従う。
+ * </p>
+ * @author ashigeru
+ * @param <T> 発行する要素の型
+ */
+public interface Publisher<T> {
+
+    /**
+     * 指定の購読者を登録する。
+     * <p>
+     * 購読者にはまず{@link Subscriber#onSubscribe(Subscription)}が通知され、
+     * 以後は{@link Subscription#request(long)}で要求された個数までの要素が発行される。
+     * </p>
+     * @param subscriber 登録する購読者
+     */
+    void subscribe(Subscriber<? super T> subscriber);
+}
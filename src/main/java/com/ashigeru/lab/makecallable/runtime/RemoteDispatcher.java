@@ -0,0 +1,544 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.security.SecureRandom;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 直列化可能な{@code Callable}を、同一マシン上で起動したワーカーJVMで実行する。
+ * <p>
+ * ディスパッチャはループバックアドレスで待ち受け、指定の数の{@link RemoteWorker}プロセスを起動する。
+ * 各ワーカーとは一本のソケットチャネルで接続され、要求は応答を待たずに次々と送られ、
+ * 応答は識別子によって対応する{@code Future}に振り分けられる。
+ * ワーカーごとに同時に送信済みとなる要求の数は{@code window}で制限され、
+ * すべてのワーカーの枠が埋まっている場合、{@link #submit(Callable)}は枠が空くまで待機する。
+ * </p>
+ * <p>
+ * ワーカーとの接続が切れた場合、そのワーカーに送信済みの要求は{@code ExecutionException}で失敗する。
+ * </p>
+ * <p>
+ * このクラスのメソッドはスレッド安全である。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class RemoteDispatcher implements Closeable {
+
+    private static final long CONNECT_TIMEOUT_MILLIS = 30000L;
+
+    private static final long EXIT_TIMEOUT_MILLIS = 10000L;
+
+    private static final long EXIT_POLL_MILLIS = 50L;
+
+    private final List<Worker> workers;
+
+    private final AtomicLong nextId = new AtomicLong();
+
+    private volatile boolean closed;
+
+    private RemoteDispatcher(List<Worker> workers) {
+        assert workers != null;
+        this.workers = workers;
+    }
+
+    /**
+     * ワーカープロセスを起動し、それらに接続したディスパッチャを返す。
+     * <p>
+     * ワーカーはこのJVMと同じ{@code java}コマンドと、指定のクラスパスで起動される。
+     * クラスパスには、実行する{@code Callable}とこのライブラリのクラスが含まれていなければならない。
+     * </p>
+     * @param workerCount 起動するワーカーの数
+     * @param threads 各ワーカーで{@code Callable}を実行するスレッドの数
+     * @param window 各ワーカーに同時に送信済みとなる要求の上限
+     * @param classPath ワーカーのクラスパス
+     * @return 生成したディスパッチャ
+     * @throws IOException ワーカーの起動または接続に失敗した場合
+     * @throws IllegalArgumentException {@code workerCount}, {@code threads}, {@code window}のいずれかが正の値でない場合
+     */
+    public static RemoteDispatcher start(
+            int workerCount,
+            int threads,
+            int window,
+            String classPath) throws IOException {
+        if (workerCount <= 0) {
+            throw new IllegalArgumentException("workerCount must be positive"); //$NON-NLS-1$
+        }
+        if (threads <= 0) {
+            throw new IllegalArgumentException("threads must be positive"); //$NON-NLS-1$
+        }
+        if (window <= 0) {
+            throw new IllegalArgumentException("window must be positive"); //$NON-NLS-1$
+        }
+        if (classPath == null) {
+            throw new IllegalArgumentException("classPath is null"); //$NON-NLS-1$
+        }
+        long token = new SecureRandom().nextLong();
+        List<Process> processes = new ArrayList<Process>();
+        List<Worker> workers = new ArrayList<Worker>();
+        ServerSocketChannel server = ServerSocketChannel.open();
+        boolean succeed = false;
+        try {
+            server.socket().bind(new InetSocketAddress(InetAddress.getByName(null), 0));
+            int port = server.socket().getLocalPort();
+            for (int i = 0; i < workerCount; i++) {
+                processes.add(launch(classPath, port, token, i, threads));
+            }
+            // 接続は起動順に届くとは限らないため、ワーカーが名乗った番号でプロセスと対応付ける
+            SocketChannel[] channels = accept(server, token, workerCount);
+            for (int i = 0; i < channels.length; i++) {
+                workers.add(new Worker(channels[i], processes.get(i), window));
+            }
+            succeed = true;
+        }
+        finally {
+            server.close();
+            if (succeed == false) {
+                for (Worker worker : workers) {
+                    worker.channel.close();
+                }
+                for (Process process : processes) {
+                    process.destroy();
+                }
+            }
+        }
+        RemoteDispatcher dispatcher = new RemoteDispatcher(workers);
+        for (int i = 0; i < workers.size(); i++) {
+            workers.get(i).start(MessageFormat.format("RemoteDispatcher-{0}", i));
+        }
+        return dispatcher;
+    }
+
+    /**
+     * 指定の{@code Callable}をいずれかのワーカーに送信する。
+     * <p>
+     * {@code Callable}はこのメソッドを起動したスレッドで直列化される。
+     * 送信済みの要求を取り消しても、ワーカーでの実行は中断されない。
+     * </p>
+     * @param <T> 結果の型
+     * @param task 送信する{@code Callable}、直列化可能であること
+     * @return 結果を受け取るための{@code Future}
+     * @throws IOException 直列化に失敗した場合
+     * @throws IllegalArgumentException {@code task}が直列化可能でない場合
+     * @throws RejectedExecutionException このディスパッチャが既に閉じられているか、
+     *     利用可能なワーカーが存在しない場合、または枠が空くまで待機中に割り込まれた場合
+     */
+    public <T> Future<T> submit(Callable<T> task) throws IOException {
+        if (task == null) {
+            throw new IllegalArgumentException("task is null"); //$NON-NLS-1$
+        }
+        if ((task instanceof Serializable) == false) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                "task must be serializable: {0}", //$NON-NLS-1$
+                task.getClass().getName()));
+        }
+        long id = nextId.incrementAndGet();
+        ByteBuffer frame = FrameChannel.encode(id, FrameChannel.STATUS_OK, task);
+        Worker worker = acquire();
+        RemoteFuture<T> future = new RemoteFuture<T>();
+        worker.pending.put(id, future);
+        try {
+            worker.channel.send(frame);
+        }
+        catch (IOException e) {
+            if (worker.pending.remove(id) != null) {
+                worker.window.release();
+            }
+            throw new RejectedExecutionException(e);
+        }
+        return future;
+    }
+
+    /**
+     * 利用可能なワーカーの数を返す。
+     * @return 利用可能なワーカーの数
+     */
+    public int getWorkerCount() {
+        int count = 0;
+        for (Worker worker : workers) {
+            if (worker.alive) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * すべてのワーカーとの接続を閉じ、ワーカープロセスを終了させる。
+     * 結果を受け取っていない要求は{@code ExecutionException}で失敗する。
+     * <p>
+     * ワーカーは接続が切れた時点で終了するが、一定時間内に終了しないワーカープロセスは強制的に終了させる。
+     * </p>
+     */
+    public void close() {
+        closed = true;
+        for (Worker worker : workers) {
+            worker.channel.close();
+        }
+        long deadline = System.currentTimeMillis() + EXIT_TIMEOUT_MILLIS;
+        for (Worker worker : workers) {
+            if (awaitExit(worker.process, deadline) == false) {
+                worker.process.destroy();
+            }
+        }
+    }
+
+    private Worker acquire() {
+        while (true) {
+            if (closed) {
+                throw new RejectedExecutionException("dispatcher is closed");
+            }
+            // 空いている枠が最も多いワーカーを選ぶ
+            Worker best = null;
+            int bestPermits = -1;
+            for (Worker worker : workers) {
+                int permits = worker.window.availablePermits();
+                if (worker.alive && permits > bestPermits) {
+                    best = worker;
+                    bestPermits = permits;
+                }
+            }
+            if (best == null) {
+                throw new RejectedExecutionException("no available workers");
+            }
+            try {
+                if (best.window.tryAcquire(100, TimeUnit.MILLISECONDS)) {
+                    if (best.alive) {
+                        return best;
+                    }
+                    best.window.release();
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RejectedExecutionException(e);
+            }
+        }
+    }
+
+    private static boolean awaitExit(Process process, long deadline) {
+        assert process != null;
+        while (true) {
+            try {
+                process.exitValue();
+                return true;
+            }
+            catch (IllegalThreadStateException e) {
+                // まだ終了していない
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                return false;
+            }
+            try {
+                Thread.sleep(EXIT_POLL_MILLIS);
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private static Process launch(
+            String classPath,
+            int port,
+            long token,
+            int index,
+            int threads) throws IOException {
+        assert classPath != null;
+        String java = new File(new File(System.getProperty("java.home"), "bin"), "java").getPath();
+        ProcessBuilder builder = new ProcessBuilder(
+            java,
+            "-cp",
+            classPath,
+            RemoteWorker.class.getName(),
+            String.valueOf(port),
+            String.valueOf(token),
+            String.valueOf(index),
+            String.valueOf(threads));
+        builder.redirectErrorStream(true);
+        final Process process = builder.start();
+        process.getOutputStream().close();
+        Thread pump = new Thread(new Runnable() {
+            public void run() {
+                pump(process.getInputStream());
+            }
+        }, "RemoteDispatcher-output");
+        pump.setDaemon(true);
+        pump.start();
+        return process;
+    }
+
+    private static void pump(InputStream input) {
+        assert input != null;
+        byte[] buffer = new byte[1024];
+        try {
+            try {
+                for (int read = input.read(buffer); read >= 0; read = input.read(buffer)) {
+                    System.err.write(buffer, 0, read);
+                }
+            }
+            finally {
+                input.close();
+            }
+        }
+        catch (IOException e) {
+            // ignored
+        }
+    }
+
+    private static SocketChannel[] accept(ServerSocketChannel server, long token, int count) throws IOException {
+        assert server != null;
+        SocketChannel[] results = new SocketChannel[count];
+        int connected = 0;
+        Selector selector = Selector.open();
+        try {
+            server.configureBlocking(false);
+            server.register(selector, SelectionKey.OP_ACCEPT);
+            long deadline = System.currentTimeMillis() + CONNECT_TIMEOUT_MILLIS;
+            while (connected < count) {
+                long rest = deadline - System.currentTimeMillis();
+                if (rest <= 0) {
+                    throw new IOException(MessageFormat.format(
+                        "workers did not connect in time ({0}/{1})",
+                        connected,
+                        count));
+                }
+                selector.select(rest);
+                selector.selectedKeys().clear();
+                for (SocketChannel channel = server.accept(); channel != null; channel = server.accept()) {
+                    channel.configureBlocking(true);
+                    int index = authenticate(channel, token);
+                    if (0 <= index && index < count && results[index] == null) {
+                        channel.socket().setTcpNoDelay(true);
+                        results[index] = channel;
+                        connected++;
+                    }
+                    else {
+                        channel.close();
+                    }
+                }
+            }
+            return results;
+        }
+        catch (IOException e) {
+            for (SocketChannel channel : results) {
+                if (channel != null) {
+                    channel.close();
+                }
+            }
+            throw e;
+        }
+        finally {
+            selector.close();
+        }
+    }
+
+    private static int authenticate(SocketChannel channel, long token) throws IOException {
+        assert channel != null;
+        ByteBuffer hello = ByteBuffer.allocate(RemoteWorker.HELLO_SIZE);
+        while (hello.hasRemaining()) {
+            if (channel.read(hello) < 0) {
+                return -1;
+            }
+        }
+        hello.flip();
+        if (hello.getLong() != token) {
+            return -1;
+        }
+        return hello.getInt();
+    }
+
+    private static final class Worker {
+
+        final FrameChannel channel;
+
+        final Semaphore window;
+
+        final ConcurrentMap<Long, RemoteFuture<?>> pending = new ConcurrentHashMap<Long, RemoteFuture<?>>();
+
+        final Process process;
+
+        volatile boolean alive = true;
+
+        Worker(SocketChannel channel, Process process, int window) {
+            assert channel != null;
+            assert process != null;
+            assert window > 0;
+            this.channel = new FrameChannel(channel);
+            this.process = process;
+            this.window = new Semaphore(window);
+        }
+
+        void start(String name) {
+            assert name != null;
+            channel.start(name + "-writer");
+            Thread reader = new Thread(new Runnable() {
+                public void run() {
+                    receive();
+                }
+            }, name + "-reader");
+            reader.setDaemon(true);
+            reader.start();
+        }
+
+        void receive() {
+            IOException cause = new IOException("worker disconnected");
+            try {
+                for (FrameChannel.Frame frame = channel.receive(); frame != null; frame = channel.receive()) {
+                    RemoteFuture<?> future = pending.remove(frame.id);
+                    if (future == null) {
+                        continue;
+                    }
+                    window.release();
+                    future.complete(frame);
+                }
+            }
+            catch (IOException e) {
+                cause = e;
+            }
+            finally {
+                alive = false;
+                channel.close();
+                for (Long id : pending.keySet()) {
+                    RemoteFuture<?> future = pending.remove(id);
+                    if (future != null) {
+                        window.release();
+                        future.fail(cause);
+                    }
+                }
+            }
+        }
+    }
+
+    private static final class RemoteFuture<T> implements Future<T> {
+
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        private final AtomicBoolean settled = new AtomicBoolean();
+
+        // 以下のフィールドは done を開放する前に一度だけ書き込まれる
+        private Object value;
+
+        private Throwable failure;
+
+        private boolean cancelled;
+
+        void complete(FrameChannel.Frame frame) {
+            assert frame != null;
+            Object decoded;
+            try {
+                decoded = FrameChannel.decode(frame.body);
+            }
+            catch (Exception e) {
+                settle(null, e, false);
+                return;
+            }
+            if (frame.status == FrameChannel.STATUS_OK) {
+                settle(decoded, null, false);
+            }
+            else if (decoded instanceof Throwable) {
+                settle(null, (Throwable) decoded, false);
+            }
+            else {
+                settle(null, new IOException(String.valueOf(decoded)), false);
+            }
+        }
+
+        void fail(Throwable cause) {
+            assert cause != null;
+            settle(null, cause, false);
+        }
+
+        public boolean cancel(boolean mayInterruptIfRunning) {
+            return settle(null, null, true);
+        }
+
+        public boolean isCancelled() {
+            return isDone() && cancelled;
+        }
+
+        public boolean isDone() {
+            return done.getCount() == 0;
+        }
+
+        public T get() throws InterruptedException, ExecutionException {
+            done.await();
+            return report();
+        }
+
+        public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+            if (unit == null) {
+                throw new IllegalArgumentException("unit is null"); //$NON-NLS-1$
+            }
+            if (done.await(timeout, unit) == false) {
+                throw new TimeoutException();
+            }
+            return report();
+        }
+
+        private boolean settle(Object newValue, Throwable newFailure, boolean newCancelled) {
+            if (settled.compareAndSet(false, true) == false) {
+                return false;
+            }
+            this.value = newValue;
+            this.failure = newFailure;
+            this.cancelled = newCancelled;
+            done.countDown();
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        private T report() throws ExecutionException {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+            if (failure != null) {
+                throw new ExecutionException(failure);
+            }
+            return (T) value;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * {@link RemoteDispatcher}から送られた{@code Callable}を実行するワーカープロセス。
+ * <p>
+ * このクラスは{@link RemoteDispatcher}が起動するJVMのエントリポイントであり、
+ * 通常は直接起動しない。
+ * ワーカーはディスパッチャのポートに接続し、受け取った{@code Callable}を
+ * 固定数のスレッドで実行して、その結果を受け取った順序とは無関係に送り返す。
+ * ディスパッチャとの接続が切れた時点で終了する。
+ * </p>
+ * @author ashigeru
+ */
+public final class RemoteWorker {
+
+    /**
+     * 接続直後にディスパッチャへ送る認証情報のバイト数 (トークンとワーカーの番号)。
+     */
+    static final int HELLO_SIZE = 8 + 4;
+
+    private final FrameChannel channel;
+
+    private final ExecutorService executor;
+
+    private RemoteWorker(FrameChannel channel, ExecutorService executor) {
+        assert channel != null;
+        assert executor != null;
+        this.channel = channel;
+        this.executor = executor;
+    }
+
+    /**
+     * ワーカーを起動する。
+     * <p>
+     * 引数には以下を順に指定する。
+     * </p>
+     * <ol>
+     * <li> ディスパッチャが待ち受けているループバックアドレスのポート番号 </li>
+     * <li> ディスパッチャから渡された認証用のトークン </li>
+     * <li> ディスパッチャがこのワーカーのプロセスに割り当てた番号 </li>
+     * <li> {@code Callable}を実行するスレッドの数 </li>
+     * </ol>
+     * @param args プログラム引数
+     * @throws IOException ディスパッチャとの通信に失敗した場合
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length != 4) {
+            throw new IllegalArgumentException("usage: RemoteWorker <port> <token> <index> <threads>"); //$NON-NLS-1$
+        }
+        int port = Integer.parseInt(args[0]);
+        long token = Long.parseLong(args[1]);
+        int index = Integer.parseInt(args[2]);
+        int threads = Integer.parseInt(args[3]);
+        SocketChannel socket = SocketChannel.open(new InetSocketAddress(InetAddress.getByName(null), port));
+        socket.socket().setTcpNoDelay(true);
+        ByteBuffer hello = ByteBuffer.allocate(HELLO_SIZE);
+        hello.putLong(token);
+        hello.putInt(index);
+        hello.flip();
+        while (hello.hasRemaining()) {
+            socket.write(hello);
+        }
+        FrameChannel channel = new FrameChannel(socket);
+        channel.start("RemoteWorker-writer");
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            new RemoteWorker(channel, executor).serve();
+        }
+        finally {
+            executor.shutdownNow();
+            channel.close();
+        }
+    }
+
+    private void serve() throws IOException {
+        while (true) {
+            final FrameChannel.Frame frame = channel.receive();
+            if (frame == null) {
+                return;
+            }
+            executor.execute(new Runnable() {
+                public void run() {
+                    respond(frame);
+                }
+            });
+        }
+    }
+
+    private void respond(FrameChannel.Frame frame) {
+        assert frame != null;
+        // ディスパッチャ側の枠は応答を受け取るまで解放されないため、必ず何らかの応答を返す
+        ByteBuffer response = execute(frame);
+        try {
+            channel.send(response);
+        }
+        catch (IOException e) {
+            // 切断された後の結果は破棄する
+        }
+    }
+
+    private ByteBuffer execute(FrameChannel.Frame frame) {
+        assert frame != null;
+        Object result;
+        try {
+            Callable<?> task = (Callable<?>) FrameChannel.decode(frame.body);
+            result = task.call();
+        }
+        catch (Throwable t) {
+            return failure(frame.id, t);
+        }
+        try {
+            return FrameChannel.encode(frame.id, FrameChannel.STATUS_OK, result);
+        }
+        catch (Throwable t) {
+            return failure(frame.id, t);
+        }
+    }
+
+    private ByteBuffer failure(long id, Throwable cause) {
+        assert cause != null;
+        try {
+            return FrameChannel.encode(id, FrameChannel.STATUS_FAILED, cause);
+        }
+        catch (Throwable t) {
+            // 直列化できない例外は内容を文字列にして送る
+            return failure(id, cause.toString());
+        }
+    }
+
+    private ByteBuffer failure(long id, String message) {
+        assert message != null;
+        try {
+            return FrameChannel.encode(id, FrameChannel.STATUS_FAILED, message);
+        }
+        catch (IOException e) {
+            // メモリ上への文字列の直列化は失敗しない
+            throw new AssertionError(e);
+        }
+    }
+}
@@ -0,0 +1,236 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Classified}を実装するタスクを、その負荷の種類に対応するスレッドプールで実行する{@code ExecutorService}。
+ * <p>
+ * 種類に対応するスレッドプールが登録されていないタスクや、
+ * {@link Classified}を実装しないタスクは既定のスレッドプールで実行される。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class RoutingExecutor extends AbstractExecutorService {
+
+    private static final long BLOCKING_KEEP_ALIVE_SECONDS = 60L;
+
+    private final Map<TaskKind, ExecutorService> routes;
+
+    private final ExecutorService fallback;
+
+    private final List<ExecutorService> pools;
+
+    /**
+     * インスタンスを生成する。
+     * @param routes 負荷の種類と、その種類のタスクを実行するスレッドプールの対応表
+     * @param fallback 既定のスレッドプール
+     */
+    public RoutingExecutor(Map<TaskKind, ? extends ExecutorService> routes, ExecutorService fallback) {
+        if (routes == null) {
+            throw new IllegalArgumentException("routes is null"); //$NON-NLS-1$
+        }
+        if (fallback == null) {
+            throw new IllegalArgumentException("fallback is null"); //$NON-NLS-1$
+        }
+        this.routes = new EnumMap<TaskKind, ExecutorService>(TaskKind.class);
+        this.routes.putAll(routes);
+        this.fallback = fallback;
+        Map<ExecutorService, Boolean> distinct = new IdentityHashMap<ExecutorService, Boolean>();
+        distinct.put(fallback, Boolean.TRUE);
+        for (ExecutorService pool : this.routes.values()) {
+            if (pool == null) {
+                throw new IllegalArgumentException("routes must not contain null"); //$NON-NLS-1$
+            }
+            distinct.put(pool, Boolean.TRUE);
+        }
+        this.pools = new ArrayList<ExecutorService>(distinct.keySet());
+    }
+
+    /**
+     * 実行環境のプロセッサ数に合わせたスレッドプールを持つインスタンスを生成する。
+     * <p>
+     * 生成されるスレッドプールは次の通り。
+     * </p>
+     * <ul>
+     * <li> {@link TaskKind#CPU} - プロセッサ数と同じ数のスレッドを持つ固定サイズのプール (既定のプールを兼ねる) </li>
+     * <li> {@link TaskKind#BLOCKING_IO} - 最大{@code blockingThreads}個のスレッドと、
+     *      長さ{@code blockingQueueCapacity}の待ち行列を持つプール </li>
+     * <li> {@link TaskKind#LATENCY_CRITICAL} - プロセッサ数の半分 (最低2) のスレッドを持つ専用のプール </li>
+     * </ul>
+     * <p>
+     * {@link TaskKind#BLOCKING_IO}のプールは、一定時間利用されなかったスレッドを破棄する。
+     * スレッドと待ち行列がともに埋まっている場合、そのプールへの投入は
+     * {@link java.util.concurrent.RejectedExecutionException}をスローする。
+     * </p>
+     * @param blockingThreads {@link TaskKind#BLOCKING_IO}のタスクを実行するスレッドの最大数
+     * @param blockingQueueCapacity {@link TaskKind#BLOCKING_IO}のタスクを待たせる待ち行列の長さ
+     * @param threadFactory スレッドを生成するファクトリ
+     * @return 生成したインスタンス
+     * @throws IllegalArgumentException {@code blockingThreads}が正の値でない場合、
+     *     または{@code blockingQueueCapacity}が正の値でない場合
+     */
+    public static RoutingExecutor newDefault(
+            int blockingThreads,
+            int blockingQueueCapacity,
+            ThreadFactory threadFactory) {
+        if (blockingThreads <= 0) {
+            throw new IllegalArgumentException("blockingThreads must be positive"); //$NON-NLS-1$
+        }
+        if (blockingQueueCapacity <= 0) {
+            throw new IllegalArgumentException("blockingQueueCapacity must be positive"); //$NON-NLS-1$
+        }
+        if (threadFactory == null) {
+            throw new IllegalArgumentException("threadFactory is null"); //$NON-NLS-1$
+        }
+        int processors = Runtime.getRuntime().availableProcessors();
+        ExecutorService cpu = Executors.newFixedThreadPool(processors, threadFactory);
+        ThreadPoolExecutor blocking = new ThreadPoolExecutor(
+            blockingThreads, blockingThreads,
+            BLOCKING_KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<Runnable>(blockingQueueCapacity),
+            threadFactory);
+        blocking.allowCoreThreadTimeOut(true);
+        Map<TaskKind, ExecutorService> routes = new EnumMap<TaskKind, ExecutorService>(TaskKind.class);
+        routes.put(TaskKind.CPU, cpu);
+        routes.put(TaskKind.BLOCKING_IO, blocking);
+        routes.put(TaskKind.LATENCY_CRITICAL, Executors.newFixedThreadPool(
+            Math.max(2, processors / 2),
+            threadFactory));
+        return new RoutingExecutor(routes, cpu);
+    }
+
+    /**
+     * 指定の負荷の種類を持つタスクを実行するスレッドプールを返す。
+     * @param kind 負荷の種類
+     * @return 対応するスレッドプール
+     */
+    public ExecutorService routeOf(TaskKind kind) {
+        if (kind == null) {
+            throw new IllegalArgumentException("kind is null"); //$NON-NLS-1$
+        }
+        ExecutorService pool = routes.get(kind);
+        return pool == null ? fallback : pool;
+    }
+
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new IllegalArgumentException("command is null"); //$NON-NLS-1$
+        }
+        if (command instanceof Classified) {
+            routeOf(((Classified) command).getKind()).execute(command);
+        }
+        else {
+            fallback.execute(command);
+        }
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        if (callable instanceof Classified) {
+            return new ClassifiedTask<T>(callable, ((Classified) callable).getKind());
+        }
+        return super.newTaskFor(callable);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        if (runnable instanceof Classified) {
+            return new ClassifiedTask<T>(
+                Executors.callable(runnable, value),
+                ((Classified) runnable).getKind());
+        }
+        return super.newTaskFor(runnable, value);
+    }
+
+    public void shutdown() {
+        for (ExecutorService pool : pools) {
+            pool.shutdown();
+        }
+    }
+
+    public List<Runnable> shutdownNow() {
+        List<Runnable> results = new ArrayList<Runnable>();
+        for (ExecutorService pool : pools) {
+            results.addAll(pool.shutdownNow());
+        }
+        return results;
+    }
+
+    public boolean isShutdown() {
+        for (ExecutorService pool : pools) {
+            if (pool.isShutdown() == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isTerminated() {
+        for (ExecutorService pool : pools) {
+            if (pool.isTerminated() == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (unit == null) {
+            throw new IllegalArgumentException("unit is null"); //$NON-NLS-1$
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ExecutorService pool : pools) {
+            long rest = deadline - System.nanoTime();
+            if (pool.awaitTermination(rest, TimeUnit.NANOSECONDS) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class ClassifiedTask<T> extends FutureTask<T> implements Classified {
+
+        private final TaskKind kind;
+
+        ClassifiedTask(Callable<T> callable, TaskKind kind) {
+            super(callable);
+            this.kind = kind;
+        }
+
+        public TaskKind getKind() {
+            return kind;
+        }
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 期限を過ぎたタスクを実行せずに読み飛ばす{@code ThreadPoolExecutor}。
+ * <p>
+ * {@link Deadlined}を実装するタスクは、ワーカースレッドが取り出した時点で期限を確認される。
+ * 期限を過ぎていた場合、タスクは実行されずに取り消され、対応する{@code Future}は
+ * {@code CancellationException}をスローする。
+ * {@code execute}で直接投入された場合も同様に読み飛ばされる。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class SheddingExecutor extends ThreadPoolExecutor {
+
+    private final AtomicLong skippedCount = new AtomicLong();
+
+    /**
+     * インスタンスを生成する。
+     * @param threads スレッド数
+     * @param workQueue 待機中のタスクを保持するキュー
+     * @param threadFactory スレッドを生成するファクトリ
+     * @throws IllegalArgumentException {@code threads}が正の値でない場合
+     */
+    public SheddingExecutor(int threads, BlockingQueue<Runnable> workQueue, ThreadFactory threadFactory) {
+        super(threads, threads, 0L, TimeUnit.MILLISECONDS, workQueue, threadFactory);
+    }
+
+    /**
+     * 期限を過ぎていたために実行せずに読み飛ばしたタスクの数を返す。
+     * @return 読み飛ばしたタスクの数
+     */
+    public long getSkippedCount() {
+        return skippedCount.get();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        if (command instanceof Deadlined && (command instanceof SheddingTask<?>) == false) {
+            super.execute(new SheddingTask<Object>(Executors.callable(command), (Deadlined) command));
+            return;
+        }
+        super.execute(command);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        if (callable instanceof Deadlined) {
+            return new SheddingTask<T>(callable, (Deadlined) callable);
+        }
+        return super.newTaskFor(callable);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        if (runnable instanceof Deadlined) {
+            return new SheddingTask<T>(Executors.callable(runnable, value), (Deadlined) runnable);
+        }
+        return super.newTaskFor(runnable, value);
+    }
+
+    private final class SheddingTask<T> extends FutureTask<T> implements Deadlined {
+
+        private final Deadlined deadlined;
+
+        SheddingTask(Callable<T> callable, Deadlined deadlined) {
+            super(callable);
+            this.deadlined = deadlined;
+        }
+
+        public long getDeadline() {
+            return deadlined.getDeadline();
+        }
+
+        public boolean isExpired() {
+            return deadlined.isExpired();
+        }
+
+        @Override
+        public void run() {
+            if (isExpired() && cancel(false)) {
+                skippedCount.incrementAndGet();
+                return;
+            }
+            super.run();
+        }
+    }
+}
@@ -0,0 +1,32 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+/**
+ * 保持しているデータ量の見積もりを公開するタスク。
+ * <p>
+ * {@link ByteBoundedQueue}は、この見積もりの合計によって保持する要素を制限する。
+ * </p>
+ * @author ashigeru
+ */
+public interface Sized {
+
+    /**
+     * このタスクが保持しているデータ量の見積もりを返す。
+     * @return データ量の見積もり(バイト)
+     */
+    long estimatedSize();
+}
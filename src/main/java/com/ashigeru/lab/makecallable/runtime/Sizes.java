@@ -0,0 +1,120 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.lang.reflect.Array;
+
+/**
+ * オブジェクトが占めるヒープ上の大きさを見積もる。
+ * <p>
+ * 見積もりは圧縮参照を有効にした64ビットのJVMを想定しており、
+ * オブジェクトヘッダを12バイト、参照を4バイト、アラインメントを8バイトとして計算する。
+ * </p>
+ * @author ashigeru
+ */
+public class Sizes {
+
+    /**
+     * オブジェクトヘッダの大きさ(バイト)。
+     */
+    public static final int OBJECT_HEADER = 12;
+
+    /**
+     * 配列のヘッダの大きさ(バイト)。
+     */
+    public static final int ARRAY_HEADER = 16;
+
+    /**
+     * 参照の大きさ(バイト)。
+     */
+    public static final int REFERENCE = 4;
+
+    /**
+     * オブジェクトのアラインメント(バイト)。
+     */
+    public static final int ALIGNMENT = 8;
+
+    // String本体 (ヘッダ + 参照 + int * 2)
+    private static final long STRING_SHALLOW = align(OBJECT_HEADER + REFERENCE + 4 + 4);
+
+    /**
+     * インスタンス生成の禁止。
+     */
+    private Sizes() {
+        throw new AssertionError();
+    }
+
+    /**
+     * 指定の大きさをアラインメントの倍数に切り上げる。
+     * @param size 対象の大きさ
+     * @return 切り上げた大きさ
+     */
+    public static long align(long size) {
+        return (size + ALIGNMENT - 1) / ALIGNMENT * ALIGNMENT;
+    }
+
+    /**
+     * 指定の配列の大きさを見積もる。
+     * <p>
+     * 要素が参照する先のオブジェクトは含まない。
+     * </p>
+     * @param array 対象の配列、{@code null}の場合は{@code 0}を返す
+     * @return 配列の大きさの見積もり(バイト)
+     * @throws IllegalArgumentException 引数が配列でない場合
+     */
+    public static long ofArray(Object array) {
+        if (array == null) {
+            return 0;
+        }
+        Class<?> component = array.getClass().getComponentType();
+        if (component == null) {
+            throw new IllegalArgumentException("array must be an array"); //$NON-NLS-1$
+        }
+        return align(ARRAY_HEADER + (long) Array.getLength(array) * elementSize(component));
+    }
+
+    /**
+     * 指定の文字列の大きさを見積もる。
+     * <p>
+     * 文字列は文字ごとに2バイトを占める{@code char}の配列を保持しているものとして計算する。
+     * </p>
+     * @param chars 対象の文字列、{@code null}の場合は{@code 0}を返す
+     * @return 文字列の大きさの見積もり(バイト)
+     */
+    public static long ofCharSequence(CharSequence chars) {
+        if (chars == null) {
+            return 0;
+        }
+        return STRING_SHALLOW + align(ARRAY_HEADER + 2L * chars.length());
+    }
+
+    private static int elementSize(Class<?> component) {
+        assert component != null;
+        if (component == long.class || component == double.class) {
+            return 8;
+        }
+        if (component == int.class || component == float.class) {
+            return 4;
+        }
+        if (component == short.class || component == char.class) {
+            return 2;
+        }
+        if (component == byte.class || component == boolean.class) {
+            return 1;
+        }
+        return REFERENCE;
+    }
+}
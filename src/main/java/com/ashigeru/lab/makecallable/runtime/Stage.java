@@ -0,0 +1,36 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+/**
+ * パイプラインの一段分の処理。
+ * <p>
+ * {@link Pipeline}に連結すると、前段の結果を受け取り、同じスレッド上で続けて実行される。
+ * </p>
+ * @author ashigeru
+ * @param <A> 入力の型
+ * @param <B> 出力の型
+ */
+public interface Stage<A, B> {
+
+    /**
+     * 指定の入力に対して処理を実行し、その結果を返す。
+     * @param input 前段の結果
+     * @return この段の結果
+     * @throws Exception 処理に失敗した場合
+     */
+    B apply(A input) throws Exception;
+}
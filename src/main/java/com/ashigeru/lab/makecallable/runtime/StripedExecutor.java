@@ -0,0 +1,176 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * {@link Partitioned}を実装するタスクを、分割キーごとに固定された単一スレッドのレーンで実行する{@code ExecutorService}。
+ * <p>
+ * 同じ分割キーを持つタスクは常に同じレーンで投入された順に実行されるため、
+ * 起動対象のメソッドは分割キーごとの状態をロックなしで更新できる。
+ * {@link Partitioned}を実装しないタスクは、各レーンに順番に割り当てられる。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class StripedExecutor extends AbstractExecutorService {
+
+    private final ExecutorService[] lanes;
+
+    private final AtomicInteger roundRobin = new AtomicInteger();
+
+    /**
+     * インスタンスを生成する。
+     * @param laneCount レーンの数
+     * @param threadFactory レーンのスレッドを生成するファクトリ
+     * @throws IllegalArgumentException {@code laneCount}が正の値でない場合
+     */
+    public StripedExecutor(int laneCount, ThreadFactory threadFactory) {
+        if (laneCount <= 0) {
+            throw new IllegalArgumentException("laneCount must be positive"); //$NON-NLS-1$
+        }
+        if (threadFactory == null) {
+            throw new IllegalArgumentException("threadFactory is null"); //$NON-NLS-1$
+        }
+        this.lanes = new ExecutorService[laneCount];
+        for (int i = 0; i < laneCount; i++) {
+            lanes[i] = Executors.newSingleThreadExecutor(threadFactory);
+        }
+    }
+
+    /**
+     * レーンの数を返す。
+     * @return レーンの数
+     */
+    public int getLaneCount() {
+        return lanes.length;
+    }
+
+    /**
+     * 指定の分割キーを持つタスクを実行するレーンの番号を返す。
+     * @param partitionKey 分割キーのハッシュ値
+     * @return 対応するレーンの番号(0起算)
+     */
+    public int laneOf(int partitionKey) {
+        int h = partitionKey ^ (partitionKey >>> 16);
+        return (h & Integer.MAX_VALUE) % lanes.length;
+    }
+
+    public void execute(Runnable command) {
+        if (command == null) {
+            throw new IllegalArgumentException("command is null"); //$NON-NLS-1$
+        }
+        int lane;
+        if (command instanceof Partitioned) {
+            lane = laneOf(((Partitioned) command).partitionKey());
+        }
+        else {
+            lane = (roundRobin.getAndIncrement() & Integer.MAX_VALUE) % lanes.length;
+        }
+        lanes[lane].execute(command);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+        if (callable instanceof Partitioned) {
+            return new PartitionedTask<T>(callable, ((Partitioned) callable).partitionKey());
+        }
+        return super.newTaskFor(callable);
+    }
+
+    @Override
+    protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+        if (runnable instanceof Partitioned) {
+            return new PartitionedTask<T>(
+                Executors.callable(runnable, value),
+                ((Partitioned) runnable).partitionKey());
+        }
+        return super.newTaskFor(runnable, value);
+    }
+
+    public void shutdown() {
+        for (ExecutorService lane : lanes) {
+            lane.shutdown();
+        }
+    }
+
+    public List<Runnable> shutdownNow() {
+        List<Runnable> results = new ArrayList<Runnable>();
+        for (ExecutorService lane : lanes) {
+            results.addAll(lane.shutdownNow());
+        }
+        return results;
+    }
+
+    public boolean isShutdown() {
+        for (ExecutorService lane : lanes) {
+            if (lane.isShutdown() == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean isTerminated() {
+        for (ExecutorService lane : lanes) {
+            if (lane.isTerminated() == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        if (unit == null) {
+            throw new IllegalArgumentException("unit is null"); //$NON-NLS-1$
+        }
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        for (ExecutorService lane : lanes) {
+            long rest = deadline - System.nanoTime();
+            if (lane.awaitTermination(rest, TimeUnit.NANOSECONDS) == false) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class PartitionedTask<T> extends FutureTask<T> implements Partitioned {
+
+        private final int partitionKey;
+
+        PartitionedTask(Callable<T> callable, int partitionKey) {
+            super(callable);
+            this.partitionKey = partitionKey;
+        }
+
+        public int partitionKey() {
+            return partitionKey;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+/**
+ * {@link Publisher}が発行する要素を受け取る購読者。
+ * <p>
+ * 各メソッドは一つの購読に対して逐次的に起動される。
+ * </p>
+ * @author ashigeru
+ * @param <T> 受け取る要素の型
+ */
+public interface Subscriber<T> {
+
+    /**
+     * 購読が開始されたことを通知する。
+     * @param subscription 開始した購読
+     */
+    void onSubscribe(Subscription subscription);
+
+    /**
+     * 要素を一つ受け取る。
+     * @param item 受け取った要素
+     */
+    void onNext(T item);
+
+    /**
+     * 購読が異常終了したことを通知する。
+     * @param throwable 異常終了の原因
+     */
+    void onError(Throwable throwable);
+
+    /**
+     * すべての要素が発行され、購読が正常に終了したことを通知する。
+     */
+    void onComplete();
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+/**
+ * {@link Publisher}と{@link Subscriber}の間の一つの購読。
+ * @author ashigeru
+ */
+public interface Subscription {
+
+    /**
+     * 指定の個数の要素を追加で要求する。
+     * <p>
+     * 正の値でない個数を要求した場合、購読は{@link Subscriber#onError(Throwable)}で終了する。
+     * </p>
+     * @param n 追加で要求する要素の個数
+     */
+    void request(long n);
+
+    /**
+     * 購読を取り消す。以後、要素は発行されない。
+     */
+    void cancel();
+}
@@ -0,0 +1,592 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileFilter;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.RandomAccessFile;
+import java.io.Serializable;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+
+/**
+ * 直列化可能な{@code Callable}を記録する、追記専用のジャーナル。
+ * <p>
+ * ジャーナルは指定のディレクトリに置かれた固定長のセグメントファイルの列からなり、
+ * 各セグメントはメモリにマップされて追記される。
+ * 追記したタスクは{@link #complete(long)}が起動されるまで未完了として扱われ、
+ * 次回{@link #open(File, int)}した際に{@link #replay(ExecutorService)}で再投入できる。
+ * </p>
+ * <p>
+ * 追記はそれだけではディスクに同期されない。
+ * {@link #sync()}または{@link #appendAll(Collection)}を利用して、
+ * 複数の追記をまとめて同期すること。
+ * セグメントが一杯になった場合、そのセグメントを同期してから次のセグメントに切り替える。
+ * </p>
+ * <p>
+ * このクラスのメソッドはスレッド安全である。
+ * </p>
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class TaskJournal implements Closeable {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private static final byte TYPE_APPEND = 1;
+
+    private static final byte TYPE_COMPLETE = 2;
+
+    // type + id
+    private static final int BODY_HEADER_SIZE = 1 + 8;
+
+    // length + crc
+    private static final int FRAME_SIZE = 4 + 4;
+
+    private final File directory;
+
+    private final int segmentSize;
+
+    private final TreeMap<Long, Segment> segments = new TreeMap<Long, Segment>();
+
+    private final Map<Long, Segment> pending = new HashMap<Long, Segment>();
+
+    private final Map<Long, byte[]> recovered = new LinkedHashMap<Long, byte[]>();
+
+    private Segment current;
+
+    private MappedByteBuffer buffer;
+
+    private long nextId;
+
+    private boolean closed;
+
+    private TaskJournal(File directory, int segmentSize) {
+        assert directory != null;
+        assert segmentSize > 0;
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+    }
+
+    /**
+     * 指定のディレクトリにあるジャーナルを開く。
+     * <p>
+     * ディレクトリに既存のセグメントがあればそれらを読み込み、未完了のタスクを復元する。
+     * 最後のセグメントの末尾に書きかけのレコードがあった場合、そのレコードは破棄される。
+     * </p>
+     * @param directory ジャーナルを置くディレクトリ
+     * @param segmentSize 新しく作成するセグメントのバイト数
+     * @return 開いたジャーナル
+     * @throws IOException ジャーナルの読み込みに失敗した場合
+     * @throws IllegalArgumentException {@code segmentSize}が小さすぎる場合
+     */
+    public static TaskJournal open(File directory, int segmentSize) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory is null"); //$NON-NLS-1$
+        }
+        if (segmentSize < FRAME_SIZE + BODY_HEADER_SIZE) {
+            throw new IllegalArgumentException("segmentSize is too small"); //$NON-NLS-1$
+        }
+        if (directory.isDirectory() == false && directory.mkdirs() == false) {
+            throw new IOException(MessageFormat.format(
+                "Failed to create journal directory: {0}",
+                directory));
+        }
+        TaskJournal journal = new TaskJournal(directory, segmentSize);
+        journal.recover();
+        return journal;
+    }
+
+    /**
+     * 指定のタスクをジャーナルに追記し、そのタスクの識別子を返す。
+     * <p>
+     * このメソッドは追記した内容をディスクに同期しない。
+     * </p>
+     * @param task 追記するタスク、{@link Serializable}を実装していなければならない
+     * @return 追記したタスクの識別子
+     * @throws IOException 追記に失敗した場合
+     * @throws IllegalArgumentException タスクが直列化できない場合、またはセグメントに収まらない場合
+     */
+    public synchronized long append(Callable<?> task) throws IOException {
+        if (task == null) {
+            throw new IllegalArgumentException("task is null"); //$NON-NLS-1$
+        }
+        checkOpen();
+        long id = nextId++;
+        write(TYPE_APPEND, id, serialize(task));
+        pending.put(id, current);
+        current.pending++;
+        return id;
+    }
+
+    /**
+     * 指定のタスクをすべてジャーナルに追記し、最後に一度だけディスクに同期する。
+     * @param tasks 追記するタスクの一覧
+     * @return 追記したタスクの識別子の一覧 (引数の順序に対応する)
+     * @throws IOException 追記または同期に失敗した場合
+     * @throws IllegalArgumentException いずれかのタスクが直列化できない場合、またはセグメントに収まらない場合
+     */
+    public synchronized long[] appendAll(Collection<? extends Callable<?>> tasks) throws IOException {
+        if (tasks == null) {
+            throw new IllegalArgumentException("tasks is null"); //$NON-NLS-1$
+        }
+        long[] results = new long[tasks.size()];
+        int index = 0;
+        for (Callable<?> task : tasks) {
+            results[index++] = append(task);
+        }
+        sync();
+        return results;
+    }
+
+    /**
+     * 指定の識別子を持つタスクが完了したことをジャーナルに記録する。
+     * <p>
+     * このメソッドは記録した内容をディスクに同期しない。
+     * 同期される前に停止した場合、そのタスクは次回再投入される可能性がある。
+     * </p>
+     * @param id 完了したタスクの識別子
+     * @return 未完了のタスクを完了させた場合は{@code true}、
+     *     そのようなタスクが存在しない場合は{@code false}
+     * @throws IOException 記録に失敗した場合
+     */
+    public synchronized boolean complete(long id) throws IOException {
+        checkOpen();
+        Segment segment = pending.remove(id);
+        if (segment == null) {
+            return false;
+        }
+        segment.pending--;
+        recovered.remove(id);
+        write(TYPE_COMPLETE, id, new byte[0]);
+        return true;
+    }
+
+    /**
+     * これまでの追記をディスクに同期する。
+     */
+    public synchronized void sync() {
+        checkOpen();
+        buffer.force();
+    }
+
+    /**
+     * 未完了のタスクを含まないセグメントを、古いものから順に削除する。
+     * <p>
+     * 未完了のタスクを含むセグメントが見つかった時点で削除を打ち切る。
+     * 現在追記中のセグメントは削除しない。
+     * </p>
+     * @return 削除したセグメントの個数
+     * @throws IOException セグメントの削除に失敗した場合
+     */
+    public synchronized int compact() throws IOException {
+        checkOpen();
+        int count = 0;
+        for (Iterator<Segment> iter = segments.values().iterator(); iter.hasNext();) {
+            Segment segment = iter.next();
+            if (segment == current || segment.pending > 0) {
+                break;
+            }
+            if (segment.file.delete() == false) {
+                throw new IOException(MessageFormat.format(
+                    "Failed to delete journal segment: {0}",
+                    segment.file));
+            }
+            iter.remove();
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * 指定のタスクを、完了時にこのジャーナルへ完了を記録するタスクに変換する。
+     * <p>
+     * 返されるタスクは、元のタスクが例外をスローした場合にも完了を記録する。
+     * ただし、このジャーナルが既に閉じられていた場合には完了を記録せず、
+     * そのタスクは次回ジャーナルを開いた際に再投入される。
+     * </p>
+     * @param <T> タスクの結果の型
+     * @param id {@link #append(Callable)}が返したタスクの識別子
+     * @param task 対象のタスク
+     * @return 変換後のタスク
+     */
+    public <T> Callable<T> bind(final long id, final Callable<T> task) {
+        if (task == null) {
+            throw new IllegalArgumentException("task is null"); //$NON-NLS-1$
+        }
+        return new Callable<T>() {
+            public T call() throws Exception {
+                try {
+                    return task.call();
+                }
+                finally {
+                    completeIfOpen(id);
+                }
+            }
+        };
+    }
+
+    /**
+     * ジャーナルを開いた際に復元された未完了のタスクを、指定の{@code ExecutorService}に投入する。
+     * <p>
+     * 投入したタスクは{@link #bind(long, Callable)}によって変換されており、
+     * 実行を終えた時点で完了が記録される。
+     * 復元されたタスクは一度だけ投入され、二回目以降の起動では投入済みのタスクを投入しない。
+     * </p>
+     * <p>
+     * タスクの復元に失敗した場合や、投入が拒否された場合、
+     * まだ投入していないタスクは次回の起動で改めて投入される。
+     * </p>
+     * @param executor 投入先
+     * @return 投入したタスクの{@code Future}の一覧 (追記された順)
+     * @throws IOException タスクの復元に失敗した場合
+     * @throws RejectedExecutionException 投入先がタスクを受け付けなかった場合
+     */
+    public List<Future<?>> replay(ExecutorService executor) throws IOException {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor is null"); //$NON-NLS-1$
+        }
+        Map<Long, byte[]> entries;
+        synchronized (this) {
+            checkOpen();
+            entries = new LinkedHashMap<Long, byte[]>(recovered);
+        }
+        // 一部のタスクだけが失われないよう、投入を始める前にすべてのタスクを復元しておく
+        Map<Long, Callable<?>> tasks = new LinkedHashMap<Long, Callable<?>>();
+        for (Map.Entry<Long, byte[]> entry : entries.entrySet()) {
+            tasks.put(entry.getKey(), deserialize(entry.getValue()));
+        }
+        List<Future<?>> results = new ArrayList<Future<?>>(tasks.size());
+        for (Map.Entry<Long, Callable<?>> entry : tasks.entrySet()) {
+            Long id = entry.getKey();
+            byte[] payload;
+            synchronized (this) {
+                payload = recovered.remove(id);
+            }
+            if (payload == null) {
+                // 既に完了したか、他のスレッドが投入した
+                continue;
+            }
+            try {
+                results.add(executor.submit(bind(id, entry.getValue())));
+            }
+            catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    if (pending.containsKey(id)) {
+                        recovered.put(id, payload);
+                    }
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 未完了のタスクの個数を返す。
+     * @return 未完了のタスクの個数
+     */
+    public synchronized int getPendingCount() {
+        return pending.size();
+    }
+
+    /**
+     * 現在のセグメントの個数を返す。
+     * @return セグメントの個数
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    /**
+     * これまでの追記をディスクに同期し、このジャーナルを閉じる。
+     * <p>
+     * 追記中のセグメントのマッピングもこの時点で解放する。
+     * </p>
+     */
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        buffer.force();
+        unmap(buffer);
+        buffer = null;
+        closed = true;
+    }
+
+    private synchronized boolean completeIfOpen(long id) throws IOException {
+        if (closed) {
+            return false;
+        }
+        return complete(id);
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("journal is already closed"); //$NON-NLS-1$
+        }
+    }
+
+    private void write(byte type, long id, byte[] payload) throws IOException {
+        assert payload != null;
+        int length = BODY_HEADER_SIZE + payload.length;
+        if (length + FRAME_SIZE > segmentSize) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                "Task is too large for a journal segment ({0} > {1})",
+                length + FRAME_SIZE,
+                segmentSize));
+        }
+        if (buffer.remaining() < length + FRAME_SIZE) {
+            rollover();
+        }
+        byte[] body = new byte[length];
+        ByteBuffer.wrap(body).put(type).putLong(id).put(payload);
+        CRC32 crc = new CRC32();
+        crc.update(body);
+        buffer.putInt(length);
+        buffer.put(body);
+        buffer.putInt((int) crc.getValue());
+    }
+
+    private void rollover() throws IOException {
+        buffer.force();
+        long number = current == null ? 0 : current.number + 1;
+        Segment segment = new Segment(number, new File(directory, toFileName(number)));
+        MappedByteBuffer next = map(segment.file, segmentSize);
+        // 一杯になったセグメントには二度と書き込まないため、マッピングを解放して削除できるようにする
+        unmap(buffer);
+        buffer = next;
+        segments.put(number, segment);
+        current = segment;
+    }
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles(new FileFilter() {
+            public boolean accept(File file) {
+                return file.isFile() && toSegmentNumber(file.getName()) >= 0;
+            }
+        });
+        if (files == null) {
+            throw new IOException(MessageFormat.format(
+                "Failed to list journal directory: {0}",
+                directory));
+        }
+        for (File file : files) {
+            long number = toSegmentNumber(file.getName());
+            segments.put(number, new Segment(number, file));
+        }
+        for (Segment segment : segments.values()) {
+            MappedByteBuffer mapped = map(segment.file, (int) segment.file.length());
+            read(segment, mapped);
+            if (buffer != null) {
+                unmap(buffer);
+            }
+            current = segment;
+            buffer = mapped;
+        }
+        if (current == null) {
+            Segment segment = new Segment(0, new File(directory, toFileName(0)));
+            buffer = map(segment.file, segmentSize);
+            segments.put(segment.number, segment);
+            current = segment;
+        }
+        else {
+            // 書きかけのレコードの残骸を、後続の追記で誤って読まないように消去する
+            for (int i = buffer.position(), n = buffer.limit(); i < n; i++) {
+                buffer.put(i, (byte) 0);
+            }
+        }
+    }
+
+    private void read(Segment segment, ByteBuffer records) {
+        assert segment != null;
+        assert records != null;
+        CRC32 crc = new CRC32();
+        while (records.remaining() >= FRAME_SIZE + BODY_HEADER_SIZE) {
+            int start = records.position();
+            int length = records.getInt();
+            if (length < BODY_HEADER_SIZE || length + 4 > records.remaining()) {
+                records.position(start);
+                break;
+            }
+            byte[] body = new byte[length];
+            records.get(body);
+            crc.reset();
+            crc.update(body);
+            if (records.getInt() != (int) crc.getValue()) {
+                records.position(start);
+                break;
+            }
+            ByteBuffer view = ByteBuffer.wrap(body);
+            byte type = view.get();
+            long id = view.getLong();
+            nextId = Math.max(nextId, id + 1);
+            if (type == TYPE_APPEND) {
+                byte[] payload = new byte[view.remaining()];
+                view.get(payload);
+                pending.put(id, segment);
+                recovered.put(id, payload);
+                segment.pending++;
+            }
+            else if (type == TYPE_COMPLETE) {
+                Segment owner = pending.remove(id);
+                if (owner != null) {
+                    owner.pending--;
+                }
+                recovered.remove(id);
+            }
+        }
+    }
+
+    private static MappedByteBuffer map(File file, int size) throws IOException {
+        assert file != null;
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            // マップした領域はチャネルを閉じた後も有効である
+            FileChannel channel = raf.getChannel();
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+        }
+        finally {
+            raf.close();
+        }
+    }
+
+    private static void unmap(MappedByteBuffer mapped) {
+        assert mapped != null;
+        // マッピングを解放する公開APIは存在しないため、利用可能な内部APIを順に試す
+        try {
+            // Java 9以降
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            invokeCleaner.invoke(theUnsafe.get(null), mapped);
+            return;
+        }
+        catch (Exception e) {
+            // 次の方法を試す
+        }
+        try {
+            // Java 8以前
+            Method cleanerMethod = mapped.getClass().getMethod("cleaner");
+            cleanerMethod.setAccessible(true);
+            Object cleaner = cleanerMethod.invoke(mapped);
+            if (cleaner != null) {
+                cleaner.getClass().getMethod("clean").invoke(cleaner);
+            }
+        }
+        catch (Exception e) {
+            // 解放できない場合は、バッファがGCされた時点で解放される
+        }
+    }
+
+    private static byte[] serialize(Callable<?> task) throws IOException {
+        assert task != null;
+        if ((task instanceof Serializable) == false) {
+            throw new IllegalArgumentException(MessageFormat.format(
+                "Task must be serializable: {0}",
+                task.getClass().getName()));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ObjectOutputStream output = new ObjectOutputStream(bytes);
+        try {
+            output.writeObject(task);
+        }
+        finally {
+            output.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Callable<?> deserialize(byte[] payload) throws IOException {
+        assert payload != null;
+        ObjectInputStream input = new ObjectInputStream(new ByteArrayInputStream(payload));
+        try {
+            return (Callable<?>) input.readObject();
+        }
+        catch (ClassNotFoundException e) {
+            IOException exception = new IOException(MessageFormat.format(
+                "Failed to restore journaled task: {0}",
+                e.getMessage()));
+            exception.initCause(e);
+            throw exception;
+        }
+        finally {
+            input.close();
+        }
+    }
+
+    private static String toFileName(long number) {
+        return String.format("%s%016d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX);
+    }
+
+    private static long toSegmentNumber(String fileName) {
+        assert fileName != null;
+        if (fileName.startsWith(SEGMENT_PREFIX) == false || fileName.endsWith(SEGMENT_SUFFIX) == false) {
+            return -1;
+        }
+        String number = fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length());
+        try {
+            return Long.parseLong(number);
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private static class Segment {
+
+        final long number;
+
+        final File file;
+
+        int pending;
+
+        Segment(long number, File file) {
+            assert number >= 0;
+            assert file != null;
+            this.number = number;
+            this.file = file;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+/**
+ * タスクの負荷の種類。
+ * @author ashigeru
+ */
+public enum TaskKind {
+
+    /**
+     * 種類が指定されていない。
+     */
+    DEFAULT,
+
+    /**
+     * 主に計算資源を消費する。
+     */
+    CPU,
+
+    /**
+     * 主に入出力の完了を待ってブロックする。
+     */
+    BLOCKING_IO,
+
+    /**
+     * 応答時間を優先すべき短いタスク。
+     */
+    LATENCY_CRITICAL,
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.util.concurrent.Callable;
+
+/**
+ * 生成されたクラスを事前に読み込み、実行経路を温めておくためのユーティリティ。
+ * <p>
+ * 特別な指定がない限り、すべてのメソッドは{@code null}が渡された際に{@code IllegalArgumentException}をスローする。
+ * </p>
+ * @author ashigeru
+ */
+public class WarmUp {
+
+    /**
+     * インスタンス生成の禁止。
+     */
+    private WarmUp() {
+        throw new AssertionError();
+    }
+
+    /**
+     * 指定のクラスをすべて読み込み、初期化する。
+     * @param classes 対象のクラス一覧
+     */
+    public static void initialize(Class<?>... classes) {
+        if (classes == null) {
+            throw new IllegalArgumentException("classes is null"); //$NON-NLS-1$
+        }
+        for (Class<?> aClass : classes) {
+            if (aClass == null) {
+                throw new IllegalArgumentException("classes must not contain null"); //$NON-NLS-1$
+            }
+            try {
+                Class.forName(aClass.getName(), true, aClass.getClassLoader());
+            }
+            catch (ClassNotFoundException e) {
+                // 既に読み込まれたクラスなので、見つからないことはない
+                throw new AssertionError(e);
+            }
+        }
+    }
+
+    /**
+     * 指定のタスクを指定の回数だけ起動する。
+     * <p>
+     * 起動時にスローされた例外は無視される。
+     * </p>
+     * @param task 起動するタスク
+     * @param iterations 起動する回数
+     * @return 例外をスローせずに完了した回数
+     * @throws IllegalArgumentException {@code iterations}が負の値である場合
+     */
+    public static int invoke(Callable<?> task, int iterations) {
+        if (task == null) {
+            throw new IllegalArgumentException("task is null"); //$NON-NLS-1$
+        }
+        if (iterations < 0) {
+            throw new IllegalArgumentException("iterations must not be negative"); //$NON-NLS-1$
+        }
+        int succeeded = 0;
+        for (int i = 0; i < iterations; i++) {
+            try {
+                task.call();
+                succeeded++;
+            }
+            catch (Exception e) {
+                // 暖機のための合成された起動なので、失敗は無視する
+                continue;
+            }
+        }
+        return succeeded;
+    }
+}
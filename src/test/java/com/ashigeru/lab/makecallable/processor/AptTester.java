@@ -0,0 +1,192 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.processor;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * テスト用の入力に対して{@code apt}から注釈プロセッサを起動する。
+ * <p>
+ * 入力はクラスパス上の{@value #FIXTURE_ROOT}以下にあるすべてのソースファイルで、
+ * 注釈の定義もここに含まれる。
+ * </p>
+ * @author ashigeru
+ */
+final class AptTester {
+
+    /**
+     * 入力となるソースファイルを配置したリソースのパス。
+     */
+    static final String FIXTURE_ROOT = "apt";
+
+    /**
+     * インスタンス生成の禁止。
+     */
+    private AptTester() {
+        throw new AssertionError();
+    }
+
+    /**
+     * 注釈プロセッサを起動し、ソースファイルを出力する。
+     * @param output ソースファイルの出力先
+     * @param options {@code apt}に追加で渡すオプションの一覧
+     * @return {@code apt}の終了コード
+     * @throws IOException 入力を読み出せなかった場合
+     */
+    static int process(File output, String... options) throws IOException {
+        return process(output, listSources(getResource(FIXTURE_ROOT)), options);
+    }
+
+    /**
+     * 指定のソースファイルに対して注釈プロセッサを起動し、ソースファイルを出力する。
+     * <p>
+     * 注釈の定義は、{@value #FIXTURE_ROOT}以下から参照する。
+     * </p>
+     * @param output ソースファイルの出力先
+     * @param sources 処理対象のソースファイルの一覧
+     * @param options {@code apt}に追加で渡すオプションの一覧
+     * @return {@code apt}の終了コード
+     * @throws IOException 入力を読み出せなかった場合
+     */
+    static int process(File output, List<File> sources, String... options) throws IOException {
+        List<String> arguments = new ArrayList<String>();
+        arguments.add("-nocompile");
+        arguments.add("-encoding");
+        arguments.add("UTF-8");
+        arguments.add("-s");
+        arguments.add(output.getPath());
+        arguments.add("-d");
+        arguments.add(output.getPath());
+        arguments.add("-classpath");
+        arguments.add(System.getProperty("java.class.path"));
+        arguments.add("-sourcepath");
+        arguments.add(getResource(FIXTURE_ROOT).getPath());
+        arguments.addAll(Arrays.asList(options));
+        for (File source : sources) {
+            arguments.add(source.getPath());
+        }
+        return com.sun.tools.apt.Main.process(
+            new MakeCallableProcessorFactory(),
+            arguments.toArray(new String[arguments.size()]));
+    }
+
+    /**
+     * 指定のディレクトリ以下にあるソースファイルの内容を、ディレクトリからの相対パスの順に返す。
+     * @param directory 対象のディレクトリ
+     * @return 相対パスとファイルの内容の対応表
+     * @throws IOException ファイルを読み出せなかった場合
+     */
+    static SortedMap<String, byte[]> readSources(File directory) throws IOException {
+        SortedMap<String, byte[]> results = new TreeMap<String, byte[]>();
+        for (Map.Entry<String, File> entry : collect(directory, ".java").entrySet()) {
+            results.put(entry.getKey(), read(entry.getValue()));
+        }
+        return results;
+    }
+
+    /**
+     * 指定のディレクトリ以下にあるソースファイルを、ディレクトリからの相対パスの順に返す。
+     * @param directory 対象のディレクトリ
+     * @return ソースファイルの一覧
+     */
+    static List<File> listSources(File directory) {
+        return new ArrayList<File>(collect(directory, ".java").values());
+    }
+
+    /**
+     * 指定のファイルの内容を返す。
+     * @param file 対象のファイル
+     * @return ファイルの内容
+     * @throws IOException ファイルを読み出せなかった場合
+     */
+    static byte[] read(File file) throws IOException {
+        InputStream in = new FileInputStream(file);
+        try {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            byte[] bytes = new byte[1024];
+            while (true) {
+                int read = in.read(bytes);
+                if (read < 0) {
+                    break;
+                }
+                buffer.write(bytes, 0, read);
+            }
+            return buffer.toByteArray();
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    /**
+     * クラスパス上の指定のパスにあるリソースをファイルとして返す。
+     * @param path リソースのパス
+     * @return 対応するファイル
+     * @throws IllegalStateException リソースが存在しない場合
+     */
+    static File getResource(String path) {
+        URL url = AptTester.class.getClassLoader().getResource(path);
+        if (url == null) {
+            throw new IllegalStateException(path);
+        }
+        try {
+            return new File(url.toURI());
+        }
+        catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static SortedMap<String, File> collect(File directory, String suffix) {
+        assert directory != null;
+        assert suffix != null;
+        SortedMap<String, File> results = new TreeMap<String, File>();
+        collect(directory, "", suffix, results);
+        return results;
+    }
+
+    private static void collect(File directory, String prefix, String suffix, SortedMap<String, File> results) {
+        assert directory != null;
+        assert prefix != null;
+        assert suffix != null;
+        assert results != null;
+        File[] children = directory.listFiles();
+        if (children == null) {
+            return;
+        }
+        for (File child : children) {
+            String path = prefix + child.getName();
+            if (child.isDirectory()) {
+                collect(child, path + "/", suffix, results);
+            }
+            else if (child.getName().endsWith(suffix)) {
+                results.put(path, child);
+            }
+        }
+    }
+}
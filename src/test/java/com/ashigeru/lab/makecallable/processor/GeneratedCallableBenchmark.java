@@ -0,0 +1,439 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.reflect.Method;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * 注釈プロセッサが生成した{@code Callable}の作成と起動の性能を、手書きの実装と比較する。
+ * <p>
+ * テスト用の入力に対して注釈プロセッサを起動し、生成されたソースファイルを
+ * クラスパス上の{@value #DRIVER_ROOT}以下にある比較用のクラスとともにコンパイルする。
+ * その後、対象のメソッドの種類ごとに、生成されたクラス、匿名クラス、リフレクションのそれぞれで
+ * {@code Callable}を作成して起動し、以下の方法で計測した結果を表示する。
+ * </p>
+ * <ul>
+ * <li> 一つのスレッドから直接起動する </li>
+ * <li> 複数のスレッドから同時に直接起動する </li>
+ * <li> {@code ExecutorService}に投入して結果を待つ </li>
+ * <li> {@code ForkJoinPool}に投入して結果を待つ </li>
+ * </ul>
+ * <p>
+ * また、{@code -Aimmutable}を指定して生成したクラスについても同様に計測し、{@code immutable/}を前置した名前で表示する。
+ * </p>
+ * <p>
+ * 直接起動する場合の待ち時間は{@value #BATCH}回の起動ごとに計測した平均値の分布であり、
+ * 一回あたりの確保バイト数はスレッドごとの確保量を計測できる実行環境でのみ表示される。
+ * {@code ForkJoinPool}はJava SE 7で追加されたため、リフレクションを経由して生成し、
+ * 存在しない実行環境では計測を省略する。
+ * </p>
+ * @author ashigeru
+ */
+public final class GeneratedCallableBenchmark {
+
+    /**
+     * 比較用のクラスのソースファイルを配置したリソースのパス。
+     */
+    static final String DRIVER_ROOT = "benchmark";
+
+    private static final String DRIVER_CLASS = "sample.BasicDriver";
+
+    private static final String GENERATED_SUFFIX = "/generated";
+
+    private static final String IMMUTABLE_PREFIX = "immutable/";
+
+    private static final int BATCH = 64;
+
+    private static final int MAX_SAMPLES = 1 << 20;
+
+    private static final Method ALLOCATED_BYTES = findAllocatedBytes();
+
+    static volatile int sink;
+
+    private GeneratedCallableBenchmark() {
+        throw new AssertionError();
+    }
+
+    /**
+     * ベンチマークを実行する。
+     * @param args プログラム引数
+     * @throws Exception ベンチマークの実行に失敗した場合
+     */
+    public static void main(String[] args) throws Exception {
+        int seconds = 1;
+        int threads = Runtime.getRuntime().availableProcessors();
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String arg = args[i];
+            int value = Integer.parseInt(args[i + 1]);
+            if (arg.equals("-seconds")) {
+                seconds = value;
+            }
+            else if (arg.equals("-threads")) {
+                threads = value;
+            }
+            else {
+                System.err.println(MessageFormat.format(
+                    "Usage: java {0} [-seconds <n>] [-threads <n>]",
+                    GeneratedCallableBenchmark.class.getName()));
+                System.exit(1);
+                return;
+            }
+        }
+        long duration = TimeUnit.SECONDS.toNanos(seconds);
+        File work = createDirectory();
+        try {
+            Map<String, Callable<Callable<?>>> factories = new LinkedHashMap<String, Callable<Callable<?>>>();
+            factories.putAll(prepare(new File(work, "default")));
+            // 不変モードで変わるのは生成されたクラスのみのため、それ以外は計測しない
+            for (Map.Entry<String, Callable<Callable<?>>> entry
+                    : prepare(new File(work, "immutable"), "-Aimmutable").entrySet()) {
+                if (entry.getKey().endsWith(GENERATED_SUFFIX)) {
+                    factories.put(IMMUTABLE_PREFIX + entry.getKey(), entry.getValue());
+                }
+            }
+            ExecutorService executor = Executors.newFixedThreadPool(threads);
+            ExecutorService forkJoinPool = createForkJoinPool(threads);
+            try {
+                for (Map.Entry<String, Callable<Callable<?>>> entry : factories.entrySet()) {
+                    String name = entry.getKey();
+                    Callable<Callable<?>> factory = entry.getValue();
+                    // 一回目はJITの暖機として扱い、二回目を計測する
+                    runDirect(factory, duration);
+                    report(name, "direct", runDirect(factory, duration));
+                    runContended(factory, duration, threads);
+                    report(name, MessageFormat.format("contended x{0}", threads),
+                        runContended(factory, duration, threads));
+                    runExecutor(executor, factory, duration);
+                    report(name, "executor", runExecutor(executor, factory, duration));
+                    if (forkJoinPool != null) {
+                        runExecutor(forkJoinPool, factory, duration);
+                        report(name, "fork-join", runExecutor(forkJoinPool, factory, duration));
+                    }
+                }
+            }
+            finally {
+                executor.shutdownNow();
+                if (forkJoinPool != null) {
+                    forkJoinPool.shutdownNow();
+                }
+            }
+        }
+        finally {
+            delete(work);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Callable<Callable<?>>> prepare(File work, String... aptOptions) throws Exception {
+        assert work != null;
+        assert aptOptions != null;
+        File sources = new File(work, "sources");
+        File classes = new File(work, "classes");
+        if (sources.mkdirs() == false || classes.mkdirs() == false) {
+            throw new IOException(MessageFormat.format(
+                "Failed to create working directories: {0}",
+                work));
+        }
+        if (AptTester.process(sources, aptOptions) != 0) {
+            throw new IllegalStateException("annotation processing failed");
+        }
+        List<File> files = AptTester.listSources(AptTester.getResource(AptTester.FIXTURE_ROOT));
+        files.addAll(AptTester.listSources(sources));
+        files.addAll(AptTester.listSources(AptTester.getResource(DRIVER_ROOT)));
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("Java compiler is not available (JDK is required)");
+        }
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, Charset.forName("UTF-8"));
+        try {
+            List<String> options = Arrays.asList(
+                "-nowarn",
+                "-encoding", "UTF-8",
+                "-d", classes.getPath(),
+                "-classpath", System.getProperty("java.class.path"));
+            Boolean succeed = compiler.getTask(
+                null, fileManager, null, options, null, fileManager.getJavaFileObjectsFromFiles(files)).call();
+            if (succeed == null || succeed.booleanValue() == false) {
+                throw new IllegalStateException("Failed to compile generated sources");
+            }
+        }
+        finally {
+            fileManager.close();
+        }
+        ClassLoader loader = new URLClassLoader(
+            new URL[] { classes.toURI().toURL() },
+            GeneratedCallableBenchmark.class.getClassLoader());
+        Method factories = loader.loadClass(DRIVER_CLASS).getMethod("factories");
+        return (Map<String, Callable<Callable<?>>>) factories.invoke(null);
+    }
+
+    private static ExecutorService createForkJoinPool(int threads) throws Exception {
+        Class<?> type;
+        try {
+            type = Class.forName("java.util.concurrent.ForkJoinPool");
+        }
+        catch (ClassNotFoundException e) {
+            return null;
+        }
+        return (ExecutorService) type.getConstructor(int.class).newInstance(threads);
+    }
+
+    private static Result runDirect(Callable<Callable<?>> factory, long duration) throws Exception {
+        assert factory != null;
+        Result result = new Result();
+        measure(factory, duration, result);
+        return result;
+    }
+
+    private static Result runContended(
+            final Callable<Callable<?>> factory,
+            final long duration,
+            int threads) throws Exception {
+        assert factory != null;
+        final Result result = new Result();
+        final CountDownLatch start = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(threads);
+        final Exception[] failure = new Exception[1];
+        for (int i = 0; i < threads; i++) {
+            Thread thread = new Thread(new Runnable() {
+                public void run() {
+                    try {
+                        start.await();
+                        measure(factory, duration, result);
+                    }
+                    catch (Exception e) {
+                        synchronized (failure) {
+                            failure[0] = e;
+                        }
+                    }
+                    finally {
+                        done.countDown();
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+        start.countDown();
+        done.await();
+        synchronized (failure) {
+            if (failure[0] != null) {
+                throw failure[0];
+            }
+        }
+        return result;
+    }
+
+    private static Result runExecutor(
+            ExecutorService executor,
+            Callable<Callable<?>> factory,
+            long duration) throws Exception {
+        assert executor != null;
+        assert factory != null;
+        Result result = new Result();
+        long start = System.nanoTime();
+        long end = start + duration;
+        long operations = 0;
+        int hash = 0;
+        long[] samples = new long[MAX_SAMPLES];
+        int sampleCount = 0;
+        while (true) {
+            long opStart = System.nanoTime();
+            if (opStart >= end) {
+                break;
+            }
+            Future<?> future = executor.submit(factory.call());
+            hash += hash(future.get());
+            if (sampleCount < samples.length) {
+                samples[sampleCount++] = System.nanoTime() - opStart;
+            }
+            operations++;
+        }
+        sink += hash;
+        // 実行するスレッドが異なるため、確保バイト数は計測しない
+        result.add(operations, System.nanoTime() - start, samples, sampleCount, -1L);
+        return result;
+    }
+
+    private static void measure(Callable<Callable<?>> factory, long duration, Result result) throws Exception {
+        assert factory != null;
+        assert result != null;
+        long[] samples = new long[MAX_SAMPLES];
+        int sampleCount = 0;
+        long operations = 0;
+        int hash = 0;
+        long allocatedStart = allocatedBytes();
+        long start = System.nanoTime();
+        long end = start + duration;
+        while (true) {
+            long batchStart = System.nanoTime();
+            if (batchStart >= end) {
+                break;
+            }
+            for (int i = 0; i < BATCH; i++) {
+                hash += hash(factory.call().call());
+            }
+            if (sampleCount < samples.length) {
+                samples[sampleCount++] = (System.nanoTime() - batchStart) / BATCH;
+            }
+            operations += BATCH;
+        }
+        long elapsed = System.nanoTime() - start;
+        long allocatedEnd = allocatedBytes();
+        sink += hash;
+        long allocated = allocatedStart < 0 || allocatedEnd < 0 ? -1L : allocatedEnd - allocatedStart;
+        result.add(operations, elapsed, samples, sampleCount, allocated);
+    }
+
+    private static int hash(Object value) {
+        return value == null ? 0 : value.hashCode();
+    }
+
+    private static Method findAllocatedBytes() {
+        try {
+            // スレッドごとの確保量は、一部の実行環境が独自に提供している
+            Class<?> type = Class.forName("com.sun.management.ThreadMXBean");
+            if (type.isInstance(ManagementFactory.getThreadMXBean()) == false) {
+                return null;
+            }
+            return type.getMethod("getThreadAllocatedBytes", long.class);
+        }
+        catch (Exception e) {
+            return null;
+        }
+    }
+
+    private static long allocatedBytes() {
+        if (ALLOCATED_BYTES == null) {
+            return -1L;
+        }
+        try {
+            Object value = ALLOCATED_BYTES.invoke(
+                ManagementFactory.getThreadMXBean(),
+                Thread.currentThread().getId());
+            return ((Long) value).longValue();
+        }
+        catch (Exception e) {
+            return -1L;
+        }
+    }
+
+    private static void report(String name, String mode, Result result) {
+        assert name != null;
+        assert mode != null;
+        assert result != null;
+        System.out.println(MessageFormat.format(
+            "{0} {1}: {2,number,0} ops/s, p50={3}ns, p99={4}ns, p99.9={5}ns, {6} bytes/op",
+            name,
+            mode,
+            result.getThroughput(),
+            result.getPercentile(0.50),
+            result.getPercentile(0.99),
+            result.getPercentile(0.999),
+            result.getBytesPerOperation()));
+    }
+
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("benchmark", "");
+        if (directory.delete() == false || directory.mkdir() == false) {
+            throw new IOException(MessageFormat.format(
+                "Failed to create a temporary directory: {0}",
+                directory));
+        }
+        return directory;
+    }
+
+    private static void delete(File file) {
+        assert file != null;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    private static final class Result {
+
+        private long operations;
+
+        private long elapsedNanos;
+
+        private long allocatedBytes;
+
+        private boolean allocationKnown = true;
+
+        private long[] samples = new long[0];
+
+        synchronized void add(long newOperations, long elapsed, long[] newSamples, int count, long allocated) {
+            operations += newOperations;
+            elapsedNanos = Math.max(elapsedNanos, elapsed);
+            if (allocated < 0) {
+                allocationKnown = false;
+            }
+            else {
+                allocatedBytes += allocated;
+            }
+            long[] merged = new long[samples.length + count];
+            System.arraycopy(samples, 0, merged, 0, samples.length);
+            System.arraycopy(newSamples, 0, merged, samples.length, count);
+            samples = merged;
+        }
+
+        synchronized double getThroughput() {
+            return elapsedNanos == 0 ? 0.0 : operations * 1e9 / elapsedNanos;
+        }
+
+        synchronized long getPercentile(double ratio) {
+            if (samples.length == 0) {
+                return 0L;
+            }
+            long[] sorted = samples.clone();
+            Arrays.sort(sorted);
+            int index = (int) Math.min(sorted.length - 1, Math.ceil(sorted.length * ratio) - 1);
+            return sorted[Math.max(0, index)];
+        }
+
+        synchronized String getBytesPerOperation() {
+            if (allocationKnown == false || operations == 0) {
+                return "-";
+            }
+            return MessageFormat.format("{0,number,0.0}", (double) allocatedBytes / operations);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.processor;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test for {@link GenerationDaemon}.
+ * @author ashigeru
+ */
+public class GenerationDaemonTest {
+
+    /**
+     * 一時フォルダ。
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 追加または変更されたソースファイルのみを検出する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void scan() throws Exception {
+        File source = folder.newFolder("source");
+        copyFixtures(source);
+        GenerationDaemon daemon = new GenerationDaemon(
+            Collections.singletonList(source),
+            folder.newFolder("output"),
+            options(),
+            null);
+
+        assertThat(daemon.scan(), is(AptTester.listSources(source)));
+        assertThat(daemon.generate(daemon.getSources(), log()), is(0));
+        assertThat(daemon.scan().isEmpty(), is(true));
+
+        File basic = new File(source, "sample/Basic.java");
+        touch(basic);
+        assertThat(daemon.scan(), is(Arrays.asList(basic)));
+        assertThat(daemon.generate(Arrays.asList(basic), log()), is(0));
+        assertThat(daemon.scan().isEmpty(), is(true));
+
+        File added = new File(source, "sample/Added.java");
+        write(added, "package sample;\npublic class Added {\n}\n");
+        assertThat(daemon.scan(), is(Arrays.asList(added)));
+    }
+
+    /**
+     * 変更されたソースファイルに対応するソースファイルのみを生成し直す。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void generate() throws Exception {
+        File source = folder.newFolder("source");
+        copyFixtures(source);
+        File output = folder.newFolder("output");
+        GenerationDaemon daemon = new GenerationDaemon(
+            Collections.singletonList(source),
+            output,
+            options(),
+            null);
+        assertThat(daemon.generate(daemon.scan(), log()), is(0));
+
+        File basic = new File(output, "sample/BasicCallables.java");
+        File scheduled = new File(output, "sample/ScheduledTasks.java");
+        assertThat(basic.isFile(), is(true));
+        assertThat(scheduled.isFile(), is(true));
+        byte[] contents = AptTester.read(basic);
+        assertThat(basic.delete(), is(true));
+        assertThat(scheduled.delete(), is(true));
+
+        touch(new File(source, "sample/Basic.java"));
+        assertThat(daemon.generate(daemon.scan(), log()), is(0));
+        assertThat(basic.isFile(), is(true));
+        assertThat(scheduled.exists(), is(false));
+        assertThat(AptTester.read(basic), is(contents));
+    }
+
+    /**
+     * 生成に失敗したソースファイルは、生成に成功するまで変更されたものとして扱う。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void retry() throws Exception {
+        File source = folder.newFolder("source");
+        copyFixtures(source);
+        GenerationDaemon daemon = new GenerationDaemon(
+            Collections.singletonList(source),
+            folder.newFolder("output"),
+            options(),
+            null);
+        assertThat(daemon.generate(daemon.scan(), log()), is(0));
+
+        File broken = new File(source, "sample/Broken.java");
+        write(broken, "package sample;\npublic class Broken {\n");
+        List<File> changed = daemon.scan();
+        assertThat(changed, is(Arrays.asList(broken)));
+        assertThat(daemon.generate(changed, log()), is(not(0)));
+        assertThat(daemon.scan(), is(Arrays.asList(broken)));
+
+        write(broken, "package sample;\npublic class Broken {\n}\n");
+        changed = daemon.scan();
+        assertThat(changed, is(Arrays.asList(broken)));
+        assertThat(daemon.generate(changed, log()), is(0));
+        assertThat(daemon.scan().isEmpty(), is(true));
+    }
+
+    private static List<String> options() {
+        return Arrays.asList("-encoding", "UTF-8");
+    }
+
+    private static PrintWriter log() {
+        return new PrintWriter(new StringWriter());
+    }
+
+    private static void copyFixtures(File directory) throws IOException {
+        assert directory != null;
+        File root = AptTester.getResource(AptTester.FIXTURE_ROOT);
+        for (Map.Entry<String, byte[]> entry : AptTester.readSources(root).entrySet()) {
+            write(new File(directory, entry.getKey()), entry.getValue());
+        }
+    }
+
+    private static void touch(File file) {
+        assert file != null;
+        // ファイルシステムによっては更新時刻の精度が粗いため、明示的に進める
+        assertThat(file.setLastModified(file.lastModified() + 10000), is(true));
+    }
+
+    private static void write(File file, String contents) throws IOException {
+        assert file != null;
+        assert contents != null;
+        write(file, contents.getBytes("UTF-8"));
+        touch(file);
+    }
+
+    private static void write(File file, byte[] contents) throws IOException {
+        assert file != null;
+        assert contents != null;
+        file.getParentFile().mkdirs();
+        OutputStream out = new FileOutputStream(file);
+        try {
+            out.write(contents);
+        }
+        finally {
+            out.close();
+        }
+    }
+}
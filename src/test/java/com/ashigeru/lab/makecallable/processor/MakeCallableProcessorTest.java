@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.processor;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test for {@link MakeCallableProcessor}.
+ * @author ashigeru
+ */
+public class MakeCallableProcessorTest {
+
+    /**
+     * 生成されるソースファイルの期待値を配置したリソースのパス。
+     */
+    static final String GOLDEN_ROOT = "golden";
+
+    /**
+     * 不変モードで生成されるソースファイルの期待値を配置したリソースのパス。
+     */
+    static final String IMMUTABLE_GOLDEN_ROOT = "golden-immutable";
+
+    /**
+     * 一時フォルダ。
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * 同じ入力に対して二度実行した結果が、バイト単位で一致する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void deterministic() throws Exception {
+        File first = folder.newFolder("first");
+        File second = folder.newFolder("second");
+        assertThat(AptTester.process(first), is(0));
+        assertThat(AptTester.process(second), is(0));
+
+        SortedMap<String, byte[]> firstSources = AptTester.readSources(first);
+        SortedMap<String, byte[]> secondSources = AptTester.readSources(second);
+        assertThat(firstSources.isEmpty(), is(false));
+        assertThat(secondSources.keySet(), is(firstSources.keySet()));
+        for (Map.Entry<String, byte[]> entry : firstSources.entrySet()) {
+            assertThat(entry.getKey(), secondSources.get(entry.getKey()), is(entry.getValue()));
+        }
+    }
+
+    /**
+     * {@code -Aprofile=<file>}を指定した場合、処理時間の記録をファイルに追記する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void profile() throws Exception {
+        File output = folder.newFolder("output");
+        File profile = new File(folder.getRoot(), "profile.tsv");
+        assertThat(AptTester.process(output, "-Aprofile=" + profile.getPath()), is(0));
+        assertThat(profile.isFile(), is(true));
+
+        List<String> lines = Arrays.asList(new String(AptTester.read(profile), "UTF-8").split("\\r?\\n"));
+        assertThat(lines.get(0), startsWith("sample.Basic\t"));
+        assertThat(lines.get(1), startsWith("sample.Scheduled\t"));
+        assertThat(lines.get(2), startsWith("*\t"));
+    }
+
+    /**
+     * 生成されるソースファイルが、記録済みの内容と一致する。
+     * <p>
+     * 記録済みの内容は{@value #GOLDEN_ROOT}以下に配置しており、改行文字の違いは無視する。
+     * </p>
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void golden() throws Exception {
+        assertGolden(GOLDEN_ROOT);
+    }
+
+    /**
+     * {@code -Aimmutable}を指定した場合に生成されるソースファイルが、記録済みの内容と一致する。
+     * <p>
+     * 記録済みの内容は{@value #IMMUTABLE_GOLDEN_ROOT}以下に配置しており、改行文字の違いは無視する。
+     * </p>
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void goldenImmutable() throws Exception {
+        assertGolden(IMMUTABLE_GOLDEN_ROOT, "-Aimmutable");
+    }
+
+    private void assertGolden(String goldenRoot, String... options) throws IOException {
+        assert goldenRoot != null;
+        assert options != null;
+        File output = folder.newFolder("output");
+        assertThat(AptTester.process(output, options), is(0));
+
+        SortedMap<String, byte[]> actual = AptTester.readSources(output);
+        SortedMap<String, byte[]> expected = AptTester.readSources(AptTester.getResource(goldenRoot));
+        assertThat(actual.keySet(), is(expected.keySet()));
+        for (Map.Entry<String, byte[]> entry : expected.entrySet()) {
+            assertThat(entry.getKey(),
+                toText(actual.get(entry.getKey())),
+                is(toText(entry.getValue())));
+        }
+    }
+
+    private static String toText(byte[] contents) throws IOException {
+        return new String(contents, "UTF-8").replace("\r\n", "\n");
+    }
+}
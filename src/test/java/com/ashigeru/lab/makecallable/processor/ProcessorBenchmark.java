@@ -0,0 +1,297 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.processor;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.nio.charset.Charset;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+
+/**
+ * 合成したソースファイルに対して注釈プロセッサを起動し、生成の全体にかかる時間を計測する。
+ * <p>
+ * {@link SyntheticCorpus}で生成したソースファイルに対して{@link AptTester}から注釈プロセッサを起動し、
+ * 次の項目をミリ秒単位で計測して表示する。
+ * </p>
+ * <ul>
+ * <li> {@code wall} - 注釈プロセッサの起動から終了までの時間 </li>
+ * <li> {@code processor} - {@code -Aprofile}に記録された、モデルの構築とソースプログラムの生成に要した時間の合計 </li>
+ * <li> {@code compile} - 生成されたソースファイルのコンパイルに要した時間 </li>
+ * </ul>
+ * <p>
+ * {@code -output}を指定した場合は計測結果を{@code key=value}の形式でファイルに書き出し、
+ * {@code -baseline}を指定した場合は同じ形式で書き出された過去の結果と比較する。
+ * いずれかの項目が基準の値から{@code -tolerance}で指定した割合(百分率)を超えて遅くなった場合、終了コード{@code 1}で終了する。
+ * </p>
+ * @author ashigeru
+ */
+public final class ProcessorBenchmark {
+
+    private static final String WALL = "wall";
+
+    private static final String PROCESSOR = "processor";
+
+    private static final String COMPILE = "compile";
+
+    private static final String TOTAL_ENTRY = "*\t";
+
+    private ProcessorBenchmark() {
+        throw new AssertionError();
+    }
+
+    /**
+     * ベンチマークを実行する。
+     * @param args プログラム引数
+     * @throws Exception ベンチマークの実行に失敗した場合
+     */
+    public static void main(String[] args) throws Exception {
+        int containers = 500;
+        int methods = 10;
+        int depth = 2;
+        int parameters = 3;
+        int tolerance = 20;
+        File output = null;
+        File baseline = null;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String arg = args[i];
+            String value = args[i + 1];
+            if (arg.equals("-containers")) {
+                containers = Integer.parseInt(value);
+            }
+            else if (arg.equals("-methods")) {
+                methods = Integer.parseInt(value);
+            }
+            else if (arg.equals("-depth")) {
+                depth = Integer.parseInt(value);
+            }
+            else if (arg.equals("-parameters")) {
+                parameters = Integer.parseInt(value);
+            }
+            else if (arg.equals("-tolerance")) {
+                tolerance = Integer.parseInt(value);
+            }
+            else if (arg.equals("-output")) {
+                output = new File(value);
+            }
+            else if (arg.equals("-baseline")) {
+                baseline = new File(value);
+            }
+            else {
+                System.err.println(MessageFormat.format(
+                    "Usage: java {0} [-containers <n>] [-methods <n>] [-depth <n>] [-parameters <n>] "
+                    + "[-output <file>] [-baseline <file>] [-tolerance <percent>]",
+                    ProcessorBenchmark.class.getName()));
+                System.exit(1);
+                return;
+            }
+        }
+        SyntheticCorpus corpus = new SyntheticCorpus(containers, methods, depth, parameters);
+        File work = createDirectory();
+        Map<String, Long> results;
+        try {
+            List<File> sources = corpus.generate(new File(work, "corpus"));
+            // 一回目はJITの暖機として扱い、二回目を計測する
+            run(sources, new File(work, "warmup"));
+            results = run(sources, new File(work, "measure"));
+        }
+        finally {
+            delete(work);
+        }
+        System.out.println(MessageFormat.format(
+            "{0} containers x {1} methods (depth={2}, parameters={3}): "
+            + "wall={4}ms, processor={5}ms, compile={6}ms",
+            containers,
+            methods,
+            depth,
+            parameters,
+            String.valueOf(results.get(WALL)),
+            String.valueOf(results.get(PROCESSOR)),
+            String.valueOf(results.get(COMPILE))));
+        if (output != null) {
+            write(output, results);
+        }
+        if (baseline != null && compare(results, read(baseline), tolerance) == false) {
+            System.exit(1);
+        }
+    }
+
+    private static Map<String, Long> run(List<File> sources, File work) throws Exception {
+        assert sources != null;
+        assert work != null;
+        File generated = new File(work, "generated");
+        File corpusClasses = new File(work, "corpus-classes");
+        File generatedClasses = new File(work, "generated-classes");
+        if (generated.mkdirs() == false || corpusClasses.mkdirs() == false || generatedClasses.mkdirs() == false) {
+            throw new IOException(MessageFormat.format(
+                "Failed to create working directories: {0}",
+                work));
+        }
+        File profile = new File(work, "profile.tsv");
+        long start = System.nanoTime();
+        if (AptTester.process(generated, sources, "-Aprofile=" + profile.getPath()) != 0) {
+            throw new IllegalStateException("annotation processing failed");
+        }
+        long wall = System.nanoTime() - start;
+
+        // 生成されたソースファイルのみを計測の対象とするため、元のソースファイルは先にコンパイルしておく
+        List<File> annotations = AptTester.listSources(AptTester.getResource(AptTester.FIXTURE_ROOT));
+        List<File> originals = new ArrayList<File>(sources);
+        originals.addAll(annotations);
+        compile(originals, corpusClasses, System.getProperty("java.class.path"));
+        start = System.nanoTime();
+        compile(
+            AptTester.listSources(generated),
+            generatedClasses,
+            corpusClasses.getPath() + File.pathSeparator + System.getProperty("java.class.path"));
+        long compile = System.nanoTime() - start;
+
+        Map<String, Long> results = new LinkedHashMap<String, Long>();
+        results.put(WALL, TimeUnit.NANOSECONDS.toMillis(wall));
+        results.put(PROCESSOR, TimeUnit.NANOSECONDS.toMillis(readProcessorNanos(profile)));
+        results.put(COMPILE, TimeUnit.NANOSECONDS.toMillis(compile));
+        return results;
+    }
+
+    private static void compile(List<File> files, File destination, String classpath) throws IOException {
+        assert files != null;
+        assert destination != null;
+        assert classpath != null;
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IllegalStateException("Java compiler is not available (JDK is required)");
+        }
+        StandardJavaFileManager fileManager = compiler.getStandardFileManager(null, null, Charset.forName("UTF-8"));
+        try {
+            List<String> options = Arrays.asList(
+                "-nowarn",
+                "-proc:none",
+                "-encoding", "UTF-8",
+                "-d", destination.getPath(),
+                "-classpath", classpath);
+            Boolean succeed = compiler.getTask(
+                null, fileManager, null, options, null, fileManager.getJavaFileObjectsFromFiles(files)).call();
+            if (succeed == null || succeed.booleanValue() == false) {
+                throw new IllegalStateException("Failed to compile sources");
+            }
+        }
+        finally {
+            fileManager.close();
+        }
+    }
+
+    private static long readProcessorNanos(File profile) throws IOException {
+        assert profile != null;
+        // 最後の行が、すべてのコンテナに対する合計となる
+        String[] lines = new String(AptTester.read(profile), "UTF-8").split("\\r?\\n");
+        for (int i = lines.length - 1; i >= 0; i--) {
+            if (lines[i].startsWith(TOTAL_ENTRY)) {
+                String[] fields = lines[i].split("\t");
+                return Long.parseLong(fields[2]) + Long.parseLong(fields[3]);
+            }
+        }
+        throw new IllegalStateException(MessageFormat.format(
+            "Profile does not contain the total entry: {0}",
+            profile));
+    }
+
+    private static boolean compare(Map<String, Long> results, Properties baseline, int tolerance) {
+        assert results != null;
+        assert baseline != null;
+        boolean succeed = true;
+        for (Map.Entry<String, Long> entry : results.entrySet()) {
+            String value = baseline.getProperty(entry.getKey());
+            if (value == null) {
+                continue;
+            }
+            long expected = Long.parseLong(value.trim());
+            long limit = expected + expected * tolerance / 100;
+            if (entry.getValue() > limit) {
+                System.out.println(MessageFormat.format(
+                    "Regression: {0}={1}ms exceeds baseline {2}ms (+{3}%)",
+                    entry.getKey(),
+                    String.valueOf(entry.getValue()),
+                    String.valueOf(expected),
+                    tolerance));
+                succeed = false;
+            }
+        }
+        return succeed;
+    }
+
+    private static void write(File file, Map<String, Long> results) throws IOException {
+        assert file != null;
+        assert results != null;
+        PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            for (Map.Entry<String, Long> entry : results.entrySet()) {
+                out.printf("%s=%d%n", entry.getKey(), entry.getValue());
+            }
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static Properties read(File file) throws IOException {
+        assert file != null;
+        Properties properties = new Properties();
+        InputStream in = new FileInputStream(file);
+        try {
+            properties.load(in);
+        }
+        finally {
+            in.close();
+        }
+        return properties;
+    }
+
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("benchmark", "");
+        if (directory.delete() == false || directory.mkdir() == false) {
+            throw new IOException(MessageFormat.format(
+                "Failed to create a temporary directory: {0}",
+                directory));
+        }
+        return directory;
+    }
+
+    private static void delete(File file) {
+        assert file != null;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
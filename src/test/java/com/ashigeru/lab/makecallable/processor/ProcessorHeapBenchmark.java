@@ -0,0 +1,177 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.processor;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.text.MessageFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 合成したソースファイルに対して注釈プロセッサを起動し、その間のヒープの使用量を計測する。
+ * <p>
+ * {@link SyntheticCorpus}で生成したソースファイル(既定では{@code 5000}個のコンテナ)に対して
+ * {@link AptTester}から注釈プロセッサを起動し、次の値を表示する。
+ * </p>
+ * <ul>
+ * <li> {@code before} - 起動の直前にGCを行った後のヒープの使用量 </li>
+ * <li> {@code peak} - 起動している間に観測したヒープの使用量の最大値 </li>
+ * <li> {@code after} - 終了の直後にGCを行った後のヒープの使用量 </li>
+ * </ul>
+ * <p>
+ * ヒープの使用量は別のスレッドから{@value #SAMPLING_INTERVAL}ミリ秒ごとに取得するため、
+ * 最大値はその間隔より短い時間の変動を含まない。
+ * また、{@code apt}自身がソースファイルを解析した結果も使用量に含まれる。
+ * </p>
+ * @author ashigeru
+ */
+public final class ProcessorHeapBenchmark {
+
+    private static final long SAMPLING_INTERVAL = 5;
+
+    private static final long MEGABYTE = 1024 * 1024;
+
+    private ProcessorHeapBenchmark() {
+        throw new AssertionError();
+    }
+
+    /**
+     * ベンチマークを実行する。
+     * @param args プログラム引数
+     * @throws Exception ベンチマークの実行に失敗した場合
+     */
+    public static void main(String[] args) throws Exception {
+        int containers = 5000;
+        int methods = 5;
+        int depth = 2;
+        int parameters = 3;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String arg = args[i];
+            int value = Integer.parseInt(args[i + 1]);
+            if (arg.equals("-containers")) {
+                containers = value;
+            }
+            else if (arg.equals("-methods")) {
+                methods = value;
+            }
+            else if (arg.equals("-depth")) {
+                depth = value;
+            }
+            else if (arg.equals("-parameters")) {
+                parameters = value;
+            }
+            else {
+                System.err.println(MessageFormat.format(
+                    "Usage: java {0} [-containers <n>] [-methods <n>] [-depth <n>] [-parameters <n>]",
+                    ProcessorHeapBenchmark.class.getName()));
+                System.exit(1);
+                return;
+            }
+        }
+        SyntheticCorpus corpus = new SyntheticCorpus(containers, methods, depth, parameters);
+        File work = createDirectory();
+        try {
+            List<File> sources = corpus.generate(new File(work, "corpus"));
+            // 一回目はクラスの読み込みやJITの暖機として扱い、二回目を計測する
+            run(sources, new File(work, "warmup"));
+            long[] usage = run(sources, new File(work, "measure"));
+            System.out.println(MessageFormat.format(
+                "{0} containers x {1} methods (depth={2}, parameters={3}): "
+                + "before={4}MB, peak={5}MB (+{6}MB), after={7}MB",
+                containers,
+                methods,
+                depth,
+                parameters,
+                String.valueOf(usage[0] / MEGABYTE),
+                String.valueOf(usage[1] / MEGABYTE),
+                String.valueOf((usage[1] - usage[0]) / MEGABYTE),
+                String.valueOf(usage[2] / MEGABYTE)));
+        }
+        finally {
+            delete(work);
+        }
+    }
+
+    private static long[] run(List<File> sources, File output) throws Exception {
+        assert sources != null;
+        assert output != null;
+        if (output.mkdirs() == false) {
+            throw new IOException(MessageFormat.format(
+                "Failed to create working directories: {0}",
+                output));
+        }
+        final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        memory.gc();
+        long before = memory.getHeapMemoryUsage().getUsed();
+        final AtomicLong peak = new AtomicLong(before);
+        final AtomicBoolean running = new AtomicBoolean(true);
+        Thread sampler = new Thread(new Runnable() {
+            public void run() {
+                while (running.get()) {
+                    long used = memory.getHeapMemoryUsage().getUsed();
+                    if (used > peak.get()) {
+                        peak.set(used);
+                    }
+                    try {
+                        Thread.sleep(SAMPLING_INTERVAL);
+                    }
+                    catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+        });
+        sampler.setDaemon(true);
+        sampler.start();
+        try {
+            if (AptTester.process(output, sources) != 0) {
+                throw new IllegalStateException("annotation processing failed");
+            }
+        }
+        finally {
+            running.set(false);
+            sampler.join();
+        }
+        memory.gc();
+        long after = memory.getHeapMemoryUsage().getUsed();
+        return new long[] { before, peak.get(), after };
+    }
+
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("benchmark", "");
+        if (directory.delete() == false || directory.mkdir() == false) {
+            throw new IOException(MessageFormat.format(
+                "Failed to create a temporary directory: {0}",
+                directory));
+        }
+        return directory;
+    }
+
+    private static void delete(File file) {
+        assert file != null;
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.processor;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 注釈プロセッサの計測に利用する、合成したソースファイルの集合。
+ * <p>
+ * パッケージ{@value #PACKAGE_NAME}に、指定の数のコンテナを一つずつソースファイルとして生成する。
+ * 各コンテナは指定の数の対象メソッドを持ち、偶数番目はインスタンスメソッド、奇数番目は静的メソッドとなる。
+ * 対象メソッドは指定の数の引数を持ち、引数の型は{@code int}, {@code String}, および
+ * 指定の深さまで{@code List}を入れ子にした型の順に繰り返す。
+ * 入れ子の深さが{@code 1}以上の場合、コンテナは型引数を持ち、インスタンスメソッドの入れ子の型の最も内側はその型引数となる。
+ * </p>
+ * @author ashigeru
+ */
+final class SyntheticCorpus {
+
+    /**
+     * 生成するコンテナのパッケージ名。
+     */
+    static final String PACKAGE_NAME = "synthetic";
+
+    private static final String ANNOTATION = "com.ashigeru.lab.makecallable.MakeCallable";
+
+    private final int containers;
+
+    private final int methods;
+
+    private final int genericDepth;
+
+    private final int parameters;
+
+    /**
+     * インスタンスを生成する。
+     * @param containers コンテナの数
+     * @param methods コンテナごとの対象メソッドの数
+     * @param genericDepth 引数と戻り値の型に{@code List}を入れ子にする深さ
+     * @param parameters 対象メソッドごとの引数の数
+     * @throws IllegalArgumentException 引数に負の値が含まれる場合、またはコンテナやメソッドの数が正の値でない場合
+     */
+    SyntheticCorpus(int containers, int methods, int genericDepth, int parameters) {
+        if (containers <= 0) {
+            throw new IllegalArgumentException("containers must be positive"); //$NON-NLS-1$
+        }
+        if (methods <= 0) {
+            throw new IllegalArgumentException("methods must be positive"); //$NON-NLS-1$
+        }
+        if (genericDepth < 0) {
+            throw new IllegalArgumentException("genericDepth must not be negative"); //$NON-NLS-1$
+        }
+        if (parameters < 0) {
+            throw new IllegalArgumentException("parameters must not be negative"); //$NON-NLS-1$
+        }
+        this.containers = containers;
+        this.methods = methods;
+        this.genericDepth = genericDepth;
+        this.parameters = parameters;
+    }
+
+    /**
+     * ソースファイルを指定のディレクトリ以下に生成する。
+     * @param directory 出力先のディレクトリ
+     * @return 生成したソースファイルの一覧
+     * @throws IOException 出力に失敗した場合
+     */
+    List<File> generate(File directory) throws IOException {
+        if (directory == null) {
+            throw new IllegalArgumentException("directory is null"); //$NON-NLS-1$
+        }
+        File packageDirectory = new File(directory, PACKAGE_NAME.replace('.', File.separatorChar));
+        if (packageDirectory.isDirectory() == false && packageDirectory.mkdirs() == false) {
+            throw new IOException(packageDirectory.getPath());
+        }
+        List<File> results = new ArrayList<File>();
+        for (int i = 0; i < containers; i++) {
+            String name = String.format("Container%05d", i);
+            File file = new File(packageDirectory, name + ".java");
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+            try {
+                emitContainer(out, name);
+            }
+            finally {
+                out.close();
+            }
+            results.add(file);
+        }
+        return results;
+    }
+
+    private void emitContainer(PrintWriter out, String name) {
+        assert out != null;
+        assert name != null;
+        out.printf("package %s;%n", PACKAGE_NAME);
+        out.println();
+        if (genericDepth > 0) {
+            out.println("import java.util.List;");
+        }
+        out.printf("import %s;%n", ANNOTATION);
+        out.println();
+        out.printf("public class %s%s {%n", name, genericDepth > 0 ? "<E extends Comparable<E>>" : "");
+        for (int i = 0; i < methods; i++) {
+            emitMethod(out, i, i % 2 != 0);
+        }
+        out.println("}");
+    }
+
+    private void emitMethod(PrintWriter out, int index, boolean isStatic) {
+        assert out != null;
+        String nested = nestedType(isStatic ? "String" : "E");
+        StringBuilder parameterList = new StringBuilder();
+        for (int i = 0; i < parameters; i++) {
+            if (i > 0) {
+                parameterList.append(", ");
+            }
+            switch (i % 3) {
+            case 0:
+                parameterList.append("int");
+                break;
+            case 1:
+                parameterList.append("String");
+                break;
+            default:
+                parameterList.append(nested);
+                break;
+            }
+            parameterList.append(" p").append(i);
+        }
+        out.println("    @MakeCallable");
+        out.printf("    public %s%s method%d(%s) {%n",
+            isStatic ? "static " : "",
+            nested,
+            index,
+            parameterList);
+        out.println("        return null;");
+        out.println("    }");
+    }
+
+    private String nestedType(String element) {
+        assert element != null;
+        if (genericDepth == 0) {
+            return "String";
+        }
+        StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < genericDepth; i++) {
+            buf.append("List<");
+        }
+        buf.append(element);
+        for (int i = 0; i < genericDepth; i++) {
+            buf.append('>');
+        }
+        return buf.toString();
+    }
+}
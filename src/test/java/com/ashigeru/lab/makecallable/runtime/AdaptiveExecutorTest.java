@@ -0,0 +1,187 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test for {@link AdaptiveExecutor}.
+ * @author ashigeru
+ */
+public class AdaptiveExecutorTest {
+
+    private AdaptiveExecutor executor;
+
+    /**
+     * テストの情報を破棄する。
+     * @throws Exception 破棄に失敗した場合
+     */
+    @After
+    public void tearDown() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * ブロックの多いタスクを処理能力を超える到着率で投入すると、スレッド数が増えて滞留が解消される。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void simulate() throws Exception {
+        executor = new AdaptiveExecutor(1, 64, 8, 100, TimeUnit.MILLISECONDS, Executors.defaultThreadFactory());
+
+        // 10msのタスクを毎秒500個投入する: 少なくとも5スレッド必要
+        List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        long start = System.nanoTime();
+        for (int tick = 0; tick < 150; tick++) {
+            for (int i = 0; i < 5; i++) {
+                futures.add(executor.submit(new Sleep(10)));
+            }
+            sleepUntil(start + TimeUnit.MILLISECONDS.toNanos(10) * (tick + 1));
+        }
+        AdaptiveStatistics statistics = find(Sleep.class);
+        assertThat(statistics.toString(), statistics.getPoolSize(), greaterThanOrEqualTo(5));
+        assertThat(statistics.getAdjustmentCount(), greaterThan(0L));
+        assertThat(statistics.getArrivalRate(), greaterThan(100.0));
+        for (Future<Void> future : futures) {
+            future.get(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 種類ごとのスレッドプールの数が上限に達すると、共有のスレッドプールが利用される。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void maxLanes() throws Exception {
+        executor = new AdaptiveExecutor(1, 4, 1, 100, TimeUnit.MILLISECONDS, Executors.defaultThreadFactory());
+        assertThat(executor.submit(new Sleep(1)).get(10, TimeUnit.SECONDS), is(nullValue()));
+        assertThat(executor.submit(new Value("a")).get(10, TimeUnit.SECONDS), is("a"));
+        assertThat(executor.submit(new Value("b")).get(10, TimeUnit.SECONDS), is("b"));
+
+        List<Class<?>> types = new ArrayList<Class<?>>();
+        for (AdaptiveStatistics statistics : executor.getStatistics()) {
+            types.add(statistics.getTaskType());
+        }
+        assertThat(types.size(), is(2));
+        assertThat(types.contains(Sleep.class), is(true));
+        assertThat(types.contains(Object.class), is(true));
+    }
+
+    /**
+     * 一定期間タスクが投入されなかった種類のスレッドプールは破棄され、再投入時に作り直される。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void retire() throws Exception {
+        executor = new AdaptiveExecutor(1, 4, 8, 20, TimeUnit.MILLISECONDS, Executors.defaultThreadFactory());
+        assertThat(executor.submit(new Value("a")).get(10, TimeUnit.SECONDS), is("a"));
+        assertThat(executor.getStatistics().size(), is(1));
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (executor.getStatistics().isEmpty() == false) {
+            assertThat(System.nanoTime(), lessThan(deadline));
+            Thread.sleep(20);
+        }
+        assertThat(executor.submit(new Value("b")).get(10, TimeUnit.SECONDS), is("b"));
+        assertThat(executor.getStatistics().size(), is(1));
+    }
+
+    /**
+     * CPU時間の計測が無効な場合は有効にせず、CPUを利用していた割合も計測しない。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void cpuTimeDisabled() throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads.isThreadCpuTimeSupported() == false) {
+            return;
+        }
+        boolean enabled = threads.isThreadCpuTimeEnabled();
+        threads.setThreadCpuTimeEnabled(false);
+        try {
+            executor = new AdaptiveExecutor(1, 4, 8, 20, TimeUnit.MILLISECONDS, Executors.defaultThreadFactory());
+            assertThat(threads.isThreadCpuTimeEnabled(), is(false));
+            for (int i = 0; i < 10; i++) {
+                executor.submit(new Sleep(10)).get(10, TimeUnit.SECONDS);
+            }
+            Thread.sleep(100);
+            assertThat(find(Sleep.class).getBlockingRatio(), is(Double.NaN));
+            assertThat(threads.isThreadCpuTimeEnabled(), is(false));
+        }
+        finally {
+            threads.setThreadCpuTimeEnabled(enabled);
+        }
+    }
+
+    private AdaptiveStatistics find(Class<?> type) {
+        for (AdaptiveStatistics statistics : executor.getStatistics()) {
+            if (statistics.getTaskType() == type) {
+                return statistics;
+            }
+        }
+        throw new AssertionError(type);
+    }
+
+    private static void sleepUntil(long deadline) throws InterruptedException {
+        long rest = deadline - System.nanoTime();
+        if (rest > 0) {
+            TimeUnit.NANOSECONDS.sleep(rest);
+        }
+    }
+
+    private static final class Sleep implements Callable<Void> {
+
+        private final long millis;
+
+        Sleep(long millis) {
+            this.millis = millis;
+        }
+
+        public Void call() throws InterruptedException {
+            Thread.sleep(millis);
+            return null;
+        }
+    }
+
+    private static final class Value implements Callable<String> {
+
+        private final String value;
+
+        Value(String value) {
+            this.value = value;
+        }
+
+        public String call() {
+            return value;
+        }
+    }
+}
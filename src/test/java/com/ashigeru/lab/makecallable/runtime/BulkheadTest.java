@@ -0,0 +1,128 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link Bulkhead}.
+ * @author ashigeru
+ */
+public class BulkheadTest {
+
+    /**
+     * 上限に達すると即座に拒否し、返却後は再び許可する。
+     */
+    @Test
+    public void rejecting() {
+        Bulkhead bulkhead = Bulkhead.rejecting(2);
+        bulkhead.acquire();
+        bulkhead.acquire();
+        assertThat(bulkhead.getAvailablePermits(), is(0));
+        try {
+            bulkhead.acquire();
+            fail();
+        }
+        catch (RejectedExecutionException e) {
+            // ok.
+        }
+        assertThat(bulkhead.getRejectedCount(), is(1L));
+
+        bulkhead.release();
+        bulkhead.acquire();
+        assertThat(bulkhead.getRejectedCount(), is(1L));
+        assertThat(bulkhead.getTotalWaitTime(TimeUnit.NANOSECONDS), is(0L));
+    }
+
+    /**
+     * 上限に達すると許可が返却されるまで待機する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void waiting() throws Exception {
+        final Bulkhead bulkhead = Bulkhead.waiting(1, 0, TimeUnit.SECONDS);
+        bulkhead.acquire();
+        final CountDownLatch acquired = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                bulkhead.acquire();
+                acquired.countDown();
+            }
+        });
+        thread.start();
+        assertThat(acquired.await(100, TimeUnit.MILLISECONDS), is(false));
+
+        bulkhead.release();
+        assertThat(acquired.await(10, TimeUnit.SECONDS), is(true));
+        thread.join();
+        assertThat(bulkhead.getRejectedCount(), is(0L));
+        assertThat(bulkhead.getTotalWaitTime(TimeUnit.MILLISECONDS), greaterThanOrEqualTo(50L));
+    }
+
+    /**
+     * 指定の時間内に許可を取得できない場合は拒否する。
+     */
+    @Test
+    public void waiting_timeout() {
+        Bulkhead bulkhead = Bulkhead.waiting(1, 50, TimeUnit.MILLISECONDS);
+        bulkhead.acquire();
+        long start = System.nanoTime();
+        try {
+            bulkhead.acquire();
+            fail();
+        }
+        catch (RejectedExecutionException e) {
+            // ok.
+        }
+        assertThat(System.nanoTime() - start, greaterThanOrEqualTo(TimeUnit.MILLISECONDS.toNanos(40)));
+        assertThat(bulkhead.getRejectedCount(), is(1L));
+    }
+
+    /**
+     * 待機中に割り込まれた場合は、割り込み状態を復元して拒否する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void waiting_interrupted() throws Exception {
+        final Bulkhead bulkhead = Bulkhead.waiting(1, 0, TimeUnit.SECONDS);
+        bulkhead.acquire();
+        final AtomicBoolean interrupted = new AtomicBoolean();
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    bulkhead.acquire();
+                }
+                catch (RejectedExecutionException e) {
+                    interrupted.set(Thread.currentThread().isInterrupted());
+                }
+            }
+        });
+        thread.start();
+        thread.interrupt();
+        thread.join(10000);
+        assertThat(interrupted.get(), is(true));
+        assertThat(bulkhead.getRejectedCount(), is(1L));
+        assertThat(bulkhead.getAvailablePermits(), is(0));
+    }
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link ByteBoundedQueue}.
+ * @author ashigeru
+ */
+public class ByteBoundedQueueTest {
+
+    /**
+     * 要素の大きさの合計が容量を超える追加は拒否される。
+     */
+    @Test
+    public void offer() {
+        ByteBoundedQueue<Object> queue = new ByteBoundedQueue<Object>(100, 10);
+        assertThat(queue.offer(new Chunk("a", 60)), is(true));
+        assertThat(queue.offer(new Chunk("b", 50)), is(false));
+        assertThat(queue.offer("c"), is(true));
+        assertThat(queue.getBytes(), is(70L));
+        assertThat(queue.remainingCapacity(), is(30));
+        assertThat(queue.size(), is(2));
+
+        assertThat(queue.poll(), is((Object) new Chunk("a", 60)));
+        assertThat(queue.getBytes(), is(10L));
+        assertThat(queue.offer(new Chunk("b", 50)), is(true));
+        assertThat(queue.peek(), is((Object) "c"));
+    }
+
+    /**
+     * 空のキューには、容量を超える大きさの要素を一つだけ追加できる。
+     */
+    @Test
+    public void offer_oversized() {
+        ByteBoundedQueue<Object> queue = new ByteBoundedQueue<Object>(100, 10);
+        assertThat(queue.offer(new Chunk("a", 1000)), is(true));
+        assertThat(queue.offer("b"), is(false));
+        assertThat(queue.remainingCapacity(), is(0));
+        assertThat(queue.poll(), is((Object) new Chunk("a", 1000)));
+        assertThat(queue.getBytes(), is(0L));
+    }
+
+    /**
+     * 負の推定値は{@code 0}として扱う。
+     */
+    @Test
+    public void sizeOf() {
+        ByteBoundedQueue<Object> queue = new ByteBoundedQueue<Object>(100, 10);
+        assertThat(queue.sizeOf("a"), is(10L));
+        assertThat(queue.sizeOf(new Chunk("a", 20)), is(20L));
+        assertThat(queue.sizeOf(new Chunk("a", -1)), is(0L));
+    }
+
+    /**
+     * 容量が空くまで追加を待機する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void put() throws Exception {
+        final ByteBoundedQueue<Object> queue = new ByteBoundedQueue<Object>(100, 10);
+        queue.put(new Chunk("a", 80));
+        final CountDownLatch added = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            public void run() {
+                try {
+                    queue.put(new Chunk("b", 80));
+                    added.countDown();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        thread.start();
+        assertThat(added.await(100, TimeUnit.MILLISECONDS), is(false));
+        assertThat(queue.offer(new Chunk("c", 80), 10, TimeUnit.MILLISECONDS), is(false));
+
+        assertThat(queue.take(), is((Object) new Chunk("a", 80)));
+        assertThat(added.await(10, TimeUnit.SECONDS), is(true));
+        thread.join();
+        assertThat(queue.poll(10, TimeUnit.SECONDS), is((Object) new Chunk("b", 80)));
+        assertThat(queue.poll(10, TimeUnit.MILLISECONDS), is(nullValue()));
+    }
+
+    /**
+     * 取り出した要素の大きさを差し引く。
+     */
+    @Test
+    public void drainTo() {
+        ByteBoundedQueue<Object> queue = new ByteBoundedQueue<Object>(100, 10);
+        queue.offer("a");
+        queue.offer("b");
+        queue.offer(new Chunk("c", 30));
+        List<Object> results = new ArrayList<Object>();
+        assertThat(queue.drainTo(results, 2), is(2));
+        assertThat(results, is(Arrays.asList((Object) "a", "b")));
+        assertThat(queue.getBytes(), is(30L));
+        assertThat(queue.drainTo(results), is(1));
+        assertThat(queue.getBytes(), is(0L));
+        assertThat(queue.isEmpty(), is(true));
+    }
+
+    /**
+     * 要素を削除すると、その大きさを差し引く。
+     */
+    @Test
+    public void remove() {
+        ByteBoundedQueue<Object> queue = new ByteBoundedQueue<Object>(100, 10);
+        queue.offer("a");
+        queue.offer(new Chunk("b", 30));
+        queue.offer("c");
+        assertThat(queue.remove(new Chunk("b", 30)), is(true));
+        assertThat(queue.remove("x"), is(false));
+        assertThat(queue.getBytes(), is(20L));
+
+        Iterator<Object> iter = queue.iterator();
+        assertThat(iter.next(), is((Object) "a"));
+        iter.remove();
+        assertThat(queue.getBytes(), is(10L));
+        assertThat(queue.peek(), is((Object) "c"));
+    }
+
+    private static final class Chunk implements Sized {
+
+        private final String name;
+
+        private final long size;
+
+        Chunk(String name, long size) {
+            this.name = name;
+            this.size = size;
+        }
+
+        public long estimatedSize() {
+            return size;
+        }
+
+        @Override
+        public int hashCode() {
+            return name.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (obj == null || getClass() != obj.getClass()) {
+                return false;
+            }
+            Chunk other = (Chunk) obj;
+            return name.equals(other.name) && size == other.size;
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link FlatteningFuture}.
+ * @author ashigeru
+ */
+public class FlatteningFutureTest {
+
+    /**
+     * 内側の結果を直接返す。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void get() throws Exception {
+        FutureTask<String> inner = task("hello");
+        FutureTask<Future<String>> outer = task((Future<String>) inner);
+        Future<String> future = FlatteningFuture.flatten(outer);
+        assertThat(future.isDone(), is(false));
+
+        outer.run();
+        assertThat(future.isDone(), is(false));
+        inner.run();
+        assertThat(future.isDone(), is(true));
+        assertThat(future.get(), is("hello"));
+        assertThat(future.get(1, TimeUnit.SECONDS), is("hello"));
+    }
+
+    /**
+     * 外側の結果が{@code null}であった場合は失敗する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void get_null() throws Exception {
+        FutureTask<Future<String>> outer = task((Future<String>) null);
+        outer.run();
+        Future<String> future = FlatteningFuture.flatten(outer);
+        assertThat(future.isDone(), is(true));
+        try {
+            future.get();
+            fail();
+        }
+        catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(NullPointerException.class));
+        }
+    }
+
+    /**
+     * 外側と内側の待機時間の合計が指定の時間を超えないようにする。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void get_timeout() throws Exception {
+        FutureTask<String> inner = task("hello");
+        FutureTask<Future<String>> outer = task((Future<String>) inner);
+        outer.run();
+        Future<String> future = FlatteningFuture.flatten(outer);
+        long start = System.nanoTime();
+        try {
+            future.get(50, TimeUnit.MILLISECONDS);
+            fail();
+        }
+        catch (TimeoutException e) {
+            // ok.
+        }
+        assertThat(System.nanoTime() - start, lessThan(TimeUnit.SECONDS.toNanos(5)));
+    }
+
+    /**
+     * 外側がまだ完了していなければ、外側のみを取り消す。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void cancel_outer() throws Exception {
+        FutureTask<String> inner = task("hello");
+        FutureTask<Future<String>> outer = task((Future<String>) inner);
+        Future<String> future = FlatteningFuture.flatten(outer);
+        assertThat(future.cancel(false), is(true));
+        assertThat(future.isCancelled(), is(true));
+        assertThat(future.isDone(), is(true));
+        assertThat(outer.isCancelled(), is(true));
+        assertThat(inner.isCancelled(), is(false));
+    }
+
+    /**
+     * 外側が完了していれば、内側を取り消す。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void cancel_inner() throws Exception {
+        FutureTask<String> inner = task("hello");
+        FutureTask<Future<String>> outer = task((Future<String>) inner);
+        outer.run();
+        Future<String> future = FlatteningFuture.flatten(outer);
+        assertThat(future.cancel(false), is(true));
+        assertThat(future.isCancelled(), is(true));
+        assertThat(inner.isCancelled(), is(true));
+        assertThat(outer.isCancelled(), is(false));
+    }
+
+    private static <T> FutureTask<T> task(final T value) {
+        return new FutureTask<T>(new Callable<T>() {
+            public T call() {
+                return value;
+            }
+        });
+    }
+}
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link HedgedInvoker}.
+ * @author ashigeru
+ */
+public class HedgedInvokerTest {
+
+    private ExecutorService executor;
+
+    /**
+     * テストを初期化する。
+     */
+    @Before
+    public void setUp() {
+        executor = Executors.newFixedThreadPool(4);
+    }
+
+    /**
+     * テストの情報を破棄する。
+     * @throws Exception 破棄に失敗した場合
+     */
+    @After
+    public void tearDown() throws Exception {
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 待機時間内に完了した場合は二つ目の起動を行わない。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void invoke_fast() throws Exception {
+        LatencyTarget target = new LatencyTarget(0, 1);
+        String result = HedgedInvoker.invoke(executor, target, 1, TimeUnit.SECONDS);
+        assertThat(result, is("OK"));
+        assertThat(target.getInvocationCount(), is(1));
+    }
+
+    /**
+     * 待機時間内に完了しない場合は二つ目の起動を行い、先に完了した方の結果を返す。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void invoke_hedged() throws Exception {
+        // 一度目の起動だけが遅い
+        LatencyTarget target = new LatencyTarget(Integer.MAX_VALUE, 1);
+        long start = System.nanoTime();
+        String result = HedgedInvoker.invoke(executor, target, 10, TimeUnit.MILLISECONDS);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertThat(result, is("OK"));
+        assertThat(target.getInvocationCount(), is(2));
+        assertThat(elapsed, lessThan(LatencyTarget.SLOW_MILLIS));
+    }
+
+    /**
+     * 先に完了した起動が失敗した場合は残りの起動を待つ。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void invoke_firstFailed() throws Exception {
+        final AtomicInteger count = new AtomicInteger();
+        Callable<String> task = new Callable<String>() {
+            public String call() throws Exception {
+                if (count.getAndIncrement() == 0) {
+                    Thread.sleep(50);
+                    throw new IllegalStateException();
+                }
+                Thread.sleep(100);
+                return "OK";
+            }
+        };
+        String result = HedgedInvoker.invoke(executor, task, 10, TimeUnit.MILLISECONDS);
+        assertThat(result, is("OK"));
+    }
+
+    /**
+     * すべての起動が失敗した場合は例外をスローする。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test(expected = ExecutionException.class)
+    public void invoke_failed() throws Exception {
+        Callable<String> task = new Callable<String>() {
+            public String call() throws Exception {
+                Thread.sleep(20);
+                throw new IllegalStateException();
+            }
+        };
+        HedgedInvoker.invoke(executor, task, 1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 負の待機時間は指定できない。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void invoke_negativeDelay() throws Exception {
+        HedgedInvoker.invoke(executor, new LatencyTarget(0, 1), -1, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 遅延を注入したシミュレーションで、ヘッジ起動によってp99が改善することを確認する。
+     * <p>
+     * 起動のおよそ5%が遅くなる対象に対し、ヘッジ起動の有無でp99と起動回数を比較する。
+     * </p>
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void simulate() throws Exception {
+        int requests = 200;
+
+        LatencyTarget plain = new LatencyTarget(20, 1);
+        long[] plainLatencies = new long[requests];
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            executor.submit(plain).get();
+            plainLatencies[i] = System.nanoTime() - start;
+        }
+
+        LatencyTarget hedged = new LatencyTarget(20, 1);
+        long[] hedgedLatencies = new long[requests];
+        for (int i = 0; i < requests; i++) {
+            long start = System.nanoTime();
+            HedgedInvoker.invoke(executor, hedged, 10, TimeUnit.MILLISECONDS);
+            hedgedLatencies[i] = System.nanoTime() - start;
+        }
+
+        long plainP99 = TimeUnit.NANOSECONDS.toMillis(percentile(plainLatencies, 0.99));
+        long hedgedP99 = TimeUnit.NANOSECONDS.toMillis(percentile(hedgedLatencies, 0.99));
+        double extraLoad = (double) hedged.getInvocationCount() / requests - 1.0;
+        assertThat(plainP99, greaterThanOrEqualTo(LatencyTarget.SLOW_MILLIS));
+        assertThat(hedgedP99, lessThan(LatencyTarget.SLOW_MILLIS / 2));
+        assertThat(extraLoad, lessThan(0.5));
+    }
+
+    private static long percentile(long[] values, double rank) {
+        long[] sorted = values.clone();
+        Arrays.sort(sorted);
+        int index = (int) Math.ceil(sorted.length * rank) - 1;
+        return sorted[Math.max(index, 0)];
+    }
+
+    /**
+     * 一定の間隔で遅くなる対象。
+     */
+    private static class LatencyTarget implements Callable<String> {
+
+        static final long SLOW_MILLIS = 200;
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        private final int slowInterval;
+
+        private final long fastMillis;
+
+        LatencyTarget(int slowInterval, long fastMillis) {
+            this.slowInterval = slowInterval;
+            this.fastMillis = fastMillis;
+        }
+
+        int getInvocationCount() {
+            return count.get();
+        }
+
+        public String call() throws Exception {
+            int n = count.getAndIncrement();
+            boolean slow = slowInterval > 0 && n % slowInterval == 0;
+            Thread.sleep(slow ? SLOW_MILLIS : fastMillis);
+            return "OK";
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Test for {@link IterablePublisher}.
+ * @author ashigeru
+ */
+public class IterablePublisherTest {
+
+    /**
+     * 最初の要求を受けてから元の{@code Callable}を起動し、すべての要素を発行する。
+     */
+    @Test
+    public void subscribe() {
+        Source source = new Source(1, 2, 3);
+        Recorder recorder = new Recorder();
+        new IterablePublisher<Integer>(source, new Inline(), 2).subscribe(recorder);
+        assertThat(source.calls.get(), is(0));
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertThat(source.calls.get(), is(1));
+        assertThat(recorder.items, is(Arrays.asList(1, 2, 3)));
+        assertThat(recorder.completed, is(true));
+        assertThat(recorder.error, is(nullValue()));
+    }
+
+    /**
+     * 要求された個数までしか発行しない。
+     */
+    @Test
+    public void request() {
+        Recorder recorder = new Recorder();
+        new IterablePublisher<Integer>(new Source(1, 2, 3, 4, 5), new Inline(), 2).subscribe(recorder);
+        recorder.subscription.request(3);
+        assertThat(recorder.items, is(Arrays.asList(1, 2, 3)));
+        assertThat(recorder.completed, is(false));
+
+        recorder.subscription.request(2);
+        assertThat(recorder.items, is(Arrays.asList(1, 2, 3, 4, 5)));
+        assertThat(recorder.completed, is(true));
+    }
+
+    /**
+     * 一度の実行では最大{@code chunkSize}個を発行し、残りは改めて投入する。
+     */
+    @Test
+    public void chunk() {
+        Deferred executor = new Deferred();
+        Recorder recorder = new Recorder();
+        new IterablePublisher<Integer>(new Source(1, 2, 3, 4, 5), executor, 2).subscribe(recorder);
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertThat(recorder.items.size(), is(0));
+
+        assertThat(executor.runNext(), is(true));
+        assertThat(recorder.items, is(Arrays.asList(1, 2)));
+        assertThat(executor.runNext(), is(true));
+        assertThat(recorder.items, is(Arrays.asList(1, 2, 3, 4)));
+        assertThat(recorder.completed, is(false));
+        while (executor.runNext()) {
+            continue;
+        }
+        assertThat(recorder.items, is(Arrays.asList(1, 2, 3, 4, 5)));
+        assertThat(recorder.completed, is(true));
+    }
+
+    /**
+     * 購読を取り消すと、以降の要素を発行しない。
+     */
+    @Test
+    public void cancel() {
+        Recorder recorder = new Recorder();
+        recorder.cancelAfter = 2;
+        new IterablePublisher<Integer>(new Source(1, 2, 3, 4, 5), new Inline(), 10).subscribe(recorder);
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertThat(recorder.items, is(Arrays.asList(1, 2)));
+        assertThat(recorder.completed, is(false));
+        assertThat(recorder.error, is(nullValue()));
+    }
+
+    /**
+     * 正でない個数を要求すると失敗を通知する。
+     */
+    @Test
+    public void request_invalid() {
+        Recorder recorder = new Recorder();
+        new IterablePublisher<Integer>(new Source(1, 2, 3), new Inline(), 2).subscribe(recorder);
+        recorder.subscription.request(0);
+        assertThat(recorder.error, instanceOf(IllegalArgumentException.class));
+        assertThat(recorder.items.size(), is(0));
+    }
+
+    /**
+     * 元の{@code Callable}の失敗を通知する。
+     */
+    @Test
+    public void source_failure() {
+        Recorder recorder = new Recorder();
+        Callable<List<Integer>> source = new Callable<List<Integer>>() {
+            public List<Integer> call() throws IOException {
+                throw new IOException();
+            }
+        };
+        new IterablePublisher<Integer>(source, new Inline(), 2).subscribe(recorder);
+        recorder.subscription.request(1);
+        assertThat(recorder.error, instanceOf(IOException.class));
+        assertThat(recorder.completed, is(false));
+    }
+
+    private static final class Source implements Callable<List<Integer>> {
+
+        final AtomicInteger calls = new AtomicInteger();
+
+        private final List<Integer> values;
+
+        Source(Integer... values) {
+            this.values = Arrays.asList(values);
+        }
+
+        public List<Integer> call() {
+            calls.incrementAndGet();
+            return values;
+        }
+    }
+
+    private static final class Inline implements Executor {
+
+        public void execute(Runnable command) {
+            command.run();
+        }
+    }
+
+    private static final class Deferred implements Executor {
+
+        private final LinkedList<Runnable> queue = new LinkedList<Runnable>();
+
+        public void execute(Runnable command) {
+            queue.add(command);
+        }
+
+        boolean runNext() {
+            if (queue.isEmpty()) {
+                return false;
+            }
+            queue.removeFirst().run();
+            return true;
+        }
+    }
+
+    private static final class Recorder implements Subscriber<Integer> {
+
+        final List<Integer> items = new ArrayList<Integer>();
+
+        Subscription subscription;
+
+        boolean completed;
+
+        Throwable error;
+
+        int cancelAfter = -1;
+
+        public void onSubscribe(Subscription s) {
+            this.subscription = s;
+        }
+
+        public void onNext(Integer item) {
+            items.add(item);
+            if (items.size() == cancelAfter) {
+                subscription.cancel();
+            }
+        }
+
+        public void onError(Throwable throwable) {
+            this.error = throwable;
+        }
+
+        public void onComplete() {
+            this.completed = true;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link ManagedBlocking}.
+ * @author ashigeru
+ */
+public class ManagedBlockingTest {
+
+    private ExecutorService pool;
+
+    /**
+     * テストを初期化する。
+     * @throws Exception 初期化に失敗した場合
+     */
+    @Before
+    public void setUp() throws Exception {
+        // ForkJoinPoolはJava SE 7で追加されたため、存在する場合のみ並列度1で生成する
+        Class<?> poolClass;
+        try {
+            poolClass = Class.forName("java.util.concurrent.ForkJoinPool");
+        }
+        catch (ClassNotFoundException e) {
+            return;
+        }
+        pool = (ExecutorService) poolClass.getConstructor(int.class).newInstance(1);
+    }
+
+    /**
+     * テストの情報を破棄する。
+     * @throws Exception 破棄に失敗した場合
+     */
+    @After
+    public void tearDown() throws Exception {
+        if (pool != null) {
+            pool.shutdownNow();
+            pool.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 並列度1のプール上で互いを待ち合わせる二つのタスクが、いずれも完了する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void compensate() throws Exception {
+        assumeTrue(pool != null);
+        CountDownLatch first = new CountDownLatch(1);
+        CountDownLatch second = new CountDownLatch(1);
+        Future<Boolean> a = pool.submit(rendezvous(first, second));
+        Future<Boolean> b = pool.submit(rendezvous(second, first));
+        assertThat(a.get(10, TimeUnit.SECONDS), is(true));
+        assertThat(b.get(10, TimeUnit.SECONDS), is(true));
+    }
+
+    /**
+     * プールのワーカースレッドでは、ブロックをプールに通知する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void managed() throws Exception {
+        assumeTrue(pool != null);
+        Future<Boolean> managed = pool.submit(new Callable<Boolean>() {
+            public Boolean call() {
+                return ManagedBlocking.isManaged();
+            }
+        });
+        assertThat(managed.get(10, TimeUnit.SECONDS), is(true));
+    }
+
+    /**
+     * プールの外では、処理を現在のスレッドでそのまま実行する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void direct() throws Exception {
+        assertThat(ManagedBlocking.isManaged(), is(false));
+        Thread thread = ManagedBlocking.invoke(new Callable<Thread>() {
+            public Thread call() {
+                return Thread.currentThread();
+            }
+        });
+        assertThat(thread, is(sameInstance(Thread.currentThread())));
+    }
+
+    /**
+     * プールの外では、検査例外と非検査例外をそのままスローする。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void rethrowDirect() throws Exception {
+        IOException checked = new IOException();
+        assertThat(invokeFailing(checked), is(sameInstance((Exception) checked)));
+        IllegalStateException unchecked = new IllegalStateException();
+        assertThat(invokeFailing(unchecked), is(sameInstance((Exception) unchecked)));
+    }
+
+    /**
+     * プールのワーカースレッドでも、検査例外と非検査例外をそのままスローする。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void rethrowManaged() throws Exception {
+        assumeTrue(pool != null);
+        final IOException checked = new IOException();
+        final IllegalStateException unchecked = new IllegalStateException();
+        Future<Exception[]> results = pool.submit(new Callable<Exception[]>() {
+            public Exception[] call() {
+                return new Exception[] {
+                        invokeFailing(checked),
+                        invokeFailing(unchecked),
+                };
+            }
+        });
+        Exception[] thrown = results.get(10, TimeUnit.SECONDS);
+        assertThat(thrown[0], is(sameInstance((Exception) checked)));
+        assertThat(thrown[1], is(sameInstance((Exception) unchecked)));
+    }
+
+    private static Callable<Boolean> rendezvous(final CountDownLatch arrive, final CountDownLatch wait) {
+        return new Callable<Boolean>() {
+            public Boolean call() {
+                return ManagedBlocking.invoke(new Callable<Boolean>() {
+                    public Boolean call() throws InterruptedException {
+                        arrive.countDown();
+                        return wait.await(10, TimeUnit.SECONDS);
+                    }
+                });
+            }
+        };
+    }
+
+    private static Exception invokeFailing(final Exception exception) {
+        try {
+            ManagedBlocking.invoke(new Callable<Void>() {
+                public Void call() throws Exception {
+                    throw exception;
+                }
+            });
+        }
+        catch (Exception e) {
+            return e;
+        }
+        throw new AssertionError();
+    }
+}
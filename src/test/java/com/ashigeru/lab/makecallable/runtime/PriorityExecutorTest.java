@@ -0,0 +1,148 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link PriorityExecutor}.
+ * @author ashigeru
+ */
+public class PriorityExecutorTest {
+
+    private PriorityExecutor executor;
+
+    private CountDownLatch gate;
+
+    private List<String> log;
+
+    /**
+     * テストを初期化する。
+     * @throws Exception 初期化に失敗した場合
+     */
+    @Before
+    public void setUp() throws Exception {
+        executor = new PriorityExecutor(1, Executors.defaultThreadFactory());
+        gate = new CountDownLatch(1);
+        log = Collections.synchronizedList(new ArrayList<String>());
+        // 唯一のスレッドを塞ぎ、以降のタスクをキューに滞留させる
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    gate.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    /**
+     * テストの情報を破棄する。
+     * @throws Exception 破棄に失敗した場合
+     */
+    @After
+    public void tearDown() throws Exception {
+        gate.countDown();
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 優先度の高い順に実行し、優先度を持たないタスクは優先度{@code 0}として扱う。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void priority() throws Exception {
+        submit(new Task("low", -1));
+        submit(new Plain("plain"));
+        submit(new Task("high", 10));
+        submit(new Task("middle", 5));
+        awaitAll();
+        assertThat(log, is(Arrays.asList("high", "middle", "plain", "low")));
+    }
+
+    /**
+     * 優先度が等しいタスクは、投入された順に実行する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void fifo() throws Exception {
+        submit(new Task("a", 1));
+        submit(new Task("b", 1));
+        executor.execute(new Task("c", 1));
+        submit(new Task("d", 1));
+        awaitAll();
+        assertThat(log, is(Arrays.asList("a", "b", "c", "d")));
+    }
+
+    private void submit(Plain task) {
+        executor.submit((Callable<String>) task);
+    }
+
+    private void awaitAll() throws InterruptedException {
+        gate.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+    }
+
+    private class Plain implements Callable<String>, Runnable {
+
+        final String name;
+
+        Plain(String name) {
+            this.name = name;
+        }
+
+        public String call() {
+            run();
+            return name;
+        }
+
+        public void run() {
+            log.add(name);
+        }
+    }
+
+    private final class Task extends Plain implements Prioritized {
+
+        private final int priority;
+
+        Task(String name, int priority) {
+            super(name);
+            this.priority = priority;
+        }
+
+        public int getPriority() {
+            return priority;
+        }
+    }
+}
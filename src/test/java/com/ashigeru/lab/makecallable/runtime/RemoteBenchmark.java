@@ -0,0 +1,169 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.io.IOException;
+import java.io.Serializable;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * {@link RemoteDispatcher}の処理能力を、同一JVM内のスレッドプールと比較する。
+ * <p>
+ * CPU負荷の高い直列化可能な{@code Callable}を指定の数だけ投入し、
+ * すべての結果を受け取るまでの時間をそれぞれ計測して表示する。
+ * ワーカーはこのJVMと同じクラスパスで起動される。
+ * </p>
+ * @author ashigeru
+ */
+public final class RemoteBenchmark {
+
+    private RemoteBenchmark() {
+        throw new AssertionError();
+    }
+
+    /**
+     * ベンチマークを実行する。
+     * @param args プログラム引数
+     * @throws Exception ベンチマークの実行に失敗した場合
+     */
+    public static void main(String[] args) throws Exception {
+        int workers = 2;
+        int threads = 2;
+        int window = 64;
+        int tasks = 10000;
+        int work = 100000;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String arg = args[i];
+            int value = Integer.parseInt(args[i + 1]);
+            if (arg.equals("-workers")) {
+                workers = value;
+            }
+            else if (arg.equals("-threads")) {
+                threads = value;
+            }
+            else if (arg.equals("-window")) {
+                window = value;
+            }
+            else if (arg.equals("-tasks")) {
+                tasks = value;
+            }
+            else if (arg.equals("-work")) {
+                work = value;
+            }
+            else {
+                System.err.println(MessageFormat.format(
+                    "Usage: java {0} [-workers <n>] [-threads <n>] [-window <n>] [-tasks <n>] [-work <n>]",
+                    RemoteBenchmark.class.getName()));
+                System.exit(1);
+                return;
+            }
+        }
+        List<Spin> spins = new ArrayList<Spin>();
+        for (int i = 0; i < tasks; i++) {
+            spins.add(new Spin(i, work));
+        }
+        ExecutorService local = Executors.newFixedThreadPool(workers * threads);
+        try {
+            // 一回目はJITの暖機として扱い、二回目を計測する
+            runLocal(local, spins);
+            report("local", tasks, runLocal(local, spins));
+        }
+        finally {
+            local.shutdown();
+        }
+        RemoteDispatcher remote = RemoteDispatcher.start(
+            workers, threads, window, System.getProperty("java.class.path"));
+        try {
+            runRemote(remote, spins);
+            report("remote", tasks, runRemote(remote, spins));
+        }
+        finally {
+            remote.close();
+        }
+    }
+
+    private static long runLocal(ExecutorService executor, List<Spin> spins)
+            throws InterruptedException, ExecutionException {
+        assert executor != null;
+        assert spins != null;
+        long start = System.nanoTime();
+        List<Future<Long>> futures = new ArrayList<Future<Long>>(spins.size());
+        for (Spin spin : spins) {
+            futures.add(executor.submit(spin));
+        }
+        for (Future<Long> future : futures) {
+            future.get();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static long runRemote(RemoteDispatcher dispatcher, List<Spin> spins)
+            throws IOException, InterruptedException, ExecutionException {
+        assert dispatcher != null;
+        assert spins != null;
+        long start = System.nanoTime();
+        List<Future<Long>> futures = new ArrayList<Future<Long>>(spins.size());
+        for (Spin spin : spins) {
+            futures.add(dispatcher.submit(spin));
+        }
+        for (Future<Long> future : futures) {
+            future.get();
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(String label, int tasks, long elapsedNanos) {
+        assert label != null;
+        double seconds = elapsedNanos / 1e9;
+        System.out.println(MessageFormat.format(
+            "{0}: {1} tasks in {2,number,0.000}s ({3,number,0} tasks/s)",
+            label,
+            tasks,
+            seconds,
+            tasks / seconds));
+    }
+
+    private static final class Spin implements Callable<Long>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long seed;
+
+        private final int work;
+
+        Spin(long seed, int work) {
+            this.seed = seed;
+            this.work = work;
+        }
+
+        public Long call() {
+            long x = seed;
+            for (int i = 0; i < work; i++) {
+                x ^= x << 13;
+                x ^= x >>> 7;
+                x ^= x << 17;
+            }
+            return x;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test for {@link RemoteDispatcher}.
+ * @author ashigeru
+ */
+public class RemoteDispatcherTest {
+
+    private RemoteDispatcher dispatcher;
+
+    /**
+     * テストの情報を破棄する。
+     * @throws Exception 破棄に失敗した場合
+     */
+    @After
+    public void tearDown() throws Exception {
+        if (dispatcher != null) {
+            dispatcher.close();
+        }
+    }
+
+    /**
+     * ワーカーで実行した結果を受け取る。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void submit() throws Exception {
+        dispatcher = start(2);
+        assertThat(dispatcher.getWorkerCount(), is(2));
+
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (int i = 0; i < 100; i++) {
+            futures.add(dispatcher.submit(new Echo(String.valueOf(i))));
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            assertThat(futures.get(i).get(10, TimeUnit.SECONDS), is(String.valueOf(i)));
+            assertThat(futures.get(i).isDone(), is(true));
+        }
+    }
+
+    /**
+     * ワーカーで発生した例外を受け取る。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void failure() throws Exception {
+        dispatcher = start(1);
+        Future<String> future = dispatcher.submit(new Echo(null));
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail();
+        }
+        catch (ExecutionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+    }
+
+    /**
+     * 直列化できない結果や例外も、失敗として必ず応答される。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void notSerializable() throws Exception {
+        dispatcher = start(1);
+        Future<Object> result = dispatcher.submit(new Opaque(false));
+        Future<Object> exception = dispatcher.submit(new Opaque(true));
+        try {
+            result.get(10, TimeUnit.SECONDS);
+            fail();
+        }
+        catch (ExecutionException e) {
+            assertThat(e.getCause(), is(notNullValue()));
+        }
+        try {
+            exception.get(10, TimeUnit.SECONDS);
+            fail();
+        }
+        catch (ExecutionException e) {
+            assertThat(e.getCause().getMessage(), containsString("opaque"));
+        }
+
+        // 枠が返却されていれば、後続の要求も処理される
+        for (int i = 0; i < 10; i++) {
+            assertThat(dispatcher.submit(new Echo("ok")).get(10, TimeUnit.SECONDS), is("ok"));
+        }
+    }
+
+    /**
+     * 取り消した要求の結果は受け取らない。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void cancel() throws Exception {
+        dispatcher = start(1);
+        Future<String> future = dispatcher.submit(new Sleep(500));
+        assertThat(future.cancel(false), is(true));
+        assertThat(future.isCancelled(), is(true));
+        assertThat(future.isDone(), is(true));
+        assertThat(future.cancel(false), is(false));
+
+        assertThat(dispatcher.submit(new Echo("ok")).get(10, TimeUnit.SECONDS), is("ok"));
+    }
+
+    /**
+     * 閉じた後は要求を受け付けず、送信済みの要求は失敗する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void close() throws Exception {
+        dispatcher = start(1);
+        Future<String> future = dispatcher.submit(new Sleep(5000));
+        long start = System.currentTimeMillis();
+        dispatcher.close();
+        assertThat(System.currentTimeMillis() - start, lessThan(15000L));
+        try {
+            future.get(10, TimeUnit.SECONDS);
+            fail();
+        }
+        catch (ExecutionException e) {
+            // ok.
+        }
+        try {
+            dispatcher.submit(new Echo("ok"));
+            fail();
+        }
+        catch (RejectedExecutionException e) {
+            // ok.
+        }
+    }
+
+    private RemoteDispatcher start(int workers) throws Exception {
+        return RemoteDispatcher.start(workers, 2, 4, System.getProperty("java.class.path"));
+    }
+
+    private static final class Echo implements Callable<String>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String value;
+
+        Echo(String value) {
+            this.value = value;
+        }
+
+        public String call() {
+            if (value == null) {
+                throw new IllegalStateException();
+            }
+            return value;
+        }
+    }
+
+    private static final class Sleep implements Callable<String>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final long millis;
+
+        Sleep(long millis) {
+            this.millis = millis;
+        }
+
+        public String call() throws InterruptedException {
+            Thread.sleep(millis);
+            return "slept";
+        }
+    }
+
+    private static final class Opaque implements Callable<Object>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final boolean raise;
+
+        Opaque(boolean raise) {
+            this.raise = raise;
+        }
+
+        public Object call() {
+            if (raise) {
+                throw new OpaqueException();
+            }
+            return new Object();
+        }
+    }
+
+    private static final class OpaqueException extends RuntimeException {
+
+        private static final long serialVersionUID = 1L;
+
+        @SuppressWarnings("unused")
+        private final Object payload = new Object();
+
+        OpaqueException() {
+            super("opaque");
+        }
+    }
+}
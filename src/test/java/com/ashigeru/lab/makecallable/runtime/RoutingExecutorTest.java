@@ -0,0 +1,116 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test for {@link RoutingExecutor}.
+ * @author ashigeru
+ */
+public class RoutingExecutorTest {
+
+    private RoutingExecutor executor;
+
+    /**
+     * テストの情報を破棄する。
+     * @throws Exception 破棄に失敗した場合
+     */
+    @After
+    public void tearDown() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 負荷の種類に対応するスレッドプールでタスクを実行する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void route() throws Exception {
+        executor = RoutingExecutor.newDefault(2, 2, Executors.defaultThreadFactory());
+        assertThat(executor.routeOf(TaskKind.DEFAULT), sameInstance(executor.routeOf(TaskKind.CPU)));
+        assertThat(executor.routeOf(TaskKind.BLOCKING_IO), not(sameInstance(executor.routeOf(TaskKind.CPU))));
+
+        String name = executor.submit(new KindTask(TaskKind.BLOCKING_IO, null)).get();
+        assertThat(name, notNullValue());
+    }
+
+    /**
+     * {@link TaskKind#BLOCKING_IO}のスレッドプールは、スレッドと待ち行列が埋まると投入を拒否する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void blockingBounded() throws Exception {
+        executor = RoutingExecutor.newDefault(1, 1, Executors.defaultThreadFactory());
+        CountDownLatch release = new CountDownLatch(1);
+        executor.submit(new KindTask(TaskKind.BLOCKING_IO, release));
+        executor.submit(new KindTask(TaskKind.BLOCKING_IO, release));
+        try {
+            executor.submit(new KindTask(TaskKind.BLOCKING_IO, release));
+            fail();
+        }
+        catch (RejectedExecutionException e) {
+            // ok.
+        }
+        // 他の種類のタスクは影響を受けない
+        assertThat(executor.submit(new KindTask(TaskKind.CPU, null)).get(), notNullValue());
+        release.countDown();
+    }
+
+    /**
+     * スレッドプールのサイズには正の値を指定する。
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void newDefault_invalidThreads() {
+        RoutingExecutor.newDefault(0, 1, Executors.defaultThreadFactory());
+    }
+
+    private static class KindTask implements Callable<String>, Classified {
+
+        private final TaskKind kind;
+
+        private final CountDownLatch release;
+
+        KindTask(TaskKind kind, CountDownLatch release) {
+            this.kind = kind;
+            this.release = release;
+        }
+
+        public TaskKind getKind() {
+            return kind;
+        }
+
+        public String call() throws Exception {
+            if (release != null) {
+                release.await();
+            }
+            return Thread.currentThread().getName();
+        }
+    }
+}
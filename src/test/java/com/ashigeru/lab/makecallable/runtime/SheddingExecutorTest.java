@@ -0,0 +1,156 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Test for {@link SheddingExecutor}.
+ * @author ashigeru
+ */
+public class SheddingExecutorTest {
+
+    private SheddingExecutor executor;
+
+    private CountDownLatch gate;
+
+    /**
+     * テストを初期化する。
+     * @throws Exception 初期化に失敗した場合
+     */
+    @Before
+    public void setUp() throws Exception {
+        executor = new SheddingExecutor(
+            1, new LinkedBlockingQueue<Runnable>(), Executors.defaultThreadFactory());
+        gate = new CountDownLatch(1);
+        // 唯一のスレッドを塞ぎ、以降のタスクをキューに滞留させる
+        executor.execute(new Runnable() {
+            public void run() {
+                try {
+                    gate.await();
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+    }
+
+    /**
+     * テストの情報を破棄する。
+     * @throws Exception 破棄に失敗した場合
+     */
+    @After
+    public void tearDown() throws Exception {
+        gate.countDown();
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 取り出した時点で期限を過ぎているタスクは実行されずに取り消される。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void submit() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        Future<String> expired = submit(new Task("expired", Deadlines.after(1, TimeUnit.MILLISECONDS), runs));
+        Future<String> alive = submit(new Task("alive", Deadlines.after(1, TimeUnit.HOURS), runs));
+        Future<String> none = submit(new Task("none", Deadlines.NONE, runs));
+        Thread.sleep(20);
+        gate.countDown();
+
+        assertThat(alive.get(10, TimeUnit.SECONDS), is("alive"));
+        assertThat(none.get(10, TimeUnit.SECONDS), is("none"));
+        assertThat(expired.isCancelled(), is(true));
+        try {
+            expired.get();
+            fail();
+        }
+        catch (CancellationException e) {
+            // ok.
+        }
+        assertThat(runs.get(), is(2));
+        assertThat(executor.getSkippedCount(), is(1L));
+    }
+
+    /**
+     * {@code execute}で直接投入されたタスクも期限を確認される。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void execute() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        executor.execute(new Task("expired", Deadlines.after(1, TimeUnit.MILLISECONDS), runs));
+        executor.execute(new Task("alive", Deadlines.after(1, TimeUnit.HOURS), runs));
+        Thread.sleep(20);
+        gate.countDown();
+        executor.shutdown();
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+        assertThat(runs.get(), is(1));
+        assertThat(executor.getSkippedCount(), is(1L));
+    }
+
+    private Future<String> submit(Task task) {
+        return executor.submit((Callable<String>) task);
+    }
+
+    private static final class Task implements Callable<String>, Runnable, Deadlined {
+
+        private final String name;
+
+        private final long deadline;
+
+        private final AtomicInteger runs;
+
+        Task(String name, long deadline, AtomicInteger runs) {
+            this.name = name;
+            this.deadline = deadline;
+            this.runs = runs;
+        }
+
+        public long getDeadline() {
+            return deadline;
+        }
+
+        public boolean isExpired() {
+            return Deadlines.isExpired(deadline);
+        }
+
+        public String call() {
+            run();
+            return name;
+        }
+
+        public void run() {
+            runs.incrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Test for {@link StripedExecutor}.
+ * @author ashigeru
+ */
+public class StripedExecutorTest {
+
+    private StripedExecutor executor;
+
+    /**
+     * テストの情報を破棄する。
+     * @throws Exception 破棄に失敗した場合
+     */
+    @After
+    public void tearDown() throws Exception {
+        if (executor != null) {
+            executor.shutdownNow();
+            executor.awaitTermination(10, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 同じ分割キーを持つタスクは、同じスレッドで投入された順に実行される。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void partitioned() throws Exception {
+        executor = new StripedExecutor(4, Executors.defaultThreadFactory());
+        List<List<Integer>> logs = new ArrayList<List<Integer>>();
+        List<Future<String>> futures = new ArrayList<Future<String>>();
+        for (int key = 0; key < 8; key++) {
+            logs.add(new ArrayList<Integer>());
+        }
+        for (int i = 0; i < 1000; i++) {
+            int key = i % 8;
+            futures.add(executor.submit(new Append(key, i, logs.get(key))));
+        }
+        List<Set<String>> threads = new ArrayList<Set<String>>();
+        for (int key = 0; key < 8; key++) {
+            threads.add(new HashSet<String>());
+        }
+        for (int i = 0; i < futures.size(); i++) {
+            threads.get(i % 8).add(futures.get(i).get(10, TimeUnit.SECONDS));
+        }
+        for (int key = 0; key < 8; key++) {
+            assertThat(threads.get(key).size(), is(1));
+            List<Integer> log = logs.get(key);
+            assertThat(log.size(), is(125));
+            for (int j = 1; j < log.size(); j++) {
+                assertThat(log.get(j), greaterThan(log.get(j - 1)));
+            }
+        }
+    }
+
+    /**
+     * 分割キーからレーンの番号を求める。
+     */
+    @Test
+    public void laneOf() {
+        executor = new StripedExecutor(3, Executors.defaultThreadFactory());
+        assertThat(executor.getLaneCount(), is(3));
+        Set<Integer> lanes = new HashSet<Integer>();
+        for (int key = -100; key < 100; key++) {
+            int lane = executor.laneOf(key);
+            assertThat(lane, greaterThanOrEqualTo(0));
+            assertThat(lane, lessThan(3));
+            assertThat(executor.laneOf(key), is(lane));
+            lanes.add(lane);
+        }
+        assertThat(lanes.size(), is(3));
+        assertThat(executor.laneOf(Integer.MIN_VALUE), greaterThanOrEqualTo(0));
+        assertThat(executor.laneOf(Integer.MIN_VALUE), lessThan(3));
+    }
+
+    /**
+     * 分割キーを持たないタスクは、各レーンに順番に割り当てられる。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void roundRobin() throws Exception {
+        executor = new StripedExecutor(3, Executors.defaultThreadFactory());
+        Set<String> threads = new HashSet<String>();
+        for (int i = 0; i < 3; i++) {
+            threads.add(executor.submit(new CurrentThread()).get(10, TimeUnit.SECONDS));
+        }
+        assertThat(threads.size(), is(3));
+    }
+
+    /**
+     * すべてのレーンを終了させる。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void shutdown() throws Exception {
+        executor = new StripedExecutor(2, Executors.defaultThreadFactory());
+        Future<String> future = executor.submit(new CurrentThread());
+        executor.shutdown();
+        assertThat(executor.isShutdown(), is(true));
+        assertThat(executor.awaitTermination(10, TimeUnit.SECONDS), is(true));
+        assertThat(executor.isTerminated(), is(true));
+        assertThat(future.isDone(), is(true));
+    }
+
+    private static final class Append implements Callable<String>, Partitioned {
+
+        private final int key;
+
+        private final int value;
+
+        private final List<Integer> log;
+
+        Append(int key, int value, List<Integer> log) {
+            this.key = key;
+            this.value = value;
+            this.log = log;
+        }
+
+        public int partitionKey() {
+            return key;
+        }
+
+        public String call() {
+            // 同じ分割キーのタスクは同時に実行されないため、同期せずに追加できる
+            log.add(value);
+            return Thread.currentThread().getName();
+        }
+    }
+
+    private static final class CurrentThread implements Callable<String> {
+
+        public String call() {
+            return Thread.currentThread().getName();
+        }
+    }
+}
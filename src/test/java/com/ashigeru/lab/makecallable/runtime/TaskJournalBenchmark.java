@@ -0,0 +1,170 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.text.MessageFormat;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * {@link TaskJournal}への追記の処理能力を、同期の単位ごとに比較する。
+ * <p>
+ * 指定の数のタスクを、一件ごとに同期する場合と{@link TaskJournal#appendAll(java.util.Collection)}で
+ * まとめて同期する場合とでそれぞれ追記し、その時間を計測して表示する。
+ * ジャーナルは一時ディレクトリに作成され、計測後に削除される。
+ * </p>
+ * @author ashigeru
+ */
+public final class TaskJournalBenchmark {
+
+    private TaskJournalBenchmark() {
+        throw new AssertionError();
+    }
+
+    /**
+     * ベンチマークを実行する。
+     * @param args プログラム引数
+     * @throws Exception ベンチマークの実行に失敗した場合
+     */
+    public static void main(String[] args) throws Exception {
+        int tasks = 10000;
+        int batch = 100;
+        int segment = 16 * 1024 * 1024;
+        for (int i = 0; i + 1 < args.length; i += 2) {
+            String arg = args[i];
+            int value = Integer.parseInt(args[i + 1]);
+            if (arg.equals("-tasks")) {
+                tasks = value;
+            }
+            else if (arg.equals("-batch")) {
+                batch = value;
+            }
+            else if (arg.equals("-segment")) {
+                segment = value;
+            }
+            else {
+                System.err.println(MessageFormat.format(
+                    "Usage: java {0} [-tasks <n>] [-batch <n>] [-segment <bytes>]",
+                    TaskJournalBenchmark.class.getName()));
+                System.exit(1);
+                return;
+            }
+        }
+        List<Noop> noops = new ArrayList<Noop>();
+        for (int i = 0; i < tasks; i++) {
+            noops.add(new Noop(i));
+        }
+        // 一回目はJITの暖機として扱い、二回目を計測する
+        runEach(noops, segment);
+        report("sync each", tasks, runEach(noops, segment));
+        runBatch(noops, batch, segment);
+        report(MessageFormat.format("sync per {0}", batch), tasks, runBatch(noops, batch, segment));
+    }
+
+    private static long runEach(List<Noop> noops, int segment) throws IOException {
+        assert noops != null;
+        File directory = createDirectory();
+        try {
+            TaskJournal journal = TaskJournal.open(directory, segment);
+            try {
+                long start = System.nanoTime();
+                for (Noop noop : noops) {
+                    journal.append(noop);
+                    journal.sync();
+                }
+                return System.nanoTime() - start;
+            }
+            finally {
+                journal.close();
+            }
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    private static long runBatch(List<Noop> noops, int batch, int segment) throws IOException {
+        assert noops != null;
+        File directory = createDirectory();
+        try {
+            TaskJournal journal = TaskJournal.open(directory, segment);
+            try {
+                long start = System.nanoTime();
+                for (int i = 0; i < noops.size(); i += batch) {
+                    journal.appendAll(noops.subList(i, Math.min(i + batch, noops.size())));
+                }
+                return System.nanoTime() - start;
+            }
+            finally {
+                journal.close();
+            }
+        }
+        finally {
+            delete(directory);
+        }
+    }
+
+    private static File createDirectory() throws IOException {
+        File directory = File.createTempFile("journal", "");
+        if (directory.delete() == false || directory.mkdir() == false) {
+            throw new IOException(MessageFormat.format(
+                "Failed to create a temporary directory: {0}",
+                directory));
+        }
+        return directory;
+    }
+
+    private static void delete(File directory) {
+        assert directory != null;
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static void report(String label, int tasks, long elapsedNanos) {
+        assert label != null;
+        double seconds = elapsedNanos / 1e9;
+        System.out.println(MessageFormat.format(
+            "{0}: {1} tasks in {2,number,0.000}s ({3,number,0} tasks/s)",
+            label,
+            tasks,
+            seconds,
+            tasks / seconds));
+    }
+
+    private static final class Noop implements Callable<Integer>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int value;
+
+        Noop(int value) {
+            this.value = value;
+        }
+
+        public Integer call() {
+            return value;
+        }
+    }
+}
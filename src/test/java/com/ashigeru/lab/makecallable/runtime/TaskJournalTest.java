@@ -0,0 +1,246 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable.runtime;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+/**
+ * Test for {@link TaskJournal}.
+ * @author ashigeru
+ */
+public class TaskJournalTest {
+
+    private static final int SEGMENT_SIZE = 4096;
+
+    /**
+     * 一時フォルダ。
+     */
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private ExecutorService executor;
+
+    private TaskJournal journal;
+
+    /**
+     * テストを初期化する。
+     * @throws Exception 初期化に失敗した場合
+     */
+    @Before
+    public void setUp() throws Exception {
+        executor = Executors.newSingleThreadExecutor();
+        Poison.armed = false;
+    }
+
+    /**
+     * テストの情報を破棄する。
+     * @throws Exception 破棄に失敗した場合
+     */
+    @After
+    public void tearDown() throws Exception {
+        if (journal != null) {
+            journal.close();
+        }
+        executor.shutdownNow();
+        executor.awaitTermination(10, TimeUnit.SECONDS);
+        Poison.armed = false;
+    }
+
+    /**
+     * 完了していないタスクのみが再投入される。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void replay() throws Exception {
+        File directory = folder.newFolder("journal");
+        journal = TaskJournal.open(directory, SEGMENT_SIZE);
+        long a = journal.append(new Echo("a"));
+        journal.append(new Echo("b"));
+        journal.append(new Echo("c"));
+        assertThat(journal.complete(a), is(true));
+        assertThat(journal.complete(a), is(false));
+        journal.close();
+
+        journal = TaskJournal.open(directory, SEGMENT_SIZE);
+        assertThat(journal.getPendingCount(), is(2));
+        assertThat(results(journal.replay(executor)), is(list("b", "c")));
+        assertThat(journal.getPendingCount(), is(0));
+        assertThat(journal.replay(executor).size(), is(0));
+        journal.close();
+
+        journal = TaskJournal.open(directory, SEGMENT_SIZE);
+        assertThat(journal.getPendingCount(), is(0));
+    }
+
+    /**
+     * タスクの復元に失敗した場合、いずれのタスクも失われない。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void replay_restoreFailure() throws Exception {
+        File directory = folder.newFolder("journal");
+        journal = TaskJournal.open(directory, SEGMENT_SIZE);
+        journal.append(new Echo("a"));
+        journal.append(new Poison());
+        journal.append(new Echo("c"));
+        journal.close();
+
+        journal = TaskJournal.open(directory, SEGMENT_SIZE);
+        Poison.armed = true;
+        try {
+            journal.replay(executor);
+            fail();
+        }
+        catch (IOException e) {
+            // ok.
+        }
+        assertThat(journal.getPendingCount(), is(3));
+
+        Poison.armed = false;
+        assertThat(results(journal.replay(executor)), is(list("a", "poison", "c")));
+        assertThat(journal.getPendingCount(), is(0));
+    }
+
+    /**
+     * ジャーナルを閉じた後に完了したタスクは、失敗せずに次回再投入される。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void bind_afterClose() throws Exception {
+        File directory = folder.newFolder("journal");
+        journal = TaskJournal.open(directory, SEGMENT_SIZE);
+        Echo task = new Echo("a");
+        Callable<String> bound = journal.bind(journal.append(task), task);
+        journal.close();
+        assertThat(bound.call(), is("a"));
+
+        journal = TaskJournal.open(directory, SEGMENT_SIZE);
+        assertThat(results(journal.replay(executor)), is(list("a")));
+    }
+
+    /**
+     * 完了したタスクのみを含むセグメントを削除する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test
+    public void compact() throws Exception {
+        File directory = folder.newFolder("journal");
+        journal = TaskJournal.open(directory, SEGMENT_SIZE);
+        List<Long> ids = new ArrayList<Long>();
+        while (journal.getSegmentCount() < 3) {
+            ids.add(journal.append(new Echo("x")));
+        }
+        assertThat(journal.compact(), is(0));
+        for (Long id : ids) {
+            journal.complete(id);
+        }
+        assertThat(journal.compact(), is(2));
+        assertThat(journal.getSegmentCount(), is(1));
+        assertThat(directory.list().length, is(1));
+        journal.close();
+
+        journal = TaskJournal.open(directory, SEGMENT_SIZE);
+        assertThat(journal.getPendingCount(), is(0));
+        long next = journal.append(new Echo("y"));
+        assertThat(next, greaterThan(ids.get(ids.size() - 1)));
+    }
+
+    /**
+     * 閉じた後の操作は失敗する。
+     * @throws Exception テストに失敗した場合
+     */
+    @Test(expected = IllegalStateException.class)
+    public void close() throws Exception {
+        File directory = folder.newFolder("journal");
+        journal = TaskJournal.open(directory, SEGMENT_SIZE);
+        journal.close();
+        journal.close();
+        journal.append(new Echo("a"));
+    }
+
+    private static List<Object> results(List<Future<?>> futures) throws Exception {
+        List<Object> results = new ArrayList<Object>();
+        for (Future<?> future : futures) {
+            results.add(future.get(10, TimeUnit.SECONDS));
+        }
+        return results;
+    }
+
+    private static List<Object> list(Object... values) {
+        List<Object> results = new ArrayList<Object>();
+        for (Object value : values) {
+            results.add(value);
+        }
+        return results;
+    }
+
+    private static class Echo implements Callable<String>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final String value;
+
+        Echo(String value) {
+            this.value = value;
+        }
+
+        public String call() {
+            return value;
+        }
+    }
+
+    private static class Poison implements Callable<String>, Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        static volatile boolean armed;
+
+        Poison() {
+            return;
+        }
+
+        public String call() {
+            return "poison";
+        }
+
+        private void readObject(ObjectInputStream input) throws IOException, ClassNotFoundException {
+            if (armed) {
+                throw new InvalidObjectException("poison");
+            }
+            input.defaultReadObject();
+        }
+    }
+}
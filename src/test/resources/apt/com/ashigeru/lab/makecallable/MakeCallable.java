@@ -0,0 +1,113 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package com.ashigeru.lab.makecallable;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * 注釈プロセッサのテストに利用する{@code MakeCallable}注釈の写し。
+ * @author ashigeru
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.METHOD)
+public @interface MakeCallable {
+
+    Access accessible() default Access.DERIVED;
+
+    String name() default "{0}Callable";
+
+    boolean serializable() default false;
+
+    long hedgeDelay() default 0L;
+
+    int maxConcurrency() default 0;
+
+    Policy concurrencyPolicy() default Policy.WAIT;
+
+    long concurrencyTimeout() default 0L;
+
+    int priority() default 0;
+
+    Kind kind() default Kind.DEFAULT;
+
+    boolean estimateSize() default false;
+
+    boolean weakTarget() default false;
+
+    boolean deadline() default false;
+
+    boolean stage() default false;
+
+    boolean publisher() default false;
+
+    boolean async() default false;
+
+    /**
+     * アクセス修飾子。
+     */
+    enum Access {
+        DERIVED, PUBLIC, PACKAGE,
+    }
+
+    /**
+     * 同時実行数の上限に達した際の振る舞い。
+     */
+    enum Policy {
+        REJECT, WAIT,
+    }
+
+    /**
+     * 処理の性質。
+     */
+    enum Kind {
+        DEFAULT, CPU, BLOCKING_IO, LATENCY_CRITICAL,
+    }
+
+    /**
+     * 優先度を表す引数。
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.PARAMETER)
+    @interface Priority {
+        // no members
+    }
+
+    /**
+     * 分割キーを表す引数。
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.PARAMETER)
+    @interface PartitionKey {
+        // no members
+    }
+
+    /**
+     * コンテナクラス。
+     */
+    @Retention(RetentionPolicy.RUNTIME)
+    @Target(ElementType.TYPE)
+    @interface Container {
+
+        Access accessible() default Access.DERIVED;
+
+        String name() default "{0}Callables";
+
+        String warmUp() default "";
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package sample;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.ashigeru.lab.makecallable.MakeCallable;
+
+/**
+ * 基本的な対象メソッドを持つコンテナ。
+ * @param <E> 要素の型
+ * @author ashigeru
+ */
+public class Basic<E extends Comparable<E>> {
+
+    @MakeCallable
+    public static int add(int a, int b) {
+        return a + b;
+    }
+
+    @MakeCallable
+    E first(List<E> list) {
+        return list.get(0);
+    }
+
+    @MakeCallable(serializable = true)
+    public String greet(String name) {
+        return "Hello, " + name;
+    }
+
+    @MakeCallable
+    protected Map<String, ? extends E> map(Map<String, ? extends E> map, int... values) {
+        return map;
+    }
+
+    @MakeCallable
+    public void touch() {
+        return;
+    }
+
+    @MakeCallable(name = "Wrap{0}", publisher = true)
+    public <T extends Number> List<T> wrap(T value, E[] more) throws IOException {
+        return Collections.singletonList(value);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package sample;
+
+import com.ashigeru.lab.makecallable.MakeCallable;
+
+/**
+ * 実行制御に関する属性を利用するコンテナ。
+ * @author ashigeru
+ */
+@MakeCallable.Container(name = "{0}Tasks", warmUp = "warmUp")
+public class Scheduled {
+
+    @MakeCallable(maxConcurrency = 4, concurrencyPolicy = MakeCallable.Policy.REJECT)
+    public static String batch(String value, @MakeCallable.Priority int priority) {
+        return value;
+    }
+
+    @MakeCallable(estimateSize = true, weakTarget = true)
+    public int length(CharSequence value, long[] values) {
+        return value.length() + values.length;
+    }
+
+    @MakeCallable(kind = MakeCallable.Kind.BLOCKING_IO, deadline = true)
+    public byte[] load(@MakeCallable.PartitionKey String key) throws java.io.IOException {
+        return new byte[0];
+    }
+
+    @MakeCallable
+    public String pack(byte b, short s, char c, float f, double d, boolean z) {
+        return String.valueOf(b + s + c + f + d) + z;
+    }
+
+    @MakeCallable(priority = 10, hedgeDelay = 50, stage = true)
+    public static String urgent(String value) {
+        return value;
+    }
+}
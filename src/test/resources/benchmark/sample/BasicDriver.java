@@ -0,0 +1,159 @@
+/*
+ * Copyright 2010 @ashigeru.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND,
+ * either express or implied. See the License for the specific language
+ * governing permissions and limitations under the License.
+ */
+package sample;
+
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * {@link BasicCallables}の生成したクラスと、それに相当する手書きの実装を作成する。
+ * <p>
+ * 各要素は{@code Callable}を作成する{@code Callable}で、
+ * 静的メソッド、インスタンスメソッド、総称型を返すメソッド、{@code void}のメソッドについて、
+ * 生成されたクラス、匿名クラス、リフレクションのそれぞれで対象のメソッドを起動する。
+ * </p>
+ * @author ashigeru
+ */
+public final class BasicDriver {
+
+    private BasicDriver() {
+        throw new AssertionError();
+    }
+
+    /**
+     * 名前と、{@code Callable}を作成する{@code Callable}の対応表を返す。
+     * @return 名前と{@code Callable}を作成する{@code Callable}の対応表 (登録順)
+     * @throws Exception 準備に失敗した場合
+     */
+    public static Map<String, Callable<Callable<?>>> factories() throws Exception {
+        Map<String, Callable<Callable<?>>> results = new LinkedHashMap<String, Callable<Callable<?>>>();
+        final Basic<String> target = new Basic<String>();
+        final BasicCallables<String> callables = new BasicCallables<String>(target);
+        final List<String> list = Collections.singletonList("a");
+        final Method add = Basic.class.getMethod("add", int.class, int.class);
+        final Method first = Basic.class.getDeclaredMethod("first", List.class);
+        final Method greet = Basic.class.getMethod("greet", String.class);
+        final Method touch = Basic.class.getMethod("touch");
+
+        results.put("static/generated", new Callable<Callable<?>>() {
+            public Callable<?> call() {
+                return BasicCallables.add(1, 2);
+            }
+        });
+        results.put("static/anonymous", new Callable<Callable<?>>() {
+            public Callable<?> call() {
+                final int a = 1;
+                final int b = 2;
+                return new Callable<Integer>() {
+                    public Integer call() {
+                        return Basic.add(a, b);
+                    }
+                };
+            }
+        });
+        results.put("static/reflection", new Callable<Callable<?>>() {
+            public Callable<?> call() {
+                return new Reflective(add, null, 1, 2);
+            }
+        });
+
+        results.put("instance/generated", new Callable<Callable<?>>() {
+            public Callable<?> call() {
+                return callables.greet("a");
+            }
+        });
+        results.put("instance/anonymous", new Callable<Callable<?>>() {
+            public Callable<?> call() {
+                final String name = "a";
+                return new Callable<String>() {
+                    public String call() {
+                        return target.greet(name);
+                    }
+                };
+            }
+        });
+        results.put("instance/reflection", new Callable<Callable<?>>() {
+            public Callable<?> call() {
+                return new Reflective(greet, target, "a");
+            }
+        });
+
+        results.put("generic/generated", new Callable<Callable<?>>() {
+            public Callable<?> call() {
+                return callables.first(list);
+            }
+        });
+        results.put("generic/anonymous", new Callable<Callable<?>>() {
+            public Callable<?> call() {
+                return new Callable<String>() {
+                    public String call() {
+                        return target.first(list);
+                    }
+                };
+            }
+        });
+        results.put("generic/reflection", new Callable<Callable<?>>() {
+            public Callable<?> call() {
+                return new Reflective(first, target, list);
+            }
+        });
+
+        results.put("void/generated", new Callable<Callable<?>>() {
+            public Callable<?> call() {
+                return callables.touch();
+            }
+        });
+        results.put("void/anonymous", new Callable<Callable<?>>() {
+            public Callable<?> call() {
+                return new Callable<Void>() {
+                    public Void call() {
+                        target.touch();
+                        return null;
+                    }
+                };
+            }
+        });
+        results.put("void/reflection", new Callable<Callable<?>>() {
+            public Callable<?> call() {
+                return new Reflective(touch, target);
+            }
+        });
+        return results;
+    }
+
+    private static final class Reflective implements Callable<Object> {
+
+        private final Method method;
+
+        private final Object receiver;
+
+        private final Object[] arguments;
+
+        Reflective(Method method, Object receiver, Object... arguments) {
+            this.method = method;
+            this.receiver = receiver;
+            this.arguments = arguments;
+        }
+
+        public Object call() throws Exception {
+            return method.invoke(receiver, arguments);
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package sample;
+import com.ashigeru.lab.makecallable.runtime.IterablePublisher;
+import com.ashigeru.lab.makecallable.runtime.Publisher;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+public class BasicCallables<E extends Comparable<E>> {
+    private final Basic<E> __this__;
+    private final touchCallable __touchCallable__;
+    public BasicCallables(Basic<E> target) {
+        this.__this__ = target;
+        this.__touchCallable__ = new touchCallable(target);
+    }
+    public static addCallable add(int a, int b) {
+        return new addCallable(a, b);
+    }
+    firstCallable<E> first(List<E> list) {
+        return new firstCallable<E>(this.__this__, list);
+    }
+    public greetCallable greet(String name) {
+        return new greetCallable(this.__this__, name);
+    }
+    protected mapCallable<Map<String, ? extends E>> map(Map<String, ? extends E> map, int[] values) {
+        return new mapCallable<Map<String, ? extends E>>(this.__this__, map, values);
+    }
+    public touchCallable touch() {
+        return this.__touchCallable__;
+    }
+    public <T extends Number> Wrapwrap<List<T>> wrap(T value, E[] more) throws IOException {
+        return new Wrapwrap<List<T>>(this.__this__, value, more);
+    }
+    public <T extends Number> Publisher<T> wrapPublisher(Executor __executor__, int __chunkSize__, T value, E[] more) throws IOException {
+        return new IterablePublisher<T>(wrap(value, more), __executor__, __chunkSize__);
+    }
+    public static final class addCallable implements Callable<Integer> {
+        private static final long serialVersionUID = 103699983L;
+        private final int a0;
+        private final int a1;
+        addCallable(int a0, int a1) {
+            this.a0 = a0;
+            this.a1 = a1;
+        }
+        public Integer call() {
+            return Basic.add(a0, a1);
+        }
+    }
+    public static final class firstCallable<R> implements Callable<R> {
+        private static final long serialVersionUID = -953939599717L;
+        private final Basic __this__;
+        private final List a0;
+        firstCallable(Basic __this__, List a0) {
+            this.__this__ = __this__;
+            this.a0 = a0;
+        }
+        public R call() {
+            return (R) __this__.first(a0);
+        }
+    }
+    public static final class greetCallable implements Callable<String>, Serializable {
+        private static final long serialVersionUID = -916160240469L;
+        private final Basic __this__;
+        private final String a0;
+        greetCallable(Basic __this__, String a0) {
+            this.__this__ = __this__;
+            this.a0 = a0;
+        }
+        public String call() {
+            return __this__.greet(a0);
+        }
+    }
+    public static final class mapCallable<R> implements Callable<R> {
+        private static final long serialVersionUID = -30914335750116L;
+        private final Basic __this__;
+        private final Map a0;
+        private final int[] a1;
+        mapCallable(Basic __this__, Map a0, int[] a1) {
+            this.__this__ = __this__;
+            this.a0 = a0;
+            this.a1 = a1;
+        }
+        public R call() {
+            return (R) __this__.map(a0, a1);
+        }
+    }
+    public static final class touchCallable implements Callable<Void> {
+        private static final long serialVersionUID = -993141045L;
+        private final Basic __this__;
+        touchCallable(Basic __this__) {
+            this.__this__ = __this__;
+        }
+        public Void call() {
+            __this__.touch();
+            return null;
+        }
+    }
+    public static final class Wrapwrap<R> implements Callable<R> {
+        private static final long serialVersionUID = -28525102934272L;
+        private final Basic __this__;
+        private final Number a0;
+        private final Comparable[] a1;
+        Wrapwrap(Basic __this__, Number a0, Comparable[] a1) {
+            this.__this__ = __this__;
+            this.a0 = a0;
+            this.a1 = a1;
+        }
+        public R call() throws IOException {
+            return (R) __this__.wrap(a0, a1);
+        }
+    }
+}
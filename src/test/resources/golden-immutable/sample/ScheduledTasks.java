@@ -0,0 +1,195 @@
+package sample;
+import com.ashigeru.lab.makecallable.runtime.Bulkhead;
+import com.ashigeru.lab.makecallable.runtime.Classified;
+import com.ashigeru.lab.makecallable.runtime.DeadlineMonitor;
+import com.ashigeru.lab.makecallable.runtime.Deadlined;
+import com.ashigeru.lab.makecallable.runtime.Deadlines;
+import com.ashigeru.lab.makecallable.runtime.Detachable;
+import com.ashigeru.lab.makecallable.runtime.HedgedInvoker;
+import com.ashigeru.lab.makecallable.runtime.ManagedBlocking;
+import com.ashigeru.lab.makecallable.runtime.Partitioned;
+import com.ashigeru.lab.makecallable.runtime.Priorities;
+import com.ashigeru.lab.makecallable.runtime.Prioritized;
+import com.ashigeru.lab.makecallable.runtime.Sized;
+import com.ashigeru.lab.makecallable.runtime.Sizes;
+import com.ashigeru.lab.makecallable.runtime.Stage;
+import com.ashigeru.lab.makecallable.runtime.TargetUnavailableException;
+import com.ashigeru.lab.makecallable.runtime.TaskKind;
+import com.ashigeru.lab.makecallable.runtime.WarmUp;
+import java.io.IOException;
+import java.lang.ref.WeakReference;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+public class ScheduledTasks {
+    private final Scheduled __this__;
+    public ScheduledTasks(Scheduled target) {
+        this.__this__ = target;
+    }
+    public static batchCallable batch(String value, int priority) {
+        return new batchCallable(value, priority);
+    }
+    public lengthCallable length(CharSequence value, long[] values) {
+        return new lengthCallable(this.__this__, value, values);
+    }
+    public loadCallable load(String key) throws IOException {
+        return new loadCallable(this.__this__, key);
+    }
+    public packCallable pack(byte b, short s, char c, float f, double d, boolean z) {
+        return new packCallable(this.__this__, b, s, c, f, d, z);
+    }
+    public static urgentCallable urgent(String value) {
+        return new urgentCallable(value);
+    }
+    public static String urgentHedged(ExecutorService __executor__, String value) throws InterruptedException, ExecutionException {
+        return HedgedInvoker.invoke(__executor__, urgent(value), 50L, TimeUnit.MILLISECONDS);
+    }
+    public loadCallable loadWithin(long __timeout__, TimeUnit __unit__, String key) throws IOException {
+        return new loadCallable(this.__this__, key, Deadlines.after(__timeout__, __unit__));
+    }
+    public static Stage<String, String> urgentCallableStage() {
+        return new Stage<String, String>() {
+            public String apply(String a0) throws Exception {
+                return ScheduledTasks.urgent(a0).call();
+            }
+        };
+    }
+    public static void warmUp() {
+        WarmUp.initialize(batchCallable.class, lengthCallable.class, loadCallable.class, packCallable.class, urgentCallable.class);
+    }
+    public static int warmUp(Scheduled __target__, int __iterations__) {
+        warmUp();
+        int succeeded = 0;
+        succeeded += WarmUp.invoke(new lengthCallable(__target__, null, null), __iterations__);
+        succeeded += WarmUp.invoke(new loadCallable(__target__, null), __iterations__);
+        succeeded += WarmUp.invoke(new packCallable(__target__, (byte) 0, (short) 0, '\0', 0.0f, 0.0, false), __iterations__);
+        return succeeded;
+    }
+    public static final class batchCallable implements Callable<String>, Prioritized, Comparable<Prioritized> {
+        private static final long serialVersionUID = 1149842869627L;
+        public static final Bulkhead BULKHEAD = Bulkhead.rejecting(4);
+        private final String a0;
+        private final int a1;
+        batchCallable(String a0, int a1) {
+            this.a0 = a0;
+            this.a1 = a1;
+        }
+        public String call() {
+            BULKHEAD.acquire();
+            try {
+                return Scheduled.batch(a0, a1);
+            }
+            finally {
+                BULKHEAD.release();
+            }
+        }
+        public int getPriority() {
+            return a1;
+        }
+        public int compareTo(Prioritized other) {
+            return Priorities.compare(this, other);
+        }
+    }
+    public static final class lengthCallable implements Callable<Integer>, Sized, Detachable {
+        private static final long serialVersionUID = 25763332276498L;
+        private final WeakReference<Scheduled> __this__;
+        private final CharSequence a0;
+        private final long[] a1;
+        lengthCallable(Scheduled __this__, CharSequence a0, long[] a1) {
+            this.__this__ = new WeakReference<Scheduled>(__this__);
+            this.a0 = a0;
+            this.a1 = a1;
+        }
+        public Integer call() {
+            final Scheduled __target__ = this.__this__.get();
+            if (__target__ == null) {
+                throw new TargetUnavailableException("sample.Scheduled.length");
+            }
+            return __target__.length(a0, a1);
+        }
+        public long estimatedSize() {
+            return 56L + Sizes.ofCharSequence(a0) + Sizes.ofArray(a1);
+        }
+        public boolean isTargetAvailable() {
+            return this.__this__.get() != null;
+        }
+    }
+    public static final class loadCallable implements Callable<byte[]>, Partitioned, Classified, Deadlined {
+        private static final long serialVersionUID = 900780839791L;
+        public static final DeadlineMonitor DEADLINE = new DeadlineMonitor();
+        private final Scheduled __this__;
+        private final String a0;
+        private final int __partition__;
+        private final transient long __deadline__;
+        loadCallable(Scheduled __this__, String a0) {
+            this(__this__, a0, Deadlines.NONE);
+        }
+        loadCallable(Scheduled __this__, String a0, long __deadline__) {
+            this.__this__ = __this__;
+            this.a0 = a0;
+            this.__partition__ = (a0 == null ? 0 : a0.hashCode());
+            this.__deadline__ = __deadline__;
+        }
+        public byte[] call() throws IOException {
+            if (Deadlines.isExpired(this.__deadline__)) {
+                throw DEADLINE.expire("sample.Scheduled.load");
+            }
+            return ManagedBlocking.invoke(new Callable<byte[]>() {
+                public byte[] call() throws IOException {
+                    return __this__.load(a0);
+                }
+            });
+        }
+        public int partitionKey() {
+            return __partition__;
+        }
+        public TaskKind getKind() {
+            return TaskKind.BLOCKING_IO;
+        }
+        public long getDeadline() {
+            return this.__deadline__;
+        }
+        public boolean isExpired() {
+            return Deadlines.isExpired(this.__deadline__);
+        }
+    }
+    public static final class packCallable implements Callable<String> {
+        private static final long serialVersionUID = 6326220542874297034L;
+        private final Scheduled __this__;
+        private final byte a0;
+        private final short a1;
+        private final char a2;
+        private final float a3;
+        private final double a4;
+        private final boolean a5;
+        packCallable(Scheduled __this__, byte a0, short a1, char a2, float a3, double a4, boolean a5) {
+            this.__this__ = __this__;
+            this.a0 = a0;
+            this.a1 = a1;
+            this.a2 = a2;
+            this.a3 = a3;
+            this.a4 = a4;
+            this.a5 = a5;
+        }
+        public String call() {
+            return __this__.pack(a0, a1, a2, a3, a4, a5);
+        }
+    }
+    public static final class urgentCallable implements Callable<String>, Prioritized, Comparable<Prioritized> {
+        private static final long serialVersionUID = 38248303776L;
+        private final String a0;
+        urgentCallable(String a0) {
+            this.a0 = a0;
+        }
+        public String call() {
+            return Scheduled.urgent(a0);
+        }
+        public int getPriority() {
+            return 10;
+        }
+        public int compareTo(Prioritized other) {
+            return Priorities.compare(this, other);
+        }
+    }
+}
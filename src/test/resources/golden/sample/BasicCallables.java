@@ -0,0 +1,113 @@
+package sample;
+import com.ashigeru.lab.makecallable.runtime.IterablePublisher;
+import com.ashigeru.lab.makecallable.runtime.Publisher;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+public class BasicCallables<E extends Comparable<E>> {
+    private Basic<E> __this__;
+    private touchCallable<Void> __touchCallable__;
+    public BasicCallables(Basic<E> target) {
+        this.__this__ = target;
+        this.__touchCallable__ = new touchCallable<Void>(target);
+    }
+    public static addCallable<Integer> add(int a, int b) {
+        return new addCallable<Integer>(a, b);
+    }
+    firstCallable<E> first(List<E> list) {
+        return new firstCallable<E>(this.__this__, list);
+    }
+    public greetCallable<String> greet(String name) {
+        return new greetCallable<String>(this.__this__, name);
+    }
+    protected mapCallable<Map<String, ? extends E>> map(Map<String, ? extends E> map, int[] values) {
+        return new mapCallable<Map<String, ? extends E>>(this.__this__, map, values);
+    }
+    public touchCallable<Void> touch() {
+        return this.__touchCallable__;
+    }
+    public <T extends Number> Wrapwrap<List<T>> wrap(T value, E[] more) throws IOException {
+        return new Wrapwrap<List<T>>(this.__this__, value, more);
+    }
+    public <T extends Number> Publisher<T> wrapPublisher(Executor __executor__, int __chunkSize__, T value, E[] more) throws IOException {
+        return new IterablePublisher<T>(wrap(value, more), __executor__, __chunkSize__);
+    }
+    public static class addCallable<R> implements Callable<R> {
+        private static final long serialVersionUID = 103699983L;
+        private int a0;
+        private int a1;
+        addCallable(int a0, int a1) {
+            this.a0 = a0;
+            this.a1 = a1;
+        }
+        public R call() {
+            return (R) (Integer) Basic.add(a0, a1);
+        }
+    }
+    public static class firstCallable<R> implements Callable<R> {
+        private static final long serialVersionUID = -953939599717L;
+        private Basic __this__;
+        private List a0;
+        firstCallable(Basic __this__, List a0) {
+            this.__this__ = __this__;
+            this.a0 = a0;
+        }
+        public R call() {
+            return (R) __this__.first(a0);
+        }
+    }
+    public static class greetCallable<R> implements Callable<R>, Serializable {
+        private static final long serialVersionUID = -916160240469L;
+        private Basic __this__;
+        private String a0;
+        greetCallable(Basic __this__, String a0) {
+            this.__this__ = __this__;
+            this.a0 = a0;
+        }
+        public R call() {
+            return (R) __this__.greet(a0);
+        }
+    }
+    public static class mapCallable<R> implements Callable<R> {
+        private static final long serialVersionUID = -30914335750116L;
+        private Basic __this__;
+        private Map a0;
+        private int[] a1;
+        mapCallable(Basic __this__, Map a0, int[] a1) {
+            this.__this__ = __this__;
+            this.a0 = a0;
+            this.a1 = a1;
+        }
+        public R call() {
+            return (R) __this__.map(a0, a1);
+        }
+    }
+    public static class touchCallable<R> implements Callable<R> {
+        private static final long serialVersionUID = -993141045L;
+        private Basic __this__;
+        touchCallable(Basic __this__) {
+            this.__this__ = __this__;
+        }
+        public R call() {
+            __this__.touch();
+            return null;
+        }
+    }
+    public static class Wrapwrap<R> implements Callable<R> {
+        private static final long serialVersionUID = -28525102934272L;
+        private Basic __this__;
+        private Number a0;
+        private Comparable[] a1;
+        Wrapwrap(Basic __this__, Number a0, Comparable[] a1) {
+            this.__this__ = __this__;
+            this.a0 = a0;
+            this.a1 = a1;
+        }
+        public R call() throws IOException {
+            return (R) __this__.wrap(a0, a1);
+        }
+    }
+}